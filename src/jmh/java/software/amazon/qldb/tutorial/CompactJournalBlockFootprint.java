@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import com.amazon.ion.IonReader;
+
+import software.amazon.qldb.tutorial.qldb.CompactJournalBlock;
+import software.amazon.qldb.tutorial.qldb.IdentifierPool;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.JournalBlockDecoder;
+
+/**
+ * Measures the heap retained by decoded {@link JournalBlock}s and by their {@link CompactJournalBlock} form with
+ * JOL, walking the whole object graph: revision data, transaction info and, for compact blocks, the shared
+ * {@link IdentifierPool}. The Ion system the decoded data points back to is shared by every value and is not
+ * counted. The analytical estimates of {@link CompactJournalBlock} are printed next to the measurement.
+ *
+ * Run with {@code gradle footprint}.
+ */
+public final class CompactJournalBlockFootprint {
+    private static final int BLOCK_COUNT = 10_000;
+    private static final int REVISIONS_PER_BLOCK = 4;
+
+    private CompactJournalBlockFootprint() { }
+
+    public static void main(final String... args) throws Exception {
+        byte[] dataFile = ExportBenchmarkData.blocksAsBinary(BLOCK_COUNT, REVISIONS_PER_BLOCK, 42);
+        JournalBlockDecoder decoder = new JournalBlockDecoder(false);
+        List<JournalBlock> decoded = new ArrayList<>(BLOCK_COUNT);
+        try (IonReader reader = ExportBenchmarkData.SYSTEM.newReader(dataFile)) {
+            while (reader.next() != null) {
+                decoded.add(decoder.decode(reader));
+            }
+        }
+        IdentifierPool pool = new IdentifierPool();
+        List<CompactJournalBlock> compact = new ArrayList<>(BLOCK_COUNT);
+        long decodedEstimate = 0;
+        long compactEstimate = 0;
+        for (JournalBlock block : decoded) {
+            CompactJournalBlock compactBlock = CompactJournalBlock.of(block, pool);
+            compact.add(compactBlock);
+            decodedEstimate += CompactJournalBlock.estimateSize(block);
+            compactEstimate += compactBlock.getEstimatedSize();
+        }
+
+        GraphLayout system = GraphLayout.parseInstance(ExportBenchmarkData.SYSTEM);
+        long decodedSize = GraphLayout.parseInstance(decoded).subtract(system).totalSize();
+        long compactSize = GraphLayout.parseInstance(compact, pool).totalSize();
+
+        System.out.println(VM.current().details());
+        System.out.printf("%d blocks of %d revisions%n", BLOCK_COUNT, REVISIONS_PER_BLOCK);
+        System.out.printf("decoded: %,d bytes retained, %,d per block (estimate without data: %,d per block)%n",
+                decodedSize, decodedSize / BLOCK_COUNT, decodedEstimate / BLOCK_COUNT);
+        System.out.printf("compact: %,d bytes retained, %,d per block (estimate without data: %,d per block)%n",
+                compactSize, compactSize / BLOCK_COUNT, compactEstimate / BLOCK_COUNT);
+        System.out.printf("ratio: %.2f%n", (double) decodedSize / compactSize);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Random;
+
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonWriter;
+import com.amazon.ion.system.IonSystemBuilder;
+
+/**
+ * Generates journal export content shaped like a real data file, for the benchmarks. Each block holds one
+ * transaction with the given number of revisions of car documents.
+ */
+final class ExportBenchmarkData {
+    static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+
+    private ExportBenchmarkData() { }
+
+    /**
+     * @return the blocks as Ion text.
+     */
+    static String blocksAsText(final int blockCount, final int revisionsPerBlock, final long seed) {
+        Random random = new Random(seed);
+        StringBuilder ion = new StringBuilder();
+        for (int block = 0; block < blockCount; block++) {
+            String transactionId = "Tx" + randomId(random);
+            ion.append("{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:").append(block).append('}')
+                .append(",transactionId:\"").append(transactionId).append('"')
+                .append(",blockTimestamp:2019-11-08T20:01:").append(String.format("%02d", block % 60)).append(".123Z")
+                .append(",blockHash:{{").append(randomHash(random)).append("}}")
+                .append(",entriesHash:{{").append(randomHash(random)).append("}}")
+                .append(",previousBlockHash:{{").append(randomHash(random)).append("}}")
+                .append(",entriesHashList:[");
+            for (int i = 0; i < 3; i++) {
+                ion.append(i > 0 ? "," : "").append("{{").append(randomHash(random)).append("}}");
+            }
+            ion.append("],transactionInfo:{statements:[{statement:\"INSERT INTO Cars ?\",")
+                .append("startTime:2019-11-08T20:01:00.000Z,statementDigest:{{").append(randomHash(random))
+                .append("}}}],documents:{");
+            String[] documentIds = new String[revisionsPerBlock];
+            for (int i = 0; i < revisionsPerBlock; i++) {
+                documentIds[i] = randomId(random);
+                ion.append(i > 0 ? "," : "").append('\'').append(documentIds[i])
+                    .append("':{tableName:\"Cars\",tableId:\"5PLf9SXwndd63lPaSIa0O6\",statements:[0]}");
+            }
+            ion.append("}},revisions:[");
+            for (int i = 0; i < revisionsPerBlock; i++) {
+                ion.append(i > 0 ? "," : "")
+                    .append("{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:").append(block).append('}')
+                    .append(",hash:{{").append(randomHash(random)).append("}}")
+                    .append(",data:{CarId:\"").append(random.nextInt(1_000_000))
+                    .append("\",Manfacture:\"Tesla\",Model:\"Model 3\",Owner:\"Owner ").append(random.nextInt(1000))
+                    .append("\"},metadata:{id:\"").append(documentIds[i]).append("\",version:0")
+                    .append(",txTime:2019-11-08T20:01:00.000Z,txId:\"").append(transactionId).append("\"}}");
+            }
+            ion.append("]}\n");
+        }
+        return ion.toString();
+    }
+
+    /**
+     * @return the blocks as Ion binary, the format of export data files.
+     */
+    static byte[] blocksAsBinary(final int blockCount, final int revisionsPerBlock, final long seed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (IonReader reader = SYSTEM.newReader(blocksAsText(blockCount, revisionsPerBlock, seed));
+             IonWriter writer = SYSTEM.newBinaryWriter(out)) {
+            writer.writeValues(reader);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static String randomHash(final Random random) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        random.nextBytes(hash);
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    private static String randomId(final Random random) {
+        byte[] id = new byte[16];
+        random.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id).substring(0, 22);
+    }
+}
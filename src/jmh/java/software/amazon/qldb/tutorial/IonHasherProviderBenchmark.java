@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazon.ionhash.IonHashReader;
+import com.amazon.ionhash.IonHashReaderBuilder;
+import com.amazon.ionhash.IonHasherProvider;
+import com.amazon.ionhash.MessageDigestIonHasherProvider;
+
+import software.amazon.qldb.tutorial.qldb.PooledIonHasherProvider;
+
+/**
+ * Compares Ion hashing of journal blocks with {@link PooledIonHasherProvider} and with the
+ * {@link MessageDigestIonHasherProvider} it replaced. Every block is a deeply nested struct, so each one asks
+ * the provider for dozens of hashers. Scores are blocks hashed per second; add {@code -prof gc} to the JMH
+ * arguments to compare allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IonHasherProviderBenchmark {
+    private static final int BLOCK_COUNT = 1000;
+
+    private byte[] dataFile;
+    private IonHasherProvider pooled;
+    private IonHasherProvider unpooled;
+
+    @Setup
+    public void setUp() {
+        dataFile = ExportBenchmarkData.blocksAsBinary(BLOCK_COUNT, 4, 42);
+        pooled = new PooledIonHasherProvider("SHA-256");
+        unpooled = new MessageDigestIonHasherProvider("SHA-256");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_COUNT)
+    public void pooled(final Blackhole blackhole) throws IOException {
+        hashBlocks(pooled, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_COUNT)
+    public void unpooled(final Blackhole blackhole) throws IOException {
+        hashBlocks(unpooled, blackhole);
+    }
+
+    private void hashBlocks(final IonHasherProvider provider, final Blackhole blackhole) throws IOException {
+        try (IonHashReader reader = IonHashReaderBuilder.standard()
+                .withHasherProvider(provider)
+                .withReader(ExportBenchmarkData.SYSTEM.newReader(dataFile))
+                .build()) {
+            // Moving past a value hashes it, so each digest after the first next() is the hash of one block.
+            reader.next();
+            while (reader.next() != null) {
+                blackhole.consume(reader.digest());
+            }
+            blackhole.consume(reader.digest());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazon.ion.IonReader;
+
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.JournalBlockDecoder;
+
+/**
+ * Measures the throughput of decoding an export data file with {@link JournalBlockDecoder}, next to the
+ * previous approach of materializing every block as an Ion DOM and mapping it with {@link Constants#MAPPER}.
+ * Scores are blocks per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JournalBlockDecoderBenchmark {
+    private static final int BLOCK_COUNT = 1000;
+    private static final int REVISIONS_PER_BLOCK = 4;
+
+    private byte[] dataFile;
+    private JournalBlockDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        dataFile = ExportBenchmarkData.blocksAsBinary(BLOCK_COUNT, REVISIONS_PER_BLOCK, 42);
+        decoder = new JournalBlockDecoder(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_COUNT)
+    public void decodeDirect(final Blackhole blackhole) throws IOException {
+        try (IonReader reader = ExportBenchmarkData.SYSTEM.newReader(dataFile)) {
+            while (reader.next() != null) {
+                blackhole.consume(decoder.decode(reader));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_COUNT)
+    public void decodeViaDom(final Blackhole blackhole) {
+        try (IonReader reader = ExportBenchmarkData.SYSTEM.newReader(dataFile)) {
+            while (reader.next() != null) {
+                blackhole.consume(Constants.MAPPER.readValue(ExportBenchmarkData.SYSTEM.newValue(reader),
+                        JournalBlock.class));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+}
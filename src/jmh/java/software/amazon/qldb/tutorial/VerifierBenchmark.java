@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import software.amazon.qldb.tutorial.qldb.Proof;
+
+/**
+ * Compares the hash join, hash comparison and proof walk of {@link Verifier} with the allocating versions they
+ * replaced, which are copied below as they were.
+ *
+ * Run with {@code ./gradlew jmh -Pjmh.include=VerifierBenchmark}, adding {@code -prof gc} to the JMH arguments
+ * to see the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VerifierBenchmark {
+    @Param({"32"})
+    private int proofDepth;
+
+    private byte[] h1;
+    private byte[] h2;
+    private byte[] out;
+    private List<byte[]> internalHashes;
+    private Proof proof;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        h1 = randomHash(random);
+        h2 = randomHash(random);
+        out = new byte[Verifier.HASH_LENGTH];
+        internalHashes = new ArrayList<>(proofDepth);
+        for (int i = 0; i < proofDepth; i++) {
+            internalHashes.add(randomHash(random));
+        }
+        proof = new Proof(internalHashes);
+    }
+
+    @Benchmark
+    public byte[] joinAllocating() {
+        return baselineJoinHashesPairwise(h1, h2);
+    }
+
+    @Benchmark
+    public byte[] joinInPlace() {
+        Verifier.joinHashesPairwise(h1, 0, h2, 0, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public int compareAllocating() {
+        return baselineCompare(h1, h2);
+    }
+
+    @Benchmark
+    public int compareInPlace() {
+        return Verifier.compareHashes(h1, 0, h2, 0);
+    }
+
+    @Benchmark
+    public byte[] rootFromListAllocating() {
+        return internalHashes.stream().reduce(h1, VerifierBenchmark::baselineJoinHashesPairwise);
+    }
+
+    @Benchmark
+    public byte[] rootFromProof() {
+        return Verifier.calculateRootHashFromInternalHashes(proof, h1);
+    }
+
+    private static byte[] randomHash(final Random random) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private static int baselineCompare(final byte[] h1, final byte[] h2) {
+        for (int i = h1.length - 1; i >= 0; i--) {
+            int byteEqual = Byte.compare(h1[i], h2[i]);
+            if (byteEqual != 0) {
+                return byteEqual;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] baselineJoinHashesPairwise(final byte[] h1, final byte[] h2) {
+        byte[] concatenated = new byte[h1.length + h2.length];
+        if (baselineCompare(h1, h2) < 0) {
+            System.arraycopy(h1, 0, concatenated, 0, h1.length);
+            System.arraycopy(h2, 0, concatenated, h1.length, h2.length);
+        } else {
+            System.arraycopy(h2, 0, concatenated, 0, h2.length);
+            System.arraycopy(h1, 0, concatenated, h2.length, h1.length);
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(concatenated);
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 message digest is unavailable", e);
+        }
+    }
+}
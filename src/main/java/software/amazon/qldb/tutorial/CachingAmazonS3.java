@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * An {@link AmazonS3} that serves object reads from an {@link ExportFileCache}, so that repeated runs over the
+ * same journal export do not download its manifests and data files again.
+ *
+ * The objects of a completed export are immutable, so a cached object is served by bucket and key, read
+ * through a memory mapping, without any request to S3. Its metadata and existence checks are answered from the
+ * cache as well. Otherwise the object is downloaded into the cache and served from there. Listings and ranged
+ * reads go straight to the wrapped client. Pass it anywhere {@link JournalS3ExportReader} takes an
+ * {@link AmazonS3}.
+ */
+public final class CachingAmazonS3 extends AbstractAmazonS3 {
+    public static final Logger log = LoggerFactory.getLogger(CachingAmazonS3.class);
+
+    private final AmazonS3 amazonS3;
+    private final ExportFileCache cache;
+
+    /**
+     * @param amazonS3
+     *              The client to read objects through on a cache miss.
+     * @param cache
+     *              The cache to store objects in.
+     */
+    public CachingAmazonS3(final AmazonS3 amazonS3, final ExportFileCache cache) {
+        this.amazonS3 = amazonS3;
+        this.cache = cache;
+    }
+
+    @Override
+    public S3Object getObject(final String bucketName, final String key) {
+        ByteBuffer content = cache.get(bucketName, key);
+        ObjectMetadata metadata;
+        if (content == null) {
+            try (S3Object s3Object = amazonS3.getObject(bucketName, key)) {
+                metadata = s3Object.getObjectMetadata();
+                content = cache.put(bucketName, key, s3Object.getObjectContent());
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        } else {
+            log.debug("Reading s3://{}/{} from the export file cache.", bucketName, key);
+            metadata = cachedMetadata(content);
+        }
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(bucketName);
+        s3Object.setKey(key);
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new ByteBufferInputStream(content));
+        return s3Object;
+    }
+
+    @Override
+    public S3Object getObject(final GetObjectRequest getObjectRequest) {
+        if (getObjectRequest.getRange() != null) {
+            return amazonS3.getObject(getObjectRequest);
+        }
+        return getObject(getObjectRequest.getBucketName(), getObjectRequest.getKey());
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(final String bucketName, final String key) {
+        ByteBuffer content = cache.get(bucketName, key);
+        return content == null ? amazonS3.getObjectMetadata(bucketName, key) : cachedMetadata(content);
+    }
+
+    @Override
+    public boolean doesObjectExist(final String bucketName, final String key) {
+        return cache.get(bucketName, key) != null || amazonS3.doesObjectExist(bucketName, key);
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(final String bucketName, final String prefix) {
+        return amazonS3.listObjectsV2(bucketName, prefix);
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(final ListObjectsV2Request listObjectsV2Request) {
+        return amazonS3.listObjectsV2(listObjectsV2Request);
+    }
+
+    private static ObjectMetadata cachedMetadata(final ByteBuffer content) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.remaining());
+        return metadata;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and writes the small Ion checkpoint files kept by {@link VerificationCheckpoint} and
+ * {@link ExportCheckpoint}.
+ *
+ * A checkpoint is written to a temporary file next to its target and forced to disk. It is then atomically
+ * moved over the target, and the directory is forced as well so the rename itself survives a crash. After a
+ * crash the file therefore holds either the previous checkpoint or the new one, never a partial write.
+ */
+final class CheckpointFiles {
+    public static final Logger log = LoggerFactory.getLogger(CheckpointFiles.class);
+
+    private CheckpointFiles() {
+    }
+
+    /**
+     * Read a checkpoint from a file.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @param type
+     *              The class of the checkpoint.
+     * @return the checkpoint, or {@code null} if the file does not exist.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    static <T> T read(final Path file, final Class<T> type) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return Constants.MAPPER.readValue(Files.readAllBytes(file), type);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not read checkpoint " + file, ioe);
+        }
+    }
+
+    /**
+     * Durably replace a checkpoint file.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @param checkpoint
+     *              The checkpoint to write.
+     * @throws UncheckedIOException if the file cannot be written.
+     */
+    static void write(final Path file, final Object checkpoint) {
+        Path absolute = file.toAbsolutePath();
+        Path directory = absolute.getParent();
+        try {
+            ByteBuffer content = ByteBuffer.wrap(Constants.MAPPER.writeValueAsBytes(checkpoint));
+            Path temporary = Files.createTempFile(directory, absolute.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            forceDirectory(directory);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not write checkpoint " + file, ioe);
+        }
+    }
+
+    /**
+     * Force a directory's entries to disk. Some platforms, such as Windows, cannot open a directory as a
+     * channel; there the rename is left to the file system's own ordering.
+     */
+    private static void forceDirectory(final Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Could not open directory {} to force it", directory, e);
+            return;
+        }
+        try (FileChannel closing = channel) {
+            closing.force(true);
+        }
+    }
+}
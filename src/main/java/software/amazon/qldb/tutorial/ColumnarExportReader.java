@@ -0,0 +1,564 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.qldb.tutorial.ColumnarFormat.ColumnChunk;
+import software.amazon.qldb.tutorial.ColumnarFormat.RowGroup;
+
+/**
+ * Reads a table file written by {@link ColumnarExportWriter}.
+ *
+ * A scan only reads and decompresses the columns it asks for and the columns its filter tests, and skips every
+ * row group whose recorded minimum and maximum show that no row can match the filter. For example, counting the
+ * revisions of a table per day reads the {@value ColumnarExportWriter#TX_TIME} column alone, and following the
+ * owners of one car reads three columns of the few row groups whose car id range includes that car.
+ */
+public final class ColumnarExportReader implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(ColumnarExportReader.class);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<RowGroup> rowGroups;
+    private long rowGroupsRead;
+    private long rowGroupsSkipped;
+
+    private ColumnarExportReader(final Path file, final FileChannel channel, final List<RowGroup> rowGroups) {
+        this.file = file;
+        this.channel = channel;
+        this.rowGroups = rowGroups;
+    }
+
+    /**
+     * Open a table file and read its footer.
+     *
+     * @param file
+     *              The table file, see {@link ColumnarExportWriter#getFile(Path, String)}.
+     * @return the reader.
+     * @throws UncheckedIOException if the file cannot be read.
+     * @throws IllegalStateException if the file is not a columnar export file.
+     */
+    public static ColumnarExportReader open(final Path file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size < 2 * Integer.BYTES + ColumnarFormat.TRAILER_LENGTH) {
+                throw new IllegalStateException(file + " is too short to be a columnar export file.");
+            }
+            ByteBuffer header = read(channel, 0, 2 * Integer.BYTES);
+            ByteBuffer trailer = read(channel, size - ColumnarFormat.TRAILER_LENGTH, ColumnarFormat.TRAILER_LENGTH);
+            long footerOffset = trailer.getLong();
+            if (header.getInt() != ColumnarFormat.MAGIC || trailer.getInt() != ColumnarFormat.MAGIC) {
+                throw new IllegalStateException(file + " is not a columnar export file.");
+            }
+            int version = header.getInt();
+            if (version != ColumnarFormat.VERSION) {
+                throw new IllegalStateException("Unsupported columnar export file version " + version + " in " + file);
+            }
+            int footerLength = (int) (size - ColumnarFormat.TRAILER_LENGTH - footerOffset);
+            ByteBuffer footer = read(channel, footerOffset, footerLength);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            int rowGroupCount = in.readInt();
+            List<RowGroup> rowGroups = new ArrayList<>(rowGroupCount);
+            for (int i = 0; i < rowGroupCount; i++) {
+                rowGroups.add(RowGroup.read(in));
+            }
+            return new ColumnarExportReader(file, channel, Collections.unmodifiableList(rowGroups));
+        } catch (IOException ioe) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Could not read columnar export file " + file, ioe);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of rows in the file.
+     */
+    public long getRowCount() {
+        long rowCount = 0;
+        for (RowGroup rowGroup : rowGroups) {
+            rowCount += rowGroup.rowCount;
+        }
+        return rowCount;
+    }
+
+    public int getRowGroupCount() {
+        return rowGroups.size();
+    }
+
+    /**
+     * @return the names of the columns present in at least one row group.
+     */
+    public Set<String> getColumnNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (RowGroup rowGroup : rowGroups) {
+            for (ColumnChunk column : rowGroup.columns) {
+                names.add(column.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the number of row groups decoded by scans so far.
+     */
+    public long getRowGroupsRead() {
+        return rowGroupsRead;
+    }
+
+    /**
+     * @return the number of row groups skipped by scans so far, based on their statistics.
+     */
+    public long getRowGroupsSkipped() {
+        return rowGroupsSkipped;
+    }
+
+    /**
+     * Pass every row matching the filter to the consumer, in file order.
+     *
+     * @param columns
+     *              The columns the consumer reads. Other columns are not read, except those the filter tests.
+     * @param filter
+     *              The rows to pass, {@link Filter#ALL} for every row.
+     * @param consumer
+     *              The consumer of the matching rows. The row is only valid during the call.
+     * @return the number of matching rows.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public long scan(final Collection<String> columns, final Filter filter, final Consumer<Row> consumer) {
+        Set<String> needed = new LinkedHashSet<>(columns);
+        for (Condition condition : filter.conditions) {
+            needed.add(condition.column);
+        }
+        long matched = 0;
+        for (RowGroup rowGroup : rowGroups) {
+            if (filter.canSkip(rowGroup)) {
+                rowGroupsSkipped++;
+                continue;
+            }
+            rowGroupsRead++;
+            Row row = new Row(rowGroup.rowCount);
+            for (String name : needed) {
+                ColumnChunk column = rowGroup.getColumn(name);
+                if (column != null) {
+                    row.columns.put(name, decode(column, rowGroup.rowCount));
+                }
+            }
+            for (row.index = 0; row.index < rowGroup.rowCount; row.index++) {
+                if (filter.matches(row)) {
+                    consumer.accept(row);
+                    matched++;
+                }
+            }
+        }
+        log.debug("Scanned {}: {} row groups read, {} skipped so far.", file, rowGroupsRead, rowGroupsSkipped);
+        return matched;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not close " + file, ioe);
+        }
+    }
+
+    private Column decode(final ColumnChunk chunk, final int rowCount) {
+        ByteBuffer in;
+        try {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(read(channel, chunk.offset, chunk.compressedLength).array());
+                byte[] encoded = new byte[chunk.uncompressedLength];
+                int length = 0;
+                while (length < encoded.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(encoded, length, encoded.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != encoded.length) {
+                    throw new IllegalStateException("Column " + chunk.name + " of " + file + " is truncated.");
+                }
+                in = ByteBuffer.wrap(encoded);
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not read column " + chunk.name + " of " + file, ioe);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Column " + chunk.name + " of " + file + " is corrupt.", e);
+        }
+
+        byte[] nulls = new byte[(rowCount + 7) / 8];
+        in.get(nulls);
+        Column column = new Column(chunk.type, nulls);
+        if (chunk.type == ColumnarFormat.TYPE_LONG) {
+            column.longs = new long[rowCount];
+            long previous = 0;
+            for (int row = 0; row < rowCount; row++) {
+                if (!column.isNull(row)) {
+                    previous += ColumnarFormat.unZigZag(ColumnarFormat.readVarLong(in));
+                    column.longs[row] = previous;
+                }
+            }
+        } else if (chunk.type == ColumnarFormat.TYPE_DOUBLE) {
+            column.doubles = new double[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                if (!column.isNull(row)) {
+                    column.doubles[row] = in.getDouble();
+                }
+            }
+        } else {
+            String[] dictionary = new String[(int) ColumnarFormat.readVarLong(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                byte[] bytes = new byte[(int) ColumnarFormat.readVarLong(in)];
+                in.get(bytes);
+                dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            column.strings = new String[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                if (!column.isNull(row)) {
+                    column.strings[row] = dictionary[(int) ColumnarFormat.readVarLong(in)];
+                }
+            }
+        }
+        return column;
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void closeQuietly(final FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            log.warn("Could not close columnar export file.", ioe);
+        }
+    }
+
+    private static final class Column {
+        private final byte type;
+        private final byte[] nulls;
+        private long[] longs;
+        private double[] doubles;
+        private String[] strings;
+
+        Column(final byte type, final byte[] nulls) {
+            this.type = type;
+            this.nulls = nulls;
+        }
+
+        boolean isNull(final int row) {
+            return (nulls[row >>> 3] & (1 << (row & 7))) != 0;
+        }
+
+        boolean isNumeric() {
+            return type == ColumnarFormat.TYPE_LONG || type == ColumnarFormat.TYPE_DOUBLE;
+        }
+
+        double doubleValue(final int row) {
+            return type == ColumnarFormat.TYPE_LONG ? longs[row] : doubles[row];
+        }
+    }
+
+    /**
+     * A row of a scan. Columns missing from the row group read as null.
+     */
+    public static final class Row {
+        private final Map<String, Column> columns = new HashMap<>();
+        private final int rowCount;
+        private int index;
+
+        private Row(final int rowCount) {
+            this.rowCount = rowCount;
+        }
+
+        public boolean isNull(final String name) {
+            Column column = columns.get(name);
+            return column == null || column.isNull(index);
+        }
+
+        /**
+         * @throws IllegalStateException if the column is null in this row, or is not a long column.
+         */
+        public long getLong(final String name) {
+            Column column = columns.get(name);
+            if (column == null || column.isNull(index)) {
+                throw new IllegalStateException("Column " + name + " is null in this row.");
+            }
+            if (column.type != ColumnarFormat.TYPE_LONG) {
+                throw new IllegalStateException("Column " + name + " is not a long column.");
+            }
+            return column.longs[index];
+        }
+
+        /**
+         * @throws IllegalStateException if the column is null in this row, or is neither a long nor a double
+         *         column.
+         */
+        public double getDouble(final String name) {
+            Column column = columns.get(name);
+            if (column == null || column.isNull(index)) {
+                throw new IllegalStateException("Column " + name + " is null in this row.");
+            }
+            if (!column.isNumeric()) {
+                throw new IllegalStateException("Column " + name + " is not a numeric column.");
+            }
+            return column.doubleValue(index);
+        }
+
+        /**
+         * @return the value of a string column, the decimal form of a long or double column, or {@code null}.
+         *         Timestamps read back as their epoch milliseconds.
+         */
+        public String getString(final String name) {
+            Column column = columns.get(name);
+            if (column == null || column.isNull(index)) {
+                return null;
+            }
+            if (column.type == ColumnarFormat.TYPE_LONG) {
+                return Long.toString(column.longs[index]);
+            }
+            if (column.type == ColumnarFormat.TYPE_DOUBLE) {
+                return Double.toString(column.doubles[index]);
+            }
+            return column.strings[index];
+        }
+
+        /**
+         * @return the type of the column in this row's row group: {@code Long.class}, {@code Double.class} or
+         *         {@code String.class}, or {@code null} if the row group does not have the column.
+         */
+        public Class<?> getType(final String name) {
+            Column column = columns.get(name);
+            if (column == null) {
+                return null;
+            }
+            if (column.type == ColumnarFormat.TYPE_LONG) {
+                return Long.class;
+            }
+            return column.type == ColumnarFormat.TYPE_DOUBLE ? Double.class : String.class;
+        }
+
+        @Override
+        public String toString() {
+            return "Row{index=" + index + " of " + rowCount + ", columns=" + columns.keySet() + '}';
+        }
+    }
+
+    /**
+     * A conjunction of range conditions on columns. Long and double conditions match long and double columns
+     * alike. Rows where a tested column is null, or is a string column for a numeric condition or the other way
+     * around, never match; a data column that mixes types is a string column from the row group where it
+     * started to mix.
+     */
+    public static final class Filter {
+        public static final Filter ALL = new Filter(Collections.emptyList());
+
+        private final List<Condition> conditions;
+
+        private Filter(final List<Condition> conditions) {
+            this.conditions = conditions;
+        }
+
+        public static Filter equalTo(final String column, final long value) {
+            return between(column, value, value);
+        }
+
+        public static Filter equalTo(final String column, final String value) {
+            return between(column, value, value);
+        }
+
+        /**
+         * @return a filter on a long column, both bounds included.
+         */
+        public static Filter between(final String column, final long min, final long max) {
+            return new Filter(Collections.singletonList(new Condition(column, ColumnarFormat.TYPE_LONG, min, max,
+                    0, 0, null, null)));
+        }
+
+        /**
+         * @return a filter on a numeric column, both bounds included.
+         */
+        public static Filter between(final String column, final double min, final double max) {
+            return new Filter(Collections.singletonList(new Condition(column, ColumnarFormat.TYPE_DOUBLE, 0, 0,
+                    min, max, null, null)));
+        }
+
+        /**
+         * @return a filter on a string column, both bounds included.
+         */
+        public static Filter between(final String column, final String min, final String max) {
+            if (min == null || max == null) {
+                throw new IllegalArgumentException("Bounds cannot be null.");
+            }
+            return new Filter(Collections.singletonList(new Condition(column, ColumnarFormat.TYPE_STRING, 0, 0,
+                    0, 0, min, max)));
+        }
+
+        /**
+         * @return a filter matching the rows that match both this filter and the other.
+         */
+        public Filter and(final Filter other) {
+            List<Condition> combined = new ArrayList<>(conditions);
+            combined.addAll(other.conditions);
+            return new Filter(Collections.unmodifiableList(combined));
+        }
+
+        boolean canSkip(final RowGroup rowGroup) {
+            for (Condition condition : conditions) {
+                if (condition.canSkip(rowGroup.getColumn(condition.column))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(final Row row) {
+            for (Condition condition : conditions) {
+                if (!condition.matches(row.columns.get(condition.column), row.index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Filter" + Arrays.toString(conditions.toArray());
+        }
+    }
+
+    private static final class Condition {
+        private final String column;
+        private final byte type;
+        private final long minLong;
+        private final long maxLong;
+        private final double minDouble;
+        private final double maxDouble;
+        private final String minString;
+        private final String maxString;
+
+        Condition(final String column, final byte type, final long minLong, final long maxLong,
+                  final double minDouble, final double maxDouble, final String minString, final String maxString) {
+            this.column = column;
+            this.type = type;
+            this.minLong = minLong;
+            this.maxLong = maxLong;
+            this.minDouble = type == ColumnarFormat.TYPE_LONG ? minLong : minDouble;
+            this.maxDouble = type == ColumnarFormat.TYPE_LONG ? maxLong : maxDouble;
+            this.minString = minString;
+            this.maxString = maxString;
+        }
+
+        private boolean isNumeric() {
+            return type != ColumnarFormat.TYPE_STRING;
+        }
+
+        boolean canSkip(final ColumnChunk chunk) {
+            if (chunk == null || !chunk.hasStats) {
+                // The column is missing or entirely null in this row group.
+                return true;
+            }
+            if (isNumeric() != (chunk.type != ColumnarFormat.TYPE_STRING)) {
+                // No value of the row group has the filtered type.
+                return true;
+            }
+            if (type == ColumnarFormat.TYPE_LONG && chunk.type == ColumnarFormat.TYPE_LONG) {
+                return chunk.maxLong < minLong || chunk.minLong > maxLong;
+            }
+            if (isNumeric()) {
+                double chunkMin = chunk.type == ColumnarFormat.TYPE_LONG ? chunk.minLong : chunk.minDouble;
+                double chunkMax = chunk.type == ColumnarFormat.TYPE_LONG ? chunk.maxLong : chunk.maxDouble;
+                return chunkMax < minDouble || chunkMin > maxDouble;
+            }
+            return chunk.maxString.compareTo(minString) < 0 || chunk.minString.compareTo(maxString) > 0;
+        }
+
+        boolean matches(final Column values, final int row) {
+            if (values == null || values.isNull(row) || isNumeric() != values.isNumeric()) {
+                return false;
+            }
+            if (type == ColumnarFormat.TYPE_LONG && values.type == ColumnarFormat.TYPE_LONG) {
+                long value = values.longs[row];
+                return value >= minLong && value <= maxLong;
+            }
+            if (isNumeric()) {
+                double value = values.doubleValue(row);
+                return value >= minDouble && value <= maxDouble;
+            }
+            String value = values.strings[row];
+            return value.compareTo(minString) >= 0 && value.compareTo(maxString) <= 0;
+        }
+
+        @Override
+        public String toString() {
+            if (type == ColumnarFormat.TYPE_LONG) {
+                return column + " in [" + minLong + ", " + maxLong + "]";
+            }
+            return type == ColumnarFormat.TYPE_DOUBLE
+                    ? column + " in [" + minDouble + ", " + maxDouble + "]"
+                    : column + " in [" + minString + ", " + maxString + "]";
+        }
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.ion.IntegerSize;
+import com.amazon.ion.IonDecimal;
+import com.amazon.ion.IonFloat;
+import com.amazon.ion.IonInt;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonTimestamp;
+import com.amazon.ion.IonValue;
+
+import software.amazon.qldb.tutorial.ColumnarFormat.ColumnChunk;
+import software.amazon.qldb.tutorial.ColumnarFormat.RowGroup;
+import software.amazon.qldb.tutorial.qldb.DocumentInfo;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+/**
+ * Converts journal blocks into one compressed columnar file per table, so that analytical questions such as
+ * revisions per table per day, or owner changes per car, can be answered by {@link ColumnarExportReader}
+ * without parsing the Ion export again.
+ *
+ * Every revision becomes a row of the file of its table, found through the block's
+ * {@link software.amazon.qldb.tutorial.qldb.TransactionInfo}. Rows have the long columns {@value #SEQUENCE_NO},
+ * {@value #BLOCK_TIMESTAMP}, {@value #VERSION} and {@value #TX_TIME}, the string columns {@value #STRAND_ID},
+ * {@value #DOCUMENT_ID} and {@value #TX_ID}, and one column per top level field of the revision data, named with
+ * the {@value #DATA_COLUMN_PREFIX} prefix. Timestamps are stored as epoch milliseconds.
+ *
+ * A data column is typed by the values it has held so far in the file: a long column for Ion ints or for Ion
+ * timestamps, a double column for Ion decimals and floats, possibly mixed with ints, and a string column
+ * otherwise. Text values are stored as their string value and other values as Ion text. A column only widens, so
+ * a row group is never narrower than the ones before it; once a field mixes types, for example ints and strings,
+ * its later row groups store every value as text. Rows are buffered into row groups of {@code rowGroupSize}
+ * rows, and the minimum and maximum of every column of every row group are recorded so that readers can skip
+ * row groups.
+ *
+ * Revisions of a table whose name cannot be used as a file name are skipped and counted, like revisions that
+ * cannot be attributed to a table.
+ *
+ * Files are written under a temporary name and moved into place when the writer is closed.
+ */
+public final class ColumnarExportWriter implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(ColumnarExportWriter.class);
+    public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+    public static final String STRAND_ID = "strandId";
+    public static final String SEQUENCE_NO = "sequenceNo";
+    public static final String BLOCK_TIMESTAMP = "blockTimestamp";
+    public static final String DOCUMENT_ID = "documentId";
+    public static final String VERSION = "version";
+    public static final String TX_TIME = "txTime";
+    public static final String TX_ID = "txId";
+    public static final String DATA_COLUMN_PREFIX = "data.";
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    // The kinds of data values, combined into the type of a data column.
+    private static final int KIND_INT = 1;
+    private static final int KIND_TIMESTAMP = 2;
+    private static final int KIND_DECIMAL = 4;
+    private static final int KIND_TEXT = 8;
+
+    private final Path directory;
+    private final int rowGroupSize;
+    private final Map<String, TableWriter> tables = new LinkedHashMap<>();
+    private final Set<String> invalidTableNames = new HashSet<>();
+    private long skippedRevisionCount;
+
+    /**
+     * @param directory
+     *              The directory to write one file per table into. Created if missing.
+     */
+    public ColumnarExportWriter(final Path directory) {
+        this(directory, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * @param directory
+     *              The directory to write one file per table into. Created if missing.
+     * @param rowGroupSize
+     *              The number of rows per row group.
+     */
+    public ColumnarExportWriter(final Path directory, final int rowGroupSize) {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive.");
+        }
+        this.directory = directory;
+        this.rowGroupSize = rowGroupSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not create directory " + directory, ioe);
+        }
+    }
+
+    /**
+     * The file the revisions of a table are written to.
+     *
+     * @param directory
+     *              The directory given to the writer.
+     * @param tableName
+     *              The name of the table.
+     * @return the path of the table's file.
+     */
+    public static Path getFile(final Path directory, final String tableName) {
+        if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + tableName);
+        }
+        return directory.resolve(tableName + ColumnarFormat.FILE_SUFFIX);
+    }
+
+    /**
+     * Add the revisions of a block. Revisions without metadata, whose document is not listed in the block's
+     * transaction info, or whose table name is not a valid file name, are counted as skipped.
+     *
+     * @param block
+     *              The block to add.
+     * @throws UncheckedIOException if a row group could not be written.
+     */
+    public void write(final JournalBlock block) {
+        if (block.getRevisions() == null) {
+            return;
+        }
+        Map<String, DocumentInfo> documents = block.getTransactionInfo() != null
+                ? block.getTransactionInfo().getDocuments() : null;
+        for (QldbRevision revision : block.getRevisions()) {
+            QldbRevision.Metadata metadata = revision.getMetadata();
+            DocumentInfo documentInfo = metadata != null && documents != null ? documents.get(metadata.getId()) : null;
+            if (documentInfo == null) {
+                skippedRevisionCount++;
+                continue;
+            }
+            String tableName = documentInfo.getTableName();
+            TableWriter table = tables.get(tableName);
+            if (table == null) {
+                if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+                    if (invalidTableNames.add(String.valueOf(tableName))) {
+                        log.warn("Skipping the revisions of table {}, its name is not a valid file name.", tableName);
+                    }
+                    skippedRevisionCount++;
+                    continue;
+                }
+                table = new TableWriter(getFile(directory, tableName));
+                tables.put(tableName, table);
+            }
+            table.add(block, metadata, revision.getData());
+        }
+    }
+
+    /**
+     * @return the number of revisions that could not be attributed to a table, or whose table was skipped.
+     */
+    public long getSkippedRevisionCount() {
+        return skippedRevisionCount;
+    }
+
+    /**
+     * Write the remaining rows and the footers, and move the files into place.
+     *
+     * @throws UncheckedIOException if a file could not be completed.
+     */
+    @Override
+    public void close() {
+        IOException failure = null;
+        for (TableWriter table : tables.values()) {
+            try {
+                table.close();
+            } catch (IOException ioe) {
+                if (failure == null) {
+                    failure = ioe;
+                } else {
+                    failure.addSuppressed(ioe);
+                }
+            }
+        }
+        tables.clear();
+        if (failure != null) {
+            throw new UncheckedIOException("Could not complete columnar export in " + directory, failure);
+        }
+    }
+
+    /**
+     * The column type for the kinds of values a data column has held: a long column for ints alone or for
+     * timestamps alone, a double column for decimals and floats with or without ints, and a string column
+     * otherwise.
+     */
+    private static byte dataType(final int kinds) {
+        if (kinds == KIND_INT || kinds == KIND_TIMESTAMP) {
+            return ColumnarFormat.TYPE_LONG;
+        }
+        if (kinds != 0 && (kinds & ~(KIND_INT | KIND_DECIMAL)) == 0) {
+            return ColumnarFormat.TYPE_DOUBLE;
+        }
+        return ColumnarFormat.TYPE_STRING;
+    }
+
+    private final class TableWriter {
+        private final Path file;
+        private final Path tempFile;
+        private final OutputStream out;
+        private final List<RowGroup> rowGroups = new ArrayList<>();
+        private final Map<String, ColumnBuffer> columns = new LinkedHashMap<>();
+        private long position;
+        private int rowCount;
+
+        TableWriter(final Path file) {
+            this.file = file;
+            this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                this.out = new BufferedOutputStream(Files.newOutputStream(tempFile));
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(ColumnarFormat.MAGIC);
+                header.writeInt(ColumnarFormat.VERSION);
+                position = 2 * Integer.BYTES;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Could not create " + tempFile, ioe);
+            }
+            for (String name : new String[] {STRAND_ID, DOCUMENT_ID, TX_ID}) {
+                columns.put(name, new ColumnBuffer(ColumnarFormat.TYPE_STRING));
+            }
+            for (String name : new String[] {SEQUENCE_NO, BLOCK_TIMESTAMP, VERSION, TX_TIME}) {
+                columns.put(name, new ColumnBuffer(ColumnarFormat.TYPE_LONG));
+            }
+        }
+
+        void add(final JournalBlock block, final QldbRevision.Metadata metadata, final IonStruct data) {
+            int row = rowCount++;
+            columns.get(STRAND_ID).setString(row, block.getBlockAddress().getStrandId());
+            columns.get(SEQUENCE_NO).setLong(row, block.getBlockAddress().getSequenceNo());
+            if (block.getBlockTimestamp() != null) {
+                columns.get(BLOCK_TIMESTAMP).setLong(row, block.getBlockTimestamp().getTime());
+            }
+            columns.get(DOCUMENT_ID).setString(row, metadata.getId());
+            columns.get(VERSION).setLong(row, metadata.getVersion());
+            if (metadata.getTxTime() != null) {
+                columns.get(TX_TIME).setLong(row, metadata.getTxTime().getTime());
+            }
+            columns.get(TX_ID).setString(row, metadata.getTxId());
+            if (data != null) {
+                for (IonValue field : data) {
+                    String name = DATA_COLUMN_PREFIX + field.getFieldName();
+                    columns.computeIfAbsent(name, n -> new ColumnBuffer()).setData(row, field);
+                }
+            }
+            if (rowCount == rowGroupSize) {
+                try {
+                    flushRowGroup();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException("Could not write row group to " + tempFile, ioe);
+                }
+            }
+        }
+
+        void close() throws IOException {
+            try {
+                if (rowCount > 0) {
+                    flushRowGroup();
+                }
+                DataOutputStream footer = new DataOutputStream(out);
+                long footerOffset = position;
+                footer.writeInt(rowGroups.size());
+                for (RowGroup rowGroup : rowGroups) {
+                    rowGroup.write(footer);
+                }
+                footer.writeLong(footerOffset);
+                footer.writeInt(ColumnarFormat.MAGIC);
+                footer.flush();
+            } finally {
+                out.close();
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote {} row groups to {}.", rowGroups.size(), file);
+        }
+
+        private void flushRowGroup() throws IOException {
+            ColumnChunk[] chunks = new ColumnChunk[columns.size()];
+            int i = 0;
+            for (Map.Entry<String, ColumnBuffer> column : columns.entrySet()) {
+                chunks[i++] = column.getValue().flush(column.getKey(), rowCount);
+            }
+            rowGroups.add(new RowGroup(rowCount, chunks));
+            rowCount = 0;
+        }
+
+        private final class ColumnBuffer {
+            private final boolean data;
+            private byte type;
+            private int kinds;
+            private long[] longs;
+            private double[] doubles;
+            private boolean[] present;
+            private String[] strings;
+
+            ColumnBuffer(final byte type) {
+                this.data = false;
+                this.type = type;
+                this.present = new boolean[16];
+                if (type == ColumnarFormat.TYPE_LONG) {
+                    longs = new long[16];
+                } else {
+                    strings = new String[16];
+                }
+            }
+
+            /**
+             * A data column, which keeps every value both typed and as text until the row group is flushed and
+             * the column's type for it is known.
+             */
+            ColumnBuffer() {
+                this.data = true;
+                this.type = ColumnarFormat.TYPE_STRING;
+                this.present = new boolean[16];
+                this.longs = new long[16];
+                this.doubles = new double[16];
+                this.strings = new String[16];
+            }
+
+            void setLong(final int row, final long value) {
+                ensureCapacity(row);
+                longs[row] = value;
+                present[row] = true;
+            }
+
+            void setString(final int row, final String value) {
+                ensureCapacity(row);
+                strings[row] = value;
+                present[row] = value != null;
+            }
+
+            void setData(final int row, final IonValue value) {
+                if (value == null || value.isNullValue()) {
+                    return;
+                }
+                ensureCapacity(row);
+                present[row] = true;
+                if (value instanceof IonText) {
+                    strings[row] = ((IonText) value).stringValue();
+                    kinds |= KIND_TEXT;
+                    return;
+                }
+                strings[row] = value.toString();
+                if (value instanceof IonInt && ((IonInt) value).getIntegerSize() != IntegerSize.BIG_INTEGER) {
+                    longs[row] = ((IonInt) value).longValue();
+                    doubles[row] = longs[row];
+                    kinds |= KIND_INT;
+                } else if (value instanceof IonTimestamp) {
+                    longs[row] = ((IonTimestamp) value).timestampValue().getMillis();
+                    kinds |= KIND_TIMESTAMP;
+                } else if (value instanceof IonDecimal || value instanceof IonFloat) {
+                    doubles[row] = value instanceof IonDecimal
+                            ? ((IonDecimal) value).doubleValue() : ((IonFloat) value).doubleValue();
+                    kinds |= Double.isNaN(doubles[row]) ? KIND_TEXT : KIND_DECIMAL;
+                } else {
+                    kinds |= KIND_TEXT;
+                }
+            }
+
+            private void ensureCapacity(final int row) {
+                if (row < present.length) {
+                    return;
+                }
+                int capacity = Math.max(row + 1, Math.min(rowGroupSize, 2 * present.length));
+                present = Arrays.copyOf(present, capacity);
+                if (longs != null) {
+                    longs = Arrays.copyOf(longs, capacity);
+                }
+                if (doubles != null) {
+                    doubles = Arrays.copyOf(doubles, capacity);
+                }
+                if (strings != null) {
+                    strings = Arrays.copyOf(strings, capacity);
+                }
+            }
+
+            /**
+             * Encode and write the buffered rows, then clear the buffer for the next row group.
+             */
+            ColumnChunk flush(final String name, final int rows) throws IOException {
+                if (data) {
+                    // Kinds accumulate over the whole file, so the type of a data column never narrows.
+                    type = dataType(kinds);
+                }
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                byte[] nulls = new byte[(rows + 7) / 8];
+                int nullCount = 0;
+                for (int row = 0; row < rows; row++) {
+                    if (row >= present.length || !present[row]) {
+                        nulls[row >>> 3] |= 1 << (row & 7);
+                        nullCount++;
+                    }
+                }
+                encoded.write(nulls);
+
+                boolean hasStats = nullCount < rows;
+                long minLong = Long.MAX_VALUE;
+                long maxLong = Long.MIN_VALUE;
+                double minDouble = Double.POSITIVE_INFINITY;
+                double maxDouble = Double.NEGATIVE_INFINITY;
+                String minString = null;
+                String maxString = null;
+                if (type == ColumnarFormat.TYPE_LONG) {
+                    long previous = 0;
+                    for (int row = 0; row < rows && row < present.length; row++) {
+                        if (present[row]) {
+                            long value = longs[row];
+                            ColumnarFormat.writeVarLong(encoded, ColumnarFormat.zigZag(value - previous));
+                            previous = value;
+                            minLong = Math.min(minLong, value);
+                            maxLong = Math.max(maxLong, value);
+                        }
+                    }
+                } else if (type == ColumnarFormat.TYPE_DOUBLE) {
+                    DataOutputStream values = new DataOutputStream(encoded);
+                    for (int row = 0; row < rows && row < present.length; row++) {
+                        if (present[row]) {
+                            double value = doubles[row];
+                            values.writeDouble(value);
+                            minDouble = Math.min(minDouble, value);
+                            maxDouble = Math.max(maxDouble, value);
+                        }
+                    }
+                    values.flush();
+                } else {
+                    Map<String, Integer> dictionary = new LinkedHashMap<>();
+                    ByteArrayOutputStream indexes = new ByteArrayOutputStream();
+                    for (int row = 0; row < rows && row < present.length; row++) {
+                        if (present[row]) {
+                            String value = strings[row];
+                            Integer index = dictionary.get(value);
+                            if (index == null) {
+                                index = dictionary.size();
+                                dictionary.put(value, index);
+                            }
+                            ColumnarFormat.writeVarLong(indexes, index);
+                            if (minString == null || value.compareTo(minString) < 0) {
+                                minString = value;
+                            }
+                            if (maxString == null || value.compareTo(maxString) > 0) {
+                                maxString = value;
+                            }
+                        }
+                    }
+                    ColumnarFormat.writeVarLong(encoded, dictionary.size());
+                    for (String value : dictionary.keySet()) {
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        ColumnarFormat.writeVarLong(encoded, bytes.length);
+                        encoded.write(bytes);
+                    }
+                    indexes.writeTo(encoded);
+                }
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                    encoded.writeTo(deflater);
+                }
+                compressed.writeTo(out);
+                ColumnChunk chunk = new ColumnChunk(name, type, position, compressed.size(), encoded.size(), nullCount,
+                        hasStats, minLong, maxLong, minDouble, maxDouble, minString, maxString);
+                position += compressed.size();
+
+                Arrays.fill(present, false);
+                if (strings != null) {
+                    Arrays.fill(strings, null);
+                }
+                return chunk;
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The layout of the columnar files written by {@link ColumnarExportWriter} and read by
+ * {@link ColumnarExportReader}.
+ *
+ * A file holds the revisions of one table. It starts with a magic number and a version, followed by row groups,
+ * each stored as one independently deflated chunk per column, and ends with a footer describing every chunk.
+ * The last twelve bytes are the offset of the footer and the magic number again.
+ *
+ * Long columns are stored as a null bitmap followed by the zig-zag varint deltas between consecutive non-null
+ * values. Double columns are stored as a null bitmap followed by the eight bytes of each non-null value. String
+ * columns are stored as a null bitmap, a dictionary of the distinct values in order of first appearance, and one
+ * varint dictionary index per non-null value.
+ */
+final class ColumnarFormat {
+    static final int MAGIC = 0x51434F4C;
+    static final int VERSION = 1;
+    static final String FILE_SUFFIX = ".qcol";
+    static final byte TYPE_LONG = 0;
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_DOUBLE = 2;
+    static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    private ColumnarFormat() { }
+
+    static void writeVarLong(final ByteArrayOutputStream out, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarLong(final ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in columnar file");
+    }
+
+    static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The footer entry of one row group.
+     */
+    static final class RowGroup {
+        final int rowCount;
+        final ColumnChunk[] columns;
+
+        RowGroup(final int rowCount, final ColumnChunk[] columns) {
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+
+        ColumnChunk getColumn(final String name) {
+            for (ColumnChunk column : columns) {
+                if (column.name.equals(name)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(rowCount);
+            out.writeInt(columns.length);
+            for (ColumnChunk column : columns) {
+                column.write(out);
+            }
+        }
+
+        static RowGroup read(final DataInputStream in) throws IOException {
+            int rowCount = in.readInt();
+            ColumnChunk[] columns = new ColumnChunk[in.readInt()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = ColumnChunk.read(in);
+            }
+            return new RowGroup(rowCount, columns);
+        }
+    }
+
+    /**
+     * The footer entry of one column of one row group.
+     */
+    static final class ColumnChunk {
+        final String name;
+        final byte type;
+        final long offset;
+        final int compressedLength;
+        final int uncompressedLength;
+        final int nullCount;
+        final boolean hasStats;
+        final long minLong;
+        final long maxLong;
+        final double minDouble;
+        final double maxDouble;
+        final String minString;
+        final String maxString;
+
+        ColumnChunk(final String name, final byte type, final long offset, final int compressedLength,
+                    final int uncompressedLength, final int nullCount, final boolean hasStats, final long minLong,
+                    final long maxLong, final double minDouble, final double maxDouble, final String minString,
+                    final String maxString) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.uncompressedLength = uncompressedLength;
+            this.nullCount = nullCount;
+            this.hasStats = hasStats;
+            this.minLong = minLong;
+            this.maxLong = maxLong;
+            this.minDouble = minDouble;
+            this.maxDouble = maxDouble;
+            this.minString = minString;
+            this.maxString = maxString;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeByte(type);
+            out.writeLong(offset);
+            out.writeInt(compressedLength);
+            out.writeInt(uncompressedLength);
+            out.writeInt(nullCount);
+            out.writeBoolean(hasStats);
+            if (!hasStats) {
+                return;
+            }
+            if (type == TYPE_LONG) {
+                out.writeLong(minLong);
+                out.writeLong(maxLong);
+            } else if (type == TYPE_DOUBLE) {
+                out.writeDouble(minDouble);
+                out.writeDouble(maxDouble);
+            } else {
+                writeString(out, minString);
+                writeString(out, maxString);
+            }
+        }
+
+        static ColumnChunk read(final DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            byte type = in.readByte();
+            long offset = in.readLong();
+            int compressedLength = in.readInt();
+            int uncompressedLength = in.readInt();
+            int nullCount = in.readInt();
+            boolean hasStats = in.readBoolean();
+            if (!hasStats) {
+                return new ColumnChunk(name, type, offset, compressedLength, uncompressedLength, nullCount,
+                        false, 0, 0, 0, 0, null, null);
+            }
+            if (type == TYPE_LONG) {
+                long minLong = in.readLong();
+                long maxLong = in.readLong();
+                return new ColumnChunk(name, type, offset, compressedLength, uncompressedLength, nullCount,
+                        true, minLong, maxLong, 0, 0, null, null);
+            }
+            if (type == TYPE_DOUBLE) {
+                double minDouble = in.readDouble();
+                double maxDouble = in.readDouble();
+                return new ColumnChunk(name, type, offset, compressedLength, uncompressedLength, nullCount,
+                        true, 0, 0, minDouble, maxDouble, null, null);
+            }
+            String minString = readString(in);
+            String maxString = readString(in);
+            return new ColumnChunk(name, type, offset, compressedLength, uncompressedLength, nullCount,
+                    true, 0, 0, 0, 0, minString, maxString);
+        }
+
+        // Statistics can be longer than writeUTF allows, so they are written as length-prefixed UTF-8.
+        private static void writeString(final DataOutputStream out, final String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(final DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
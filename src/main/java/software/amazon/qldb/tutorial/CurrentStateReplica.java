@@ -0,0 +1,507 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonWriter;
+import com.amazon.ion.system.IonSystemBuilder;
+import com.amazonaws.services.qldb.model.DescribeJournalS3ExportResult;
+import com.amazonaws.services.s3.AmazonS3;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.CompactJournalBlock;
+import software.amazon.qldb.tutorial.qldb.DocumentInfo;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+/**
+ * A local copy of the current state of a ledger, built by replaying exported revisions in block order, so that
+ * reads which can tolerate staleness, such as those of {@link ListAllCars} or
+ * {@link software.amazon.qldb.tutorial.model.SampleData#getDocumentById}, do not have to go to the ledger.
+ *
+ * The replica is a directory holding an append-only log of revision records and an {@link ExportCheckpoint} of
+ * the blocks applied so far. The latest record of every document is indexed in memory by document id, and
+ * reading a document is a single positional read of its record. Deleted documents are logged and indexed as
+ * tombstones, which keep their version so that replaying an older revision cannot bring a document back.
+ *
+ * Replaying is incremental: blocks already recorded in the checkpoint are skipped, so new exports can be applied
+ * as they complete with {@link #catchUp(DescribeJournalS3ExportResult, AmazonS3)}. A revision only replaces
+ * the indexed one if its version is newer, which makes replaying a block twice harmless. The log is forced to
+ * disk before the checkpoint is saved, and a torn record at the end of the log is truncated when the replica is
+ * reopened.
+ *
+ * Only one thread may apply blocks or compact at a time; reads may run concurrently with either.
+ */
+public final class CurrentStateReplica implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(CurrentStateReplica.class);
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final String LOG_FILE_NAME = "revisions.log";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint.ion";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // Length prefix and CRC32 suffix of every record.
+    private static final int RECORD_OVERHEAD = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final Path checkpointFile;
+    private final ExportCheckpoint checkpoint;
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+    // Guards the channel against being swapped by compaction while records are read from it.
+    private final ReadWriteLock channelLock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private long logSize;
+    private long deadRecords;
+    private volatile int liveDocuments;
+
+    private CurrentStateReplica(final Path directory) throws IOException {
+        this.directory = directory;
+        this.checkpointFile = directory.resolve(CHECKPOINT_FILE_NAME);
+        this.checkpoint = ExportCheckpoint.load(checkpointFile);
+        this.channel = FileChannel.open(directory.resolve(LOG_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+    }
+
+    /**
+     * Open the replica in a directory, creating it if needed, and rebuild its index from the log.
+     *
+     * @param directory
+     *              The directory of the replica.
+     * @return the replica.
+     * @throws UncheckedIOException if the replica cannot be read.
+     */
+    public static CurrentStateReplica open(final Path directory) {
+        try {
+            Files.createDirectories(directory);
+            return new CurrentStateReplica(directory);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open replica in " + directory, ioe);
+        }
+    }
+
+    /**
+     * Apply the blocks of a completed journal export that are not applied yet, then commit.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @return the number of blocks applied.
+     */
+    public long catchUp(final DescribeJournalS3ExportResult describeJournalS3ExportResult, final AmazonS3 amazonS3) {
+        try (Stream<JournalBlock> blocks = JournalS3ExportReader.streamExport(describeJournalS3ExportResult, amazonS3,
+                checkpoint)) {
+            return catchUp(blocks);
+        }
+    }
+
+    /**
+     * Apply the given blocks that are not applied yet, then commit.
+     *
+     * @param blocks
+     *              The blocks, in order within each strand.
+     * @return the number of blocks applied.
+     */
+    public long catchUp(final Stream<JournalBlock> blocks) {
+        long applied = blocks.filter(this::apply).count();
+        commit();
+        log.info("Applied {} blocks to replica in {}, {} documents live.", applied, directory, liveDocuments);
+        return applied;
+    }
+
+    /**
+     * Apply the revisions of a block, unless the block was already applied. Revisions without data are
+     * deletions. The block is not durable until the next {@link #commit()}.
+     *
+     * @param block
+     *              The next block of its strand.
+     * @return whether the block was applied.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    public synchronized boolean apply(final JournalBlock block) {
+        if (checkpoint.isProcessed(block.getBlockAddress())) {
+            return false;
+        }
+        if (block.getRevisions() != null && !block.getRevisions().isEmpty()) {
+            Map<String, DocumentInfo> documents = block.getTransactionInfo() != null
+                    ? block.getTransactionInfo().getDocuments() : null;
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            List<String> documentIds = new ArrayList<>();
+            List<IndexEntry> entries = new ArrayList<>();
+            for (QldbRevision revision : block.getRevisions()) {
+                QldbRevision.Metadata metadata = revision.getMetadata();
+                if (metadata == null || metadata.getId() == null) {
+                    continue;
+                }
+                IndexEntry current = index.get(metadata.getId());
+                if (current != null && current.version >= metadata.getVersion()) {
+                    continue;
+                }
+                DocumentInfo documentInfo = documents != null ? documents.get(metadata.getId()) : null;
+                String tableName = documentInfo != null ? documentInfo.getTableName()
+                        : current != null ? current.tableName : "";
+                long offset = logSize + records.size();
+                int length = writeRecord(records, tableName, block.getBlockAddress(), revision);
+                documentIds.add(metadata.getId());
+                entries.add(new IndexEntry(offset, length, metadata.getVersion(), tableName,
+                        revision.getData() == null));
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, logSize + buffer.position());
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Could not append to replica log in " + directory, ioe);
+            }
+            logSize += records.size();
+            for (int i = 0; i < documentIds.size(); i++) {
+                index(documentIds.get(i), entries.get(i));
+            }
+        }
+        checkpoint.record(block.getBlockAddress());
+        return true;
+    }
+
+    /**
+     * Force the log to disk and save the checkpoint, making every applied block durable.
+     *
+     * @throws UncheckedIOException if the log or checkpoint cannot be written.
+     */
+    public synchronized void commit() {
+        try {
+            channel.force(false);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not sync replica log in " + directory, ioe);
+        }
+        checkpoint.save(checkpointFile);
+    }
+
+    /**
+     * @param documentId
+     *              The id of the document.
+     * @return the latest revision of the document, or {@code null} if it does not exist or was deleted.
+     * @throws UncheckedIOException if the log cannot be read.
+     */
+    public QldbRevision get(final String documentId) {
+        channelLock.readLock().lock();
+        try {
+            IndexEntry entry = index.get(documentId);
+            return entry != null && !entry.deleted ? readRevision(entry) : null;
+        } finally {
+            channelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param documentId
+     *              The id of the document.
+     * @return the name of the table of the document, or {@code null} if it does not exist or was deleted.
+     */
+    public String getTableName(final String documentId) {
+        IndexEntry entry = index.get(documentId);
+        return entry != null && !entry.deleted ? entry.tableName : null;
+    }
+
+    /**
+     * Pass the latest revision of every live document of a table to the consumer, in no particular order.
+     * Compaction waits until the consumer has seen every document.
+     *
+     * @param tableName
+     *              The name of the table, for example {@link Constants#CARS_TABLE_NAME}.
+     * @param consumer
+     *              The consumer of each document id and revision.
+     */
+    public void forEach(final String tableName, final BiConsumer<String, QldbRevision> consumer) {
+        channelLock.readLock().lock();
+        try {
+            index.forEach((documentId, entry) -> {
+                if (!entry.deleted && entry.tableName.equals(tableName)) {
+                    consumer.accept(documentId, readRevision(entry));
+                }
+            });
+        } finally {
+            channelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of live documents.
+     */
+    public int size() {
+        return liveDocuments;
+    }
+
+    /**
+     * @return the blocks applied so far.
+     */
+    public ExportCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Rewrite the log with only the latest record of every document, including tombstones, then commit. Reads
+     * continue from the old log while it is copied and wait only while the logs are swapped.
+     *
+     * @throws UncheckedIOException if the log cannot be rewritten.
+     */
+    public synchronized void compact() {
+        Path logFile = directory.resolve(LOG_FILE_NAME);
+        Path compacted = directory.resolve(LOG_FILE_NAME + ".compact");
+        Map<String, IndexEntry> moved = new ConcurrentHashMap<>();
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                IndexEntry live = entry.getValue();
+                ByteBuffer record = read(live.offset, live.length);
+                while (record.hasRemaining()) {
+                    position += out.write(record, position);
+                }
+                moved.put(entry.getKey(), new IndexEntry(position - live.length, live.length, live.version,
+                        live.tableName, live.deleted));
+            }
+            out.force(false);
+            channelLock.writeLock().lock();
+            try {
+                channel.close();
+                Files.move(compacted, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                index.putAll(moved);
+            } finally {
+                channelLock.writeLock().unlock();
+            }
+            log.info("Compacted replica log in {} from {} to {} bytes.", directory, logSize, position);
+            logSize = position;
+            deadRecords = 0;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not compact replica log in " + directory, ioe);
+        }
+        checkpoint.save(checkpointFile);
+    }
+
+    /**
+     * @return the number of records in the log that are no longer the latest of their document.
+     */
+    public long getDeadRecordCount() {
+        return deadRecords;
+    }
+
+    /**
+     * Commit and close the log.
+     */
+    @Override
+    public void close() {
+        commit();
+        channelLock.writeLock().lock();
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not close replica log in " + directory, ioe);
+        } finally {
+            channelLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the log, truncating a torn or corrupt record at its end.
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        long records = 0;
+        while (position + RECORD_OVERHEAD <= size) {
+            int length = read(position, Integer.BYTES).getInt();
+            if (length <= 0 || position + RECORD_OVERHEAD + length > size) {
+                break;
+            }
+            ByteBuffer record = read(position, RECORD_OVERHEAD + length);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), Integer.BYTES, length);
+            if ((int) crc.getValue() != record.getInt(Integer.BYTES + length)) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), Integer.BYTES, length));
+            byte kind = in.readByte();
+            String tableName = in.readUTF();
+            String documentId = in.readUTF();
+            long version = in.readLong();
+            index(documentId, new IndexEntry(position, RECORD_OVERHEAD + length, version, tableName,
+                    kind == DELETE));
+            position += RECORD_OVERHEAD + length;
+            records++;
+        }
+        if (position < size) {
+            log.warn("Truncating {} bytes of incomplete records at the end of the replica log in {}.",
+                    size - position, directory);
+            channel.truncate(position);
+        }
+        logSize = position;
+        log.info("Opened replica in {}: {} records, {} documents live.", directory, records, liveDocuments);
+    }
+
+    /**
+     * Make a record the latest of its document, counting the record it replaces as dead.
+     */
+    private void index(final String documentId, final IndexEntry entry) {
+        IndexEntry previous = index.put(documentId, entry);
+        if (previous != null) {
+            deadRecords++;
+        }
+        // Only the applying thread writes the count, readers just need to see its latest value.
+        liveDocuments += (entry.deleted ? 0 : 1) - (previous == null || previous.deleted ? 0 : 1);
+    }
+
+    /**
+     * Append the record of a revision. A missing transaction time is written as
+     * {@link CompactJournalBlock#NO_TX_TIME}, and a revision without an address of its own is given its block's.
+     */
+    private static int writeRecord(final ByteArrayOutputStream out, final String tableName,
+                                   final BlockAddress blockAddress, final QldbRevision revision) {
+        QldbRevision.Metadata metadata = revision.getMetadata();
+        BlockAddress revisionAddress = revision.getBlockAddress() != null ? revision.getBlockAddress() : blockAddress;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(payload)) {
+            data.writeByte(revision.getData() != null ? PUT : DELETE);
+            data.writeUTF(tableName);
+            data.writeUTF(metadata.getId());
+            data.writeLong(metadata.getVersion());
+            data.writeLong(metadata.getTxTime() != null ? metadata.getTxTime().getTime()
+                    : CompactJournalBlock.NO_TX_TIME);
+            writeOptionalUTF(data, metadata.getTxId());
+            writeOptionalUTF(data, revisionAddress.getStrandId());
+            data.writeLong(revisionAddress.getSequenceNo());
+            byte[] hash = revision.getHash() != null ? revision.getHash() : new byte[0];
+            data.writeShort(hash.length);
+            data.write(hash);
+            if (revision.getData() != null) {
+                try (IonWriter writer = SYSTEM.newBinaryWriter(data)) {
+                    revision.getData().writeTo(writer);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer framing = ByteBuffer.allocate(Integer.BYTES);
+        out.write(framing.putInt(0, bytes.length).array(), 0, Integer.BYTES);
+        out.write(bytes, 0, bytes.length);
+        out.write(framing.putInt(0, (int) crc.getValue()).array(), 0, Integer.BYTES);
+        return RECORD_OVERHEAD + bytes.length;
+    }
+
+    private QldbRevision readRevision(final IndexEntry entry) {
+        ByteBuffer record = read(entry.offset, entry.length);
+        int length = entry.length - RECORD_OVERHEAD;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), Integer.BYTES,
+                length))) {
+            in.readByte();
+            in.readUTF();
+            String documentId = in.readUTF();
+            long version = in.readLong();
+            long txTimeMillis = in.readLong();
+            Date txTime = txTimeMillis != CompactJournalBlock.NO_TX_TIME ? new Date(txTimeMillis) : null;
+            String txId = readOptionalUTF(in);
+            BlockAddress blockAddress = new BlockAddress(readOptionalUTF(in), in.readLong());
+            byte[] hash = new byte[in.readUnsignedShort()];
+            in.readFully(hash);
+            byte[] data = new byte[in.available()];
+            in.readFully(data);
+            return new QldbRevision(blockAddress, new QldbRevision.Metadata(documentId, version, txTime, txId), hash,
+                    (IonStruct) SYSTEM.singleValue(data));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static void writeOptionalUTF(final DataOutputStream out, final String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readOptionalUTF(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private ByteBuffer read(final long position, final int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IllegalStateException("Replica log in " + directory + " ends before "
+                            + (position + length));
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not read replica log in " + directory, ioe);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final class IndexEntry {
+        private final long offset;
+        private final int length;
+        private final long version;
+        private final String tableName;
+        private final boolean deleted;
+
+        IndexEntry(final long offset, final int length, final long version, final String tableName,
+                   final boolean deleted) {
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+            this.tableName = tableName;
+            this.deleted = deleted;
+        }
+    }
+}
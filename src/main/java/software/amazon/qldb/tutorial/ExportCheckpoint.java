@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+
+/**
+ * The last fully processed block of every strand of an export, saved to a local Ion file so that a consumer
+ * that fails halfway through can resume instead of starting over.
+ *
+ * Given a checkpoint, {@link JournalS3ExportReader} skips every data file whose blocks were all processed and,
+ * within the first file not fully processed, every block up to the checkpoint. Recovery therefore re-reads at
+ * most one data file per strand.
+ */
+public final class ExportCheckpoint {
+    public static final Logger log = LoggerFactory.getLogger(ExportCheckpoint.class);
+
+    private final Map<String, BlockAddress> lastProcessed = new TreeMap<>();
+
+    /**
+     * Create an empty checkpoint, for a consumer starting from the beginning of the export.
+     */
+    public ExportCheckpoint() {
+    }
+
+    @JsonCreator
+    public ExportCheckpoint(@JsonProperty("lastProcessed") final List<BlockAddress> lastProcessed) {
+        if (lastProcessed != null) {
+            lastProcessed.forEach(this::record);
+        }
+    }
+
+    /**
+     * @return the last processed block of every strand, ordered by strand.
+     */
+    public synchronized List<BlockAddress> getLastProcessed() {
+        return new ArrayList<>(lastProcessed.values());
+    }
+
+    /**
+     * Record that a block, and every block before it on its strand, has been fully processed.
+     *
+     * @param blockAddress
+     *              The address of the processed block.
+     */
+    public synchronized void record(final BlockAddress blockAddress) {
+        lastProcessed.merge(blockAddress.getStrandId(), blockAddress,
+            (previous, current) -> current.getSequenceNo() > previous.getSequenceNo() ? current : previous);
+    }
+
+    /**
+     * @param blockAddress
+     *              The address of a block.
+     * @return whether the block was processed before this checkpoint was taken.
+     */
+    public synchronized boolean isProcessed(final BlockAddress blockAddress) {
+        BlockAddress last = lastProcessed.get(blockAddress.getStrandId());
+        return last != null && blockAddress.getSequenceNo() <= last.getSequenceNo();
+    }
+
+    /**
+     * @param strandId
+     *              The strand of the data file.
+     * @param lastSequenceNo
+     *              The sequence number of the last block in the data file.
+     * @return whether every block of the data file was processed before this checkpoint was taken.
+     */
+    public synchronized boolean isDataFileProcessed(final String strandId, final long lastSequenceNo) {
+        BlockAddress last = lastProcessed.get(strandId);
+        return last != null && lastSequenceNo <= last.getSequenceNo();
+    }
+
+    /**
+     * Wrap a block processor so that each block is recorded once it has been processed, and the checkpoint is
+     * saved every {@code saveInterval} blocks. Blocks must be processed in order within each strand. Closing the
+     * returned processor saves the blocks processed since the last interval boundary.
+     *
+     * @param processor
+     *              The processor of each block.
+     * @param file
+     *              The checkpoint file.
+     * @param saveInterval
+     *              The number of blocks processed between two saves.
+     * @return the wrapping processor.
+     */
+    public Recording recording(final Consumer<JournalBlock> processor, final Path file, final int saveInterval) {
+        if (saveInterval <= 0) {
+            throw new IllegalArgumentException("Save interval must be positive.");
+        }
+        return new Recording(processor, file, saveInterval);
+    }
+
+    /**
+     * A block processor that records each processed block in the checkpoint and saves it periodically.
+     *
+     * @see #recording(Consumer, Path, int)
+     */
+    public final class Recording implements Consumer<JournalBlock>, Closeable {
+        private final Consumer<JournalBlock> processor;
+        private final Path file;
+        private final int saveInterval;
+        private int unsaved;
+
+        private Recording(final Consumer<JournalBlock> processor, final Path file, final int saveInterval) {
+            this.processor = processor;
+            this.file = file;
+            this.saveInterval = saveInterval;
+        }
+
+        @Override
+        public void accept(final JournalBlock block) {
+            processor.accept(block);
+            record(block.getBlockAddress());
+            if (++unsaved == saveInterval) {
+                flush();
+            }
+        }
+
+        /**
+         * Save the checkpoint if any block was processed since it was last saved.
+         *
+         * @throws UncheckedIOException if the file cannot be written.
+         */
+        public void flush() {
+            if (unsaved > 0) {
+                save(file);
+                unsaved = 0;
+            }
+        }
+
+        /**
+         * Save the blocks processed since the last interval boundary.
+         *
+         * @throws UncheckedIOException if the file cannot be written.
+         */
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+
+    /**
+     * Read a checkpoint from a file.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @return the checkpoint, or an empty checkpoint if the file does not exist.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static ExportCheckpoint load(final Path file) {
+        ExportCheckpoint checkpoint = CheckpointFiles.read(file, ExportCheckpoint.class);
+        if (checkpoint == null) {
+            return new ExportCheckpoint();
+        }
+        log.info("Loaded export checkpoint from {}: {}", file, checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Write the checkpoint to a file. The checkpoint is forced to disk next to the file first and then atomically
+     * moved over it, so an interrupted save or a crash leaves the previous checkpoint intact.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @throws UncheckedIOException if the file cannot be written.
+     */
+    public void save(final Path file) {
+        CheckpointFiles.write(file, this);
+        log.debug("Saved export checkpoint to {}: {}", file, this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ExportCheckpoint{"
+                + "lastProcessed=" + lastProcessed.values()
+                + '}';
+    }
+}
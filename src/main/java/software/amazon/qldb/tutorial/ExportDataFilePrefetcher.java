@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+/**
+ * Downloads the data files of a journal export ahead of their consumer, while handing them out in manifest order.
+ *
+ * All downloads are queued when the prefetcher is created and run on a fixed pool of {@code parallelism} threads.
+ * Before a file is downloaded its size is looked up and reserved against the in-flight byte budget. Reservations
+ * are granted strictly in manifest order, so the next file the consumer needs is never starved by files behind it.
+ * The reservation is returned when the consumer closes the stream it was handed.
+ */
+public final class ExportDataFilePrefetcher implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(ExportDataFilePrefetcher.class);
+
+    private final ExportSource source;
+    private final List<String> dataFileKeys;
+    private final List<Future<byte[]>> downloads;
+    private final ByteBudget budget;
+    private final ExecutorService executor;
+    private int nextIndex;
+
+    /**
+     * Start downloading the given data files.
+     *
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param bucket
+     *              The bucket containing the data files.
+     * @param dataFileKeys
+     *              The keys of the data files, in the order they will be consumed.
+     * @param parallelism
+     *              The maximum number of data files downloaded at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of downloaded data files not yet consumed.
+     */
+    public ExportDataFilePrefetcher(final AmazonS3 amazonS3, final String bucket, final List<String> dataFileKeys,
+                                    final int parallelism, final long maxInFlightBytes) {
+        this(new S3ExportSource(amazonS3, bucket), dataFileKeys, parallelism, maxInFlightBytes);
+    }
+
+    /**
+     * Start downloading the given data files.
+     *
+     * @param source
+     *              The source to read the data files from.
+     * @param dataFileKeys
+     *              The keys of the data files, in the order they will be consumed.
+     * @param parallelism
+     *              The maximum number of data files downloaded at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of downloaded data files not yet consumed.
+     */
+    public ExportDataFilePrefetcher(final ExportSource source, final List<String> dataFileKeys,
+                                    final int parallelism, final long maxInFlightBytes) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (maxInFlightBytes <= 0) {
+            throw new IllegalArgumentException("In-flight byte budget must be positive.");
+        }
+        this.source = source;
+        this.dataFileKeys = new ArrayList<>(dataFileKeys);
+        this.budget = new ByteBudget(maxInFlightBytes);
+        this.executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("export-prefetch-"));
+        this.downloads = new ArrayList<>(this.dataFileKeys.size());
+        for (int i = 0; i < this.dataFileKeys.size(); i++) {
+            final int ticket = i;
+            downloads.add(executor.submit(() -> download(ticket, this.dataFileKeys.get(ticket))));
+        }
+    }
+
+    /**
+     * Take the content of the next data file, waiting for its download to complete. Data files must be taken
+     * in the order their keys were given. Closing the returned stream returns its bytes to the budget.
+     *
+     * @param key
+     *              The key of the next data file.
+     * @return the content of the data file.
+     * @throws IllegalStateException if the key is not the next one, or the download failed.
+     */
+    public InputStream take(final String key) {
+        if (nextIndex >= dataFileKeys.size() || !dataFileKeys.get(nextIndex).equals(key)) {
+            throw new IllegalStateException("Data file " + key + " was not taken in manifest order.");
+        }
+        Future<byte[]> download = downloads.set(nextIndex++, null);
+        byte[] content;
+        try {
+            content = download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for data file " + key, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to download data file " + key, e.getCause());
+        }
+        return new ByteArrayInputStream(content) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                if (!released) {
+                    released = true;
+                    budget.release(content.length);
+                }
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Cancel all downloads that have not been taken yet.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private byte[] download(final int ticket, final String key) throws Exception {
+        long size;
+        try {
+            size = source.getSize(key);
+        } catch (RuntimeException e) {
+            // Let the files behind this one reserve their bytes.
+            budget.acquire(ticket, 0);
+            throw e;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            budget.acquire(ticket, 0);
+            throw new IllegalStateException("Data file " + key + " is too large to buffer: " + size + " bytes");
+        }
+        budget.acquire(ticket, size);
+        try (InputStream content = source.open(key)) {
+            return readFully(content, (int) size, key);
+        } catch (Exception e) {
+            budget.release(size);
+            throw e;
+        }
+    }
+
+    private static byte[] readFully(final InputStream in, final int size, final String key) throws IOException {
+        byte[] content = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int read = in.read(content, offset, size - offset);
+            if (read < 0) {
+                throw new IllegalStateException("Data file " + key + " ended after " + offset + " of "
+                    + size + " bytes");
+            }
+            offset += read;
+        }
+        return content;
+    }
+
+    /**
+     * A budget of bytes that is handed out in ticket order. A request larger than the whole budget is only
+     * granted when nothing else is in flight.
+     */
+    private static final class ByteBudget {
+        private final long capacity;
+        private long available;
+        private int nextTicket;
+
+        ByteBudget(final long capacity) {
+            this.capacity = capacity;
+            this.available = capacity;
+        }
+
+        synchronized void acquire(final int ticket, final long bytes) throws InterruptedException {
+            while (ticket != nextTicket || (bytes > available && available != capacity)) {
+                wait();
+            }
+            available -= bytes;
+            nextTicket++;
+            notifyAll();
+        }
+
+        synchronized void release(final long bytes) {
+            available += bytes;
+            notifyAll();
+        }
+    }
+}
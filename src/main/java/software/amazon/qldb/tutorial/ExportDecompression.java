@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Transparent decompression of export manifests and data files that were archived compressed.
+ *
+ * The format is detected from the first bytes of the content rather than from the name, so a compressed file
+ * keeps working whatever it is called. Decompression is streamed: only the decompressor's window is buffered,
+ * never the whole file.
+ */
+public final class ExportDecompression {
+    /**
+     * File name suffixes of the compressed formats that are recognized.
+     */
+    static final String[] COMPRESSED_SUFFIXES = {".gz", ".zst"};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAGIC_LENGTH = 4;
+
+    private ExportDecompression() { }
+
+    /**
+     * Wrap the content in a decompressing stream if it is compressed.
+     *
+     * @param content
+     *              The possibly compressed content.
+     * @param name
+     *              The key or file name of the content, for error messages.
+     * @return a stream of the uncompressed content. Closing it closes {@code content}.
+     * @throws IllegalStateException if the content is compressed in a format that cannot be read.
+     * @throws UncheckedIOException if the content cannot be read.
+     */
+    public static InputStream decompress(final InputStream content, final String name) {
+        InputStream in = content.markSupported() ? content : new BufferedInputStream(content, BUFFER_SIZE);
+        byte[] magic = new byte[MAGIC_LENGTH];
+        try {
+            in.mark(MAGIC_LENGTH);
+            int length = 0;
+            while (length < MAGIC_LENGTH) {
+                int read = in.read(magic, length, MAGIC_LENGTH - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            in.reset();
+
+            if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            if (length == MAGIC_LENGTH && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                    && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+                in.close();
+                throw new IllegalStateException(name + " is compressed with zstd, which is not supported. "
+                    + "Recompress it with gzip or store it uncompressed.");
+            }
+            return in;
+        } catch (IOException ioe) {
+            try {
+                in.close();
+            } catch (IOException closeException) {
+                ioe.addSuppressed(closeException);
+            }
+            throw new UncheckedIOException("Failed to read " + name, ioe);
+        }
+    }
+
+    /**
+     * @param fileName
+     *              A file name.
+     * @return the file name without a compressed format suffix, or the file name itself if it has none.
+     */
+    public static String stripCompressedSuffix(final String fileName) {
+        for (String suffix : COMPRESSED_SUFFIXES) {
+            if (fileName.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+}
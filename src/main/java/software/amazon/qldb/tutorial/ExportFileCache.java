@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A size-bounded local disk cache of S3 objects, keyed by bucket and key.
+ *
+ * QLDB never rewrites the manifests and data files of a completed journal export, so an object's bucket and key
+ * identify its content and a cached copy can be served without asking S3 whether it changed. Each cached object
+ * is stored in its own file, named after the SHA-256 of its bucket and key. Files are evicted least recently used first once
+ * the cache grows beyond its size limit. Recency is kept in the files' modification times, so the eviction
+ * order survives across runs. Cached files are read back through memory-mapped I/O.
+ */
+public final class ExportFileCache {
+    public static final Logger log = LoggerFactory.getLogger(ExportFileCache.class);
+    private static final String SUFFIX = ".cached";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Open a cache in the given directory, picking up the files cached by earlier runs.
+     *
+     * @param directory
+     *              The directory holding the cached files. Created if it does not exist.
+     * @param maxBytes
+     *              The total size the cached files may reach before the least recently used are evicted.
+     * @throws UncheckedIOException if the directory cannot be created or listed.
+     */
+    public ExportFileCache(final Path directory, final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        this.directory = directory.toAbsolutePath();
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(this.directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(this.directory)) {
+                files = listing
+                    .filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(ExportFileCache::lastModifiedTime))
+                    .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                long size = Files.size(file);
+                entries.put(file.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open export file cache " + directory, ioe);
+        }
+        synchronized (this) {
+            evict();
+        }
+        log.info("Opened export file cache {} with {} files, {} bytes.", this.directory, entries.size(), totalBytes);
+    }
+
+    /**
+     * Look up a cached object.
+     *
+     * @param bucket
+     *              The bucket of the object.
+     * @param key
+     *              The key of the object.
+     * @return the memory-mapped content of the object, or {@code null} if it is not cached.
+     */
+    public ByteBuffer get(final String bucket, final String key) {
+        String name = fileName(bucket, key);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(name);
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return map(file);
+        } catch (NoSuchFileException e) {
+            // Evicted by another thread in the meantime.
+            return null;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Store an object, reading its content to the end.
+     *
+     * @param bucket
+     *              The bucket of the object.
+     * @param key
+     *              The key of the object.
+     * @param content
+     *              The content of the object. Not closed.
+     * @return the memory-mapped content of the cached object.
+     * @throws UncheckedIOException if the content cannot be read or written.
+     */
+    public ByteBuffer put(final String bucket, final String key, final InputStream content) {
+        String name = fileName(bucket, key);
+        Path file = directory.resolve(name);
+        try {
+            Path temporary = Files.createTempFile(directory, name, ".tmp");
+            try {
+                long size = Files.copy(content, temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                ByteBuffer mapped = map(file);
+                synchronized (this) {
+                    Long previous = entries.put(name, size);
+                    totalBytes += size - (previous == null ? 0 : previous);
+                    evict();
+                }
+                log.info("Cached s3://{}/{} ({} bytes).", bucket, key, size);
+                return mapped;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not cache s3://" + bucket + "/" + key, ioe);
+        }
+    }
+
+    /**
+     * @return the total size of the cached files.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Delete least recently used files until the cache fits its size limit. Buffers already mapped from a
+     * deleted file stay readable.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException ioe) {
+                log.warn("Could not evict cached file {}", eldest.getKey(), ioe);
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static ByteBuffer map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static FileTime lastModifiedTime(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static String fileName(final String bucket, final String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 message digest is unavailable", e);
+        }
+        for (String part : new String[] {bucket, key}) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest()) {
+            name.append(String.format("%02x", b));
+        }
+        return name.append(SUFFIX).toString();
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.qldb.model.DescribeJournalS3ExportResult;
+
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.JournalBlockDecoder;
+
+/**
+ * Processes a journal export in three overlapping stages, so that network, parsing and hashing work run at the
+ * same time instead of taking turns on one thread:
+ *
+ * <ol>
+ *     <li>download: data files are read from the {@link ExportSource} by an {@link ExportDataFilePrefetcher},
+ *     bounded by its in-flight byte budget;</li>
+ *     <li>decode: whole data files are decoded into blocks on a pool of threads, bounded by the number of
+ *     decoded files waiting to be consumed;</li>
+ *     <li>verify: the consumer of {@link #stream}, for example {@link #verify} with a
+ *     {@link JournalChainVerifier}, which runs its own per-block checks in parallel.</li>
+ * </ol>
+ *
+ * Each bound applies backpressure to the stage before it, and blocks always come out in manifest order. Every
+ * stage records the time it spent working and the amount of data it processed in a {@link StageMetrics}.
+ */
+public final class ExportPipeline {
+    public static final Logger log = LoggerFactory.getLogger(ExportPipeline.class);
+
+    private final ExportSource source;
+    private final JournalBlockDecoder decoder;
+    private final int downloadParallelism;
+    private final long maxInFlightBytes;
+    private final int decodeParallelism;
+    private final int maxDecodedFiles;
+    private final StageMetrics downloadMetrics = new StageMetrics("download");
+    private final StageMetrics decodeMetrics = new StageMetrics("decode");
+    private final StageMetrics verifyMetrics = new StageMetrics("verify");
+    private final LongAdder consumerWaitNanos = new LongAdder();
+
+    /**
+     * @param source
+     *              The source of the export's manifests and data files.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @param downloadParallelism
+     *              The maximum number of data files downloaded at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of downloaded data files waiting to be decoded.
+     * @param decodeParallelism
+     *              The number of threads decoding data files.
+     * @param maxDecodedFiles
+     *              The maximum number of data files being decoded or waiting to be consumed.
+     */
+    public ExportPipeline(final ExportSource source, final JournalBlockDecoder decoder, final int downloadParallelism,
+                          final long maxInFlightBytes, final int decodeParallelism, final int maxDecodedFiles) {
+        if (decodeParallelism <= 0) {
+            throw new IllegalArgumentException("Decode parallelism must be positive.");
+        }
+        if (maxDecodedFiles <= 0) {
+            throw new IllegalArgumentException("The number of decoded files must be positive.");
+        }
+        this.source = source;
+        this.decoder = decoder;
+        this.downloadParallelism = downloadParallelism;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.decodeParallelism = decodeParallelism;
+        this.maxDecodedFiles = maxDecodedFiles;
+    }
+
+    /**
+     * Start the download and decode stages and stream the decoded blocks. The stream must be closed to stop the
+     * stages if it is not read to the end.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @return a sequential stream of {@link JournalBlock}, in manifest order.
+     * @throws IllegalStateException while reading the stream, if a data file cannot be read, is empty or its
+     *         blocks do not match the range in its key.
+     */
+    public Stream<JournalBlock> stream(final DescribeJournalS3ExportResult describeJournalS3ExportResult) {
+        List<String> dataFileKeys = JournalS3ExportReader.getDataFileKeys(describeJournalS3ExportResult, source);
+        ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(new MeteredExportSource(source),
+            dataFileKeys, downloadParallelism, maxInFlightBytes);
+        ExecutorService decodePool = Executors.newFixedThreadPool(decodeParallelism,
+            new DaemonThreadFactory("export-decode-"));
+        BlockingQueue<Future<List<JournalBlock>>> decodedFiles = new ArrayBlockingQueue<>(maxDecodedFiles);
+        Thread dispatcher = new DaemonThreadFactory("export-dispatch-")
+            .newThread(() -> dispatch(dataFileKeys, prefetcher, decodePool, decodedFiles));
+        dispatcher.start();
+
+        DecodedBlockIterator iterator = new DecodedBlockIterator(dataFileKeys.size(), decodedFiles);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                dispatcher.interrupt();
+                decodePool.shutdownNow();
+                prefetcher.close();
+                log.info("Export pipeline metrics: {}", getMetrics());
+            });
+    }
+
+    /**
+     * Run the whole export through the pipeline into the given verifier.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param verifier
+     *              The verifier checking the blocks.
+     * @return the number of blocks verified.
+     * @throws IllegalStateException if the export cannot be read or a block fails verification.
+     */
+    public long verify(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                       final JournalChainVerifier verifier) {
+        long waitedBefore = consumerWaitNanos.sum();
+        long start = System.nanoTime();
+        long count;
+        try (Stream<JournalBlock> blocks = stream(describeJournalS3ExportResult)) {
+            count = verifier.verify(blocks);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            verifyMetrics.busyNanos.add(elapsed - (consumerWaitNanos.sum() - waitedBefore));
+        }
+        verifyMetrics.items.add(count);
+        return count;
+    }
+
+    /**
+     * @return the metrics of the download, decode and verify stages, in that order.
+     */
+    public List<StageMetrics> getMetrics() {
+        return Collections.unmodifiableList(Arrays.asList(downloadMetrics, decodeMetrics, verifyMetrics));
+    }
+
+    /**
+     * Take downloaded data files in manifest order and hand them to the decode pool. Putting each pending decode
+     * into the bounded queue blocks while the consumer is behind.
+     */
+    private void dispatch(final List<String> dataFileKeys, final ExportDataFilePrefetcher prefetcher,
+                          final ExecutorService decodePool,
+                          final BlockingQueue<Future<List<JournalBlock>>> decodedFiles) {
+        try {
+            for (String key : dataFileKeys) {
+                Future<List<JournalBlock>> decoded;
+                try {
+                    InputStream content = prefetcher.take(key);
+                    decoded = decodePool.submit(() -> decode(key, content));
+                } catch (RuntimeException e) {
+                    CompletableFuture<List<JournalBlock>> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    decodedFiles.put(failed);
+                    return;
+                }
+                decodedFiles.put(decoded);
+            }
+        } catch (InterruptedException e) {
+            // The stream was closed.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<JournalBlock> decode(final String key, final InputStream content) {
+        long start = System.nanoTime();
+        long bytes = available(content);
+        List<JournalBlock> blocks = JournalS3ExportReader.readDataFile(key, content, decoder);
+        decodeMetrics.busyNanos.add(System.nanoTime() - start);
+        decodeMetrics.items.add(blocks.size());
+        decodeMetrics.bytes.add(bytes);
+        return blocks;
+    }
+
+    private static long available(final InputStream content) {
+        try {
+            return content.available();
+        } catch (IOException ioe) {
+            return 0;
+        }
+    }
+
+    /**
+     * Hands out the blocks of the decoded data files in order, waiting for each file's decode to finish.
+     */
+    private final class DecodedBlockIterator implements Iterator<JournalBlock> {
+        private final BlockingQueue<Future<List<JournalBlock>>> decodedFiles;
+        private int remainingFiles;
+        private Iterator<JournalBlock> current = Collections.emptyIterator();
+
+        DecodedBlockIterator(final int fileCount, final BlockingQueue<Future<List<JournalBlock>>> decodedFiles) {
+            this.remainingFiles = fileCount;
+            this.decodedFiles = decodedFiles;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (remainingFiles == 0) {
+                    return false;
+                }
+                current = takeNextFile().iterator();
+                remainingFiles--;
+            }
+            return true;
+        }
+
+        @Override
+        public JournalBlock next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private List<JournalBlock> takeNextFile() {
+            long start = System.nanoTime();
+            try {
+                return decodedFiles.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for decoded blocks", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Failed to decode data file", e.getCause());
+            } finally {
+                consumerWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from each data file and the time spent reading them.
+     */
+    private final class MeteredExportSource implements ExportSource {
+        private final ExportSource delegate;
+
+        MeteredExportSource(final ExportSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<String> listKeys(final String prefix) {
+            return delegate.listKeys(prefix);
+        }
+
+        @Override
+        public boolean exists(final String key) {
+            return delegate.exists(key);
+        }
+
+        @Override
+        public long getSize(final String key) {
+            return delegate.getSize(key);
+        }
+
+        @Override
+        public InputStream open(final String key) {
+            long start = System.nanoTime();
+            InputStream content = delegate.open(key);
+            downloadMetrics.busyNanos.add(System.nanoTime() - start);
+            downloadMetrics.items.increment();
+            return new FilterInputStream(content) {
+                @Override
+                public int read() throws IOException {
+                    long readStart = System.nanoTime();
+                    int b = super.read();
+                    downloadMetrics.busyNanos.add(System.nanoTime() - readStart);
+                    if (b >= 0) {
+                        downloadMetrics.bytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    long readStart = System.nanoTime();
+                    int read = super.read(buffer, offset, length);
+                    downloadMetrics.busyNanos.add(System.nanoTime() - readStart);
+                    if (read > 0) {
+                        downloadMetrics.bytes.add(read);
+                    }
+                    return read;
+                }
+            };
+        }
+    }
+
+    /**
+     * The work done by one stage of the pipeline. Busy time is summed over all threads of the stage, so the
+     * throughput is per thread; items are data files for the download stage and blocks for the others.
+     */
+    public static final class StageMetrics {
+        private final String name;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        StageMetrics(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getItemCount() {
+            return items.sum();
+        }
+
+        public long getByteCount() {
+            return bytes.sum();
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * @return the items processed per second of busy time, or 0 if the stage has not done any work.
+         */
+        public double getItemsPerSecond() {
+            long busy = getBusyNanos();
+            return busy <= 0 ? 0 : getItemCount() * (double) TimeUnit.SECONDS.toNanos(1) / busy;
+        }
+
+        /**
+         * @return the bytes processed per second of busy time, or 0 if the stage has not done any work.
+         */
+        public double getBytesPerSecond() {
+            long busy = getBusyNanos();
+            return busy <= 0 ? 0 : getByteCount() * (double) TimeUnit.SECONDS.toNanos(1) / busy;
+        }
+
+        @Override
+        public String toString() {
+            return "StageMetrics{"
+                + "name='" + name + '\''
+                + ", items=" + getItemCount()
+                + ", bytes=" + getByteCount()
+                + ", busyMillis=" + TimeUnit.NANOSECONDS.toMillis(getBusyNanos())
+                + ", itemsPerSecond=" + String.format("%.1f", getItemsPerSecond())
+                + ", bytesPerSecond=" + String.format("%.1f", getBytesPerSecond())
+                + '}';
+        }
+    }
+}
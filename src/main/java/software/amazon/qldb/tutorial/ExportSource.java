@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Where the objects of a journal export are read from: the manifests and data files written by QLDB under the
+ * export's prefix. Keys are the S3 keys of the objects, relative to the bucket of the export.
+ *
+ * Implementations must be safe to use from several threads at once.
+ */
+public interface ExportSource {
+
+    /**
+     * List the keys of all objects starting with the given prefix.
+     *
+     * @param prefix
+     *              The prefix of the keys to list.
+     * @return the keys, in lexicographic order.
+     */
+    List<String> listKeys(String prefix);
+
+    /**
+     * Check whether an object exists, without listing. The default implementation lists the key as a prefix.
+     *
+     * @param key
+     *              The key of the object.
+     * @return {@code true} if the object exists.
+     */
+    default boolean exists(final String key) {
+        return listKeys(key).contains(key);
+    }
+
+    /**
+     * @param key
+     *              The key of the object.
+     * @return the size of the object in bytes.
+     */
+    long getSize(String key);
+
+    /**
+     * Open the content of an object. The caller must close the returned stream.
+     *
+     * @param key
+     *              The key of the object.
+     * @return the content of the object.
+     */
+    InputStream open(String key);
+}
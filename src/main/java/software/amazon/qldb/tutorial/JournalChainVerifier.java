@@ -0,0 +1,377 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+/**
+ * Verifies the hash chain of exported journal blocks in a single streaming pass, without calling
+ * {@code GetBlock} for each block.
+ *
+ * Every block is checked on its own: its {@code entriesHash} is recomputed as the Merkle root of its
+ * {@code entriesHashList}, its {@code blockHash} is recomputed by joining the entries hash with the
+ * {@code previousBlockHash}, and the hash of each of its revisions must appear among its entries. These
+ * per-block checks run on an {@link ExecutorService}, a bounded number of blocks ahead of the slowest one.
+ *
+ * The chain itself is checked on the calling thread, in stream order: each block must directly follow the
+ * last block seen on its strand, and its {@code previousBlockHash} must be that block's {@code blockHash}.
+ * Since every {@code blockHash} is itself checked, a verified chain ends in a block hash that commits to
+ * every block before it. For each strand verified from its first block, the block hashes are also folded into a
+ * {@link LedgerDigestAccumulator}, so the result can be compared with the ledger digest.
+ *
+ * The verified state can be saved as a {@link VerificationCheckpoint} and restored in a later run, which then
+ * skips every block up to the checkpoint and carries on the chain and the digest from there.
+ *
+ * The hashes of the revisions themselves are not recomputed here; use a validating
+ * {@link software.amazon.qldb.tutorial.qldb.JournalBlockDecoder} for that.
+ */
+public final class JournalChainVerifier {
+    public static final Logger log = LoggerFactory.getLogger(JournalChainVerifier.class);
+    private static final int BLOCKS_PER_TASK = 32;
+    private static final byte[] EMPTY_HASH = new byte[0];
+
+    private final ExecutorService executor;
+    private final int maxPendingTasks;
+    private final Map<String, BlockAddress> lastBlockAddresses = new HashMap<>();
+    private final Map<String, byte[]> lastBlockHashes = new HashMap<>();
+    private final Map<String, LedgerDigestAccumulator> digestAccumulators = new HashMap<>();
+    private long verifiedBlockCount;
+    private boolean failed;
+
+    /**
+     * Verify blocks on the common {@link ForkJoinPool}.
+     */
+    public JournalChainVerifier() {
+        this(ForkJoinPool.commonPool(), 2 * ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * @param executor
+     *              The executor that runs the per-block checks.
+     * @param maxPendingTasks
+     *              The number of batches of blocks that may wait for their checks before the calling
+     *              thread stops reading ahead.
+     */
+    public JournalChainVerifier(final ExecutorService executor, final int maxPendingTasks) {
+        if (maxPendingTasks <= 0) {
+            throw new IllegalArgumentException("The number of pending tasks must be positive.");
+        }
+        this.executor = executor;
+        this.maxPendingTasks = maxPendingTasks;
+    }
+
+    /**
+     * Create a verifier that carries on from a checkpoint saved by a previous run.
+     *
+     * @param executor
+     *              The executor that runs the per-block checks.
+     * @param maxPendingTasks
+     *              The number of batches of blocks that may wait for their checks before the calling
+     *              thread stops reading ahead.
+     * @param checkpoint
+     *              The checkpoint to resume from.
+     */
+    public JournalChainVerifier(final ExecutorService executor, final int maxPendingTasks,
+                                final VerificationCheckpoint checkpoint) {
+        this(executor, maxPendingTasks);
+        for (VerificationCheckpoint.StrandCheckpoint strand : checkpoint.getStrands()) {
+            BlockAddress address = strand.getLastBlockAddress();
+            if (address == null || address.getStrandId() == null || strand.getLastBlockHash() == null) {
+                throw new IllegalArgumentException("Incomplete strand checkpoint: " + strand);
+            }
+            lastBlockAddresses.put(address.getStrandId(), address);
+            lastBlockHashes.put(address.getStrandId(), strand.getLastBlockHash().clone());
+            if (strand.getDigestPeaks() != null) {
+                digestAccumulators.put(address.getStrandId(),
+                        new LedgerDigestAccumulator(address, strand.getDigestPeaks()));
+            }
+        }
+    }
+
+    /**
+     * Verify the given blocks, continuing the chain of any strand already verified by this verifier. Blocks at
+     * or before the last verified block of their strand are skipped.
+     *
+     * @param blocks
+     *              The blocks to verify, in sequence order within each strand.
+     * @return the number of blocks verified by this call.
+     * @throws IllegalStateException if a block does not match its hashes or does not link to its predecessor.
+     */
+    public long verify(final Stream<JournalBlock> blocks) {
+        return verify(blocks.iterator());
+    }
+
+    /**
+     * Verify the given blocks, continuing the chain of any strand already verified by this verifier. Blocks at
+     * or before the last verified block of their strand are skipped.
+     *
+     * @param blocks
+     *              The blocks to verify, in sequence order within each strand.
+     * @return the number of blocks verified by this call.
+     * @throws IllegalStateException if a block does not match its hashes or does not link to its predecessor.
+     */
+    public long verify(final Iterator<JournalBlock> blocks) {
+        if (failed) {
+            throw new IllegalStateException("A previous verification failed, the verifier cannot be reused.");
+        }
+        ArrayDeque<Future<?>> pending = new ArrayDeque<>();
+        List<JournalBlock> batch = new ArrayList<>(BLOCKS_PER_TASK);
+        long count = 0;
+        long skipped = 0;
+        boolean succeeded = false;
+        try {
+            while (blocks.hasNext()) {
+                JournalBlock block = blocks.next();
+                if (isVerified(block.getBlockAddress())) {
+                    skipped++;
+                    continue;
+                }
+                verifyLink(block);
+                batch.add(block);
+                count++;
+                if (batch.size() == BLOCKS_PER_TASK) {
+                    if (pending.size() == maxPendingTasks) {
+                        await(pending.removeFirst());
+                    }
+                    pending.addLast(submit(batch));
+                    batch = new ArrayList<>(BLOCKS_PER_TASK);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.addLast(submit(batch));
+            }
+            while (!pending.isEmpty()) {
+                await(pending.removeFirst());
+            }
+            succeeded = true;
+        } finally {
+            pending.forEach(future -> future.cancel(false));
+            // The links were recorded before the blocks were checked, so the state cannot be trusted anymore.
+            failed = !succeeded;
+        }
+        verifiedBlockCount += count;
+        log.info("Verified the hash chain of {} blocks, skipped {} blocks verified before.", count, skipped);
+        return count;
+    }
+
+    /**
+     * @return the state of every strand verified so far, to be saved and resumed in a later run.
+     * @throws IllegalStateException if a verification failed.
+     */
+    public VerificationCheckpoint getCheckpoint() {
+        if (failed) {
+            throw new IllegalStateException("A previous verification failed, the verifier cannot be checkpointed.");
+        }
+        List<VerificationCheckpoint.StrandCheckpoint> strands = new ArrayList<>();
+        for (Map.Entry<String, BlockAddress> entry : lastBlockAddresses.entrySet()) {
+            LedgerDigestAccumulator accumulator = digestAccumulators.get(entry.getKey());
+            strands.add(new VerificationCheckpoint.StrandCheckpoint(entry.getValue(),
+                    lastBlockHashes.get(entry.getKey()).clone(),
+                    accumulator == null ? null : accumulator.getPeaks()));
+        }
+        return new VerificationCheckpoint(strands);
+    }
+
+    /**
+     * @param strandId
+     *              The strand to look up.
+     * @return the digest accumulated over the strand, or {@code null} if the strand was not verified from its
+     *         first block.
+     */
+    public LedgerDigestAccumulator getDigestAccumulator(final String strandId) {
+        return digestAccumulators.get(strandId);
+    }
+
+    /**
+     * @return the number of blocks verified by this verifier so far.
+     */
+    public long getVerifiedBlockCount() {
+        return verifiedBlockCount;
+    }
+
+    /**
+     * @param strandId
+     *              The strand to look up.
+     * @return the address of the last block verified on the strand, or {@code null} if there is none.
+     */
+    public BlockAddress getLastBlockAddress(final String strandId) {
+        return lastBlockAddresses.get(strandId);
+    }
+
+    /**
+     * @param strandId
+     *              The strand to look up.
+     * @return the hash of the last block verified on the strand, or {@code null} if there is none.
+     */
+    public byte[] getLastBlockHash(final String strandId) {
+        byte[] hash = lastBlockHashes.get(strandId);
+        return hash == null ? null : hash.clone();
+    }
+
+    /**
+     * Check a single block against its own hashes: the entries hash, the block hash and the presence of each
+     * revision hash among the entries.
+     *
+     * @param block
+     *              The block to check.
+     * @throws IllegalStateException if the block does not match its hashes.
+     */
+    public static void verifyBlock(final JournalBlock block) {
+        BlockAddress address = block.getBlockAddress();
+        byte[][] entriesHashList = block.getEntriesHashList();
+        if (entriesHashList == null || entriesHashList.length == 0) {
+            throw new IllegalStateException("Block has no entries at " + address);
+        }
+        byte[] entriesHash = computeEntriesHash(entriesHashList);
+        if (block.getEntriesHash() != null && !Arrays.equals(entriesHash, block.getEntriesHash())) {
+            throw new IllegalStateException("Entries hash does not match the entries of the block at " + address);
+        }
+        byte[] previousBlockHash = block.getPreviousBlockHash() == null ? EMPTY_HASH : block.getPreviousBlockHash();
+        byte[] blockHash = Verifier.joinHashesPairwise(entriesHash, previousBlockHash);
+        if (!Arrays.equals(blockHash, block.getBlockHash())) {
+            throw new IllegalStateException("Block hash does not match the computed hash of the block at " + address);
+        }
+        List<QldbRevision> revisions = block.getRevisions();
+        if (revisions == null || revisions.isEmpty()) {
+            return;
+        }
+        Set<ByteBuffer> entries = new HashSet<>(entriesHashList.length * 2);
+        for (byte[] entry : entriesHashList) {
+            entries.add(ByteBuffer.wrap(entry));
+        }
+        for (QldbRevision revision : revisions) {
+            if (revision.getHash() != null && !entries.contains(ByteBuffer.wrap(revision.getHash()))) {
+                throw new IllegalStateException("Revision hash is not an entry of the block at " + address);
+            }
+        }
+    }
+
+    /**
+     * Compute the Merkle root of a block's entries: entries are joined pairwise level by level, and an odd
+     * entry at the end of a level is carried up unchanged.
+     *
+     * @param entriesHashList
+     *              The entry hashes of a block.
+     * @return the entries hash of the block.
+     * @throws IllegalArgumentException if an entry is not a 32 byte hash.
+     */
+    public static byte[] computeEntriesHash(final byte[][] entriesHashList) {
+        if (entriesHashList.length == 1) {
+            return entriesHashList[0].clone();
+        }
+        byte[] level = new byte[entriesHashList.length * Verifier.HASH_LENGTH];
+        for (int i = 0; i < entriesHashList.length; i++) {
+            if (entriesHashList[i] == null || entriesHashList[i].length != Verifier.HASH_LENGTH) {
+                throw new IllegalArgumentException("Invalid hash.");
+            }
+            System.arraycopy(entriesHashList[i], 0, level, i * Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        }
+        // Each level is written over the front of the one below it; node i only reads nodes 2i and 2i + 1.
+        int count = entriesHashList.length;
+        while (count > 1) {
+            int pairs = count / 2;
+            for (int i = 0; i < pairs; i++) {
+                Verifier.joinHashesPairwise(level, 2 * i * Verifier.HASH_LENGTH,
+                        level, (2 * i + 1) * Verifier.HASH_LENGTH, level, i * Verifier.HASH_LENGTH);
+            }
+            if (count % 2 == 1) {
+                System.arraycopy(level, (count - 1) * Verifier.HASH_LENGTH, level, pairs * Verifier.HASH_LENGTH,
+                        Verifier.HASH_LENGTH);
+            }
+            count = pairs + count % 2;
+        }
+        return Arrays.copyOf(level, Verifier.HASH_LENGTH);
+    }
+
+    private void verifyLink(final JournalBlock block) {
+        BlockAddress address = block.getBlockAddress();
+        if (address == null || address.getStrandId() == null) {
+            throw new IllegalStateException("Block has no address: " + block);
+        }
+        String strandId = address.getStrandId();
+        BlockAddress lastAddress = lastBlockAddresses.get(strandId);
+        if (lastAddress != null) {
+            if (address.getSequenceNo() != lastAddress.getSequenceNo() + 1) {
+                throw new IllegalStateException("Block at " + address + " does not follow the block at "
+                        + lastAddress);
+            }
+            if (!Arrays.equals(block.getPreviousBlockHash(), lastBlockHashes.get(strandId))) {
+                throw new IllegalStateException("Previous block hash of the block at " + address
+                        + " does not match the hash of the block at " + lastAddress);
+            }
+        }
+        lastBlockAddresses.put(strandId, address);
+        lastBlockHashes.put(strandId, block.getBlockHash());
+        LedgerDigestAccumulator accumulator = digestAccumulators.get(strandId);
+        if (accumulator == null && address.getSequenceNo() == 0) {
+            accumulator = new LedgerDigestAccumulator();
+            digestAccumulators.put(strandId, accumulator);
+        }
+        if (accumulator != null) {
+            accumulator.add(address, block.getBlockHash());
+        }
+    }
+
+    private boolean isVerified(final BlockAddress address) {
+        if (address == null) {
+            return false;
+        }
+        BlockAddress lastAddress = lastBlockAddresses.get(address.getStrandId());
+        return lastAddress != null && address.getSequenceNo() <= lastAddress.getSequenceNo();
+    }
+
+    private Future<?> submit(final List<JournalBlock> batch) {
+        return executor.submit(() -> batch.forEach(JournalChainVerifier::verifyBlock));
+    }
+
+    private static void await(final Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while verifying journal blocks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to verify journal blocks", e.getCause());
+        }
+    }
+}
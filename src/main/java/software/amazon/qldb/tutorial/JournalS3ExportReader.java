@@ -23,42 +23,57 @@ import com.amazon.ion.IonReader;
 import com.amazon.ion.IonString;
 import com.amazon.ion.IonStruct;
 import com.amazon.ion.IonSystem;
-import com.amazon.ion.IonType;
 import com.amazon.ion.system.IonReaderBuilder;
 import com.amazon.ion.system.IonSystemBuilder;
 import com.amazonaws.services.qldb.model.DescribeJournalS3ExportResult;
 import com.amazonaws.services.qldb.model.S3ExportConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsV2Request;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.JournalBlockDecoder;
 
 /**
  * Given bucket, prefix and exportId, read the contents of the export and return
  * a list of {@link JournalBlock}.
  *
+ * Manifests and data files may be gzip-compressed; they are decompressed on the fly by
+ * {@link ExportDecompression}.
+ *
  * This code expects that you have AWS credentials setup per:
  * http://docs.aws.amazon.com/java-sdk/latest/developer-guide/setup-credentials.html
  */
 public final class JournalS3ExportReader {
     public static final Logger log = LoggerFactory.getLogger(JournalS3ExportReader.class);
     private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final JournalBlockDecoder DECODER = new JournalBlockDecoder();
+    private static final int LISTING_PARALLELISM = 8;
 
     private JournalS3ExportReader() { }
 
     /**
      * Read the S3 export within a {@link JournalBlock}.
      *
+     * All blocks of the export are held in memory. Use {@link #streamExport(DescribeJournalS3ExportResult, AmazonS3)}
+     * for exports that do not fit in memory.
+     *
      * @param describeJournalS3ExportResult
      *              The result from the QLDB database describing a journal export.
      * @param amazonS3
@@ -67,60 +82,358 @@ public final class JournalS3ExportReader {
      */
     public static List<JournalBlock> readExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
         final AmazonS3 amazonS3) {
+        try (Stream<JournalBlock> blocks = streamExport(describeJournalS3ExportResult, amazonS3)) {
+            return blocks.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read the S3 export as a stream of {@link JournalBlock}s.
+     *
+     * Data files are downloaded one at a time, in manifest order, and their blocks are decoded as the stream
+     * is consumed, so only the block being processed is held in memory. The stream must be closed to release
+     * the S3 object currently being read.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @throws IllegalStateException if a data file is empty or its blocks do not match the range in its key.
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final AmazonS3 amazonS3) {
+        return streamExport(describeJournalS3ExportResult, amazonS3, DECODER);
+    }
+
+    /**
+     * Read the S3 export as a stream of {@link JournalBlock}s decoded by the given {@link JournalBlockDecoder},
+     * for example one that validates every revision hash while reading.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @throws IllegalStateException if a data file is empty or its blocks do not match the range in its key.
+     * @throws IllegalArgumentException if the decoder validates revision hashes and a revision does not match its hash.
+     * @see #streamExport(DescribeJournalS3ExportResult, AmazonS3)
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final AmazonS3 amazonS3, final JournalBlockDecoder decoder) {
+        return streamExport(describeJournalS3ExportResult, s3ExportSource(describeJournalS3ExportResult, amazonS3),
+            decoder);
+    }
+
+    /**
+     * Read the export from the given {@link ExportSource} as a stream of {@link JournalBlock}s, for example from
+     * a local copy of the export. Data files are opened one at a time, in manifest order.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export. Its bucket is ignored, the
+     *              source is expected to hold the objects of that bucket.
+     * @param source
+     *              The source of the export's manifests and data files.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @throws IllegalStateException if a data file is empty or its blocks do not match the range in its key.
+     * @see #streamExport(DescribeJournalS3ExportResult, AmazonS3)
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final ExportSource source, final JournalBlockDecoder decoder) {
+        List<String> dataFileKeys = getDataFileKeys(describeJournalS3ExportResult, source);
+        return streamBlocks(dataFileKeys, decoder, source::open);
+    }
+
+    /**
+     * Resume reading the S3 export after the blocks recorded in the given checkpoint.
+     *
+     * Data files whose last block is at or before the checkpoint of their strand are not downloaded at all, and
+     * blocks at or before the checkpoint are dropped from the first data file that is read.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param checkpoint
+     *              The last block processed on each strand by a previous run.
+     * @return a sequential stream of the {@link JournalBlock}s not processed yet.
+     * @see ExportCheckpoint#recording
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final AmazonS3 amazonS3, final ExportCheckpoint checkpoint) {
+        return streamExport(describeJournalS3ExportResult, s3ExportSource(describeJournalS3ExportResult, amazonS3),
+            DECODER, checkpoint);
+    }
+
+    /**
+     * Resume reading the export from the given {@link ExportSource} after the blocks recorded in the given
+     * checkpoint.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param source
+     *              The source of the export's manifests and data files.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @param checkpoint
+     *              The last block processed on each strand by a previous run.
+     * @return a sequential stream of the {@link JournalBlock}s not processed yet.
+     * @see #streamExport(DescribeJournalS3ExportResult, AmazonS3, ExportCheckpoint)
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final ExportSource source, final JournalBlockDecoder decoder,
+                                                    final ExportCheckpoint checkpoint) {
+        List<String> allDataFileKeys = getDataFileKeys(describeJournalS3ExportResult, source);
+        List<String> dataFileKeys = allDataFileKeys.stream()
+            .filter(key -> !isDataFileProcessed(key, checkpoint))
+            .collect(Collectors.toList());
+        log.info("Skipping " + (allDataFileKeys.size() - dataFileKeys.size())
+            + " data file(s) processed before " + checkpoint);
+        return streamBlocks(dataFileKeys, decoder, source::open)
+            .filter(block -> !checkpoint.isProcessed(block.getBlockAddress()));
+    }
+
+    /**
+     * Read the S3 export as a stream of {@link JournalBlock}s, downloading data files ahead of the consumer.
+     *
+     * Up to {@code parallelism} data files are downloaded concurrently and buffered in memory, as long as the
+     * buffered files fit in {@code maxInFlightBytes}. Blocks are still delivered in manifest order, which is
+     * (strandId, sequenceNo) order. A single data file larger than the budget is downloaded on its own.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param parallelism
+     *              The maximum number of data files downloaded at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of downloaded data files not yet consumed.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @throws IllegalStateException if a data file cannot be downloaded, is empty or its blocks do not match
+     *              the range in its key.
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final AmazonS3 amazonS3, final int parallelism,
+                                                    final long maxInFlightBytes) {
+        return streamExport(describeJournalS3ExportResult, amazonS3, DECODER, parallelism, maxInFlightBytes);
+    }
+
+    /**
+     * Read the S3 export as a stream of {@link JournalBlock}s decoded by the given {@link JournalBlockDecoder},
+     * downloading data files ahead of the consumer.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @param parallelism
+     *              The maximum number of data files downloaded at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of downloaded data files not yet consumed.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @see #streamExport(DescribeJournalS3ExportResult, AmazonS3, int, long)
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final AmazonS3 amazonS3, final JournalBlockDecoder decoder,
+                                                    final int parallelism, final long maxInFlightBytes) {
+        return streamExport(describeJournalS3ExportResult, s3ExportSource(describeJournalS3ExportResult, amazonS3),
+            decoder, parallelism, maxInFlightBytes);
+    }
+
+    /**
+     * Read the export from the given {@link ExportSource} as a stream of {@link JournalBlock}s, reading data files
+     * ahead of the consumer.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export. Its bucket is ignored, the
+     *              source is expected to hold the objects of that bucket.
+     * @param source
+     *              The source of the export's manifests and data files.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @param parallelism
+     *              The maximum number of data files read at the same time.
+     * @param maxInFlightBytes
+     *              The maximum number of bytes of read data files not yet consumed.
+     * @return a sequential stream of {@link JournalBlock}.
+     * @see #streamExport(DescribeJournalS3ExportResult, AmazonS3, int, long)
+     */
+    public static Stream<JournalBlock> streamExport(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                                    final ExportSource source, final JournalBlockDecoder decoder,
+                                                    final int parallelism, final long maxInFlightBytes) {
+        List<String> dataFileKeys = getDataFileKeys(describeJournalS3ExportResult, source);
+        ExportDataFilePrefetcher prefetcher =
+            new ExportDataFilePrefetcher(source, dataFileKeys, parallelism, maxInFlightBytes);
+        return streamBlocks(dataFileKeys, decoder, prefetcher::take).onClose(prefetcher::close);
+    }
+
+    private static ExportSource s3ExportSource(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                               final AmazonS3 amazonS3) {
+        return new S3ExportSource(amazonS3,
+            describeJournalS3ExportResult.getExportDescription().getS3ExportConfiguration().getBucket(),
+            LISTING_PARALLELISM);
+    }
+
+    /**
+     * Stream the blocks of the given data files, in order.
+     *
+     * @param dataFileKeys
+     *              The keys of the data files to read.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @param dataFileOpener
+     *              Opens the content of the data file with the given key.
+     * @return a sequential stream of {@link JournalBlock}.
+     */
+    private static Stream<JournalBlock> streamBlocks(final List<String> dataFileKeys, final JournalBlockDecoder decoder,
+                                                     final Function<String, InputStream> dataFileOpener) {
+        JournalBlockIterator iterator = new JournalBlockIterator(dataFileKeys, decoder, dataFileOpener);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
 
+    /**
+     * Find the completed manifest of the export and read the data file keys from it.
+     *
+     * QLDB writes the manifests as {@code [prefix][exportId].started.manifest} and
+     * {@code [prefix][exportId].completed.manifest}, so both are first looked up directly, which takes the same
+     * time however many objects share the prefix. Only if either is missing are the objects under the prefix
+     * listed and searched, first narrowed to the export id and then across the whole prefix.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param source
+     *              The source of the export's objects.
+     * @return a list of data file keys containing the chunk of {@link JournalBlock}.
+     * @throws IllegalStateException if either manifest cannot be found.
+     */
+    static List<String> getDataFileKeys(final DescribeJournalS3ExportResult describeJournalS3ExportResult,
+                                        final ExportSource source) {
         S3ExportConfiguration exportConfiguration =
             describeJournalS3ExportResult.getExportDescription().getS3ExportConfiguration();
+        String prefix = exportConfiguration.getPrefix();
+        String exportId = describeJournalS3ExportResult.getExportDescription().getExportId();
+
+        String initialManifestKey = prefix + exportId + ".started" + ".manifest";
+        String completedManifestFileKey = prefix + exportId + ".completed" + ".manifest";
+        if (!source.exists(initialManifestKey) || !source.exists(completedManifestFileKey)) {
+            log.info("Manifests not found at their expected keys, listing objects under " + prefix);
+            String[] manifestKeys = findManifestKeys(source.listKeys(prefix + exportId), prefix, exportId);
+            if (manifestKeys[0] == null || manifestKeys[1] == null) {
+                List<String> keys = source.listKeys(prefix);
+                log.info("Found the following objects for list from s3: ");
+                keys.forEach(key -> log.info(key));
+                manifestKeys = findManifestKeys(keys, prefix, exportId);
+            }
+            if (manifestKeys[0] == null) {
+                throw new IllegalStateException("Initial manifest not found.");
+            }
+            if (manifestKeys[1] == null) {
+                throw new IllegalStateException("Completed manifest not found.");
+            }
+            initialManifestKey = manifestKeys[0];
+            completedManifestFileKey = manifestKeys[1];
+        }
+
+        log.info("Found the initial manifest with key " + initialManifestKey);
+        log.info("Found the completed manifest with key " + completedManifestFileKey);
 
-        ListObjectsV2Request listObjectsRequest = new ListObjectsV2Request()
-            .withBucketName(exportConfiguration.getBucket())
-            .withPrefix(exportConfiguration.getPrefix());
+        // Read manifest file to find data file keys.
+        List<String> dataFileKeys;
+        try (InputStream completedManifest =
+                 ExportDecompression.decompress(source.open(completedManifestFileKey), completedManifestFileKey)) {
+            dataFileKeys = getDataFileKeysFromManifest(completedManifest);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
 
-        ListObjectsV2Result listObjectsV2Result = amazonS3.listObjectsV2(listObjectsRequest);
-        log.info("Found the following objects for list from s3: ");
-        listObjectsV2Result.getObjectSummaries()
-            .forEach(s3ObjectSummary -> log.info(s3ObjectSummary.getKey()));
+        log.info("Found the following keys in the manifest files: " + dataFileKeys);
+        return dataFileKeys;
+    }
 
+    /**
+     * Search listed keys for the manifests of an export.
+     *
+     * @return the initial and completed manifest keys, each {@code null} if missing.
+     */
+    private static String[] findManifestKeys(final List<String> keys, final String prefix, final String exportId) {
         // Validate initial manifest file was written.
-        String expectedManifestKey = exportConfiguration.getPrefix() +
-                describeJournalS3ExportResult.getExportDescription().getExportId() + ".started" + ".manifest";
-        String initialManifestKey = listObjectsV2Result
-            .getObjectSummaries()
+        String expectedManifestKey = prefix + exportId + ".started" + ".manifest";
+        String initialManifestKey = keys
             .stream()
-            .filter(s3ObjectSummary -> s3ObjectSummary.getKey().equalsIgnoreCase(expectedManifestKey))
-            .map(S3ObjectSummary::getKey)
-            .findFirst().orElseThrow(() -> new IllegalStateException("Initial manifest not found."));
-
-        log.info("Found the initial manifest with key " + initialManifestKey);
+            .filter(key -> key.equalsIgnoreCase(expectedManifestKey))
+            .findFirst().orElse(null);
 
         // Find the final manifest file, it should contain the exportId in it.
-        String completedManifestFileKey = listObjectsV2Result
-            .getObjectSummaries()
+        String completedManifestFileKey = keys
             .stream()
-            .filter(s3ObjectSummary -> s3ObjectSummary.getKey().endsWith("completed.manifest")
-                    && (s3ObjectSummary
-                    .getKey()
-                    .contains(describeJournalS3ExportResult.getExportDescription().getExportId())))
-            .map(S3ObjectSummary::getKey)
-            .findFirst().orElseThrow(() -> new IllegalStateException("Completed manifest not found."));
+            .filter(key -> key.endsWith("completed.manifest") && key.contains(exportId))
+            .findFirst().orElse(null);
 
-        log.info("Found the completed manifest with key " + completedManifestFileKey);
-
-        // Read manifest file to find data file keys.
-        S3Object completedManifestObject = amazonS3.getObject(exportConfiguration.getBucket(), completedManifestFileKey);
-
-        List<String> dataFileKeys = getDataFileKeysFromManifest(completedManifestObject);
+        return new String[] {initialManifestKey, completedManifestFileKey};
+    }
 
-        log.info("Found the following keys in the manifest files: " + dataFileKeys);
+    /**
+     * Decode all blocks of a single data file and check them against the range in its key.
+     *
+     * @param dataFileKey
+     *              The key of the data file.
+     * @param content
+     *              The content of the data file, possibly compressed. Closed on return.
+     * @param decoder
+     *              The decoder used to read each block.
+     * @return the blocks of the data file, in order.
+     * @throws IllegalStateException if the data file is empty or its blocks do not match the range in its key.
+     */
+    static List<JournalBlock> readDataFile(final String dataFileKey, final InputStream content,
+                                           final JournalBlockDecoder decoder) {
+        List<JournalBlock> blocks = new ArrayList<>();
+        try (InputStream in = ExportDecompression.decompress(content, dataFileKey);
+             IonReader reader = SYSTEM.newReader(in)) {
+            while (reader.next() != null) {
+                blocks.add(decoder.decode(reader));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Failed to read data file " + dataFileKey, ioe);
+        }
+        if (blocks.isEmpty()) {
+            throw new IllegalStateException("No blocks found in data file - " + dataFileKey);
+        }
+        log.info("Found " + blocks.size() + " blocks(s) from data file - " + dataFileKey);
+        compareKeyWithContentRange(dataFileKey, blocks.get(0), blocks.get(blocks.size() - 1));
+        return blocks;
+    }
 
-        List<JournalBlock> journalBlocks = new ArrayList<>();
-        for (String key : dataFileKeys) {
-            log.info("Reading file with S3 key " + key + " from bucket: " + exportConfiguration.getBucket());
-            S3Object s3Object = amazonS3.getObject(exportConfiguration.getBucket(), key);
-            List<JournalBlock> blocks = getJournalBlocks(s3Object);
-            compareKeyWithContentRange(key, blocks.get(0), blocks.get(blocks.size() - 1));
-            journalBlocks.addAll(blocks);
+    /**
+     * @param fileKey
+     *              The key of data file, {@code [strandId].[firstSequenceNo]-[lastSequenceNo].ion}.
+     * @param checkpoint
+     *              The last block processed on each strand.
+     * @return whether all blocks of the data file were processed. Keys not following the pattern are never
+     *         considered processed.
+     */
+    private static boolean isDataFileProcessed(final String fileKey, final ExportCheckpoint checkpoint) {
+        String fileName = fileKey.substring(fileKey.lastIndexOf('/') + 1);
+        String[] nameTokens = fileName.split("\\.");
+        if (nameTokens.length < 3) {
+            return false;
+        }
+        String[] rangeTokens = nameTokens[1].split("-");
+        if (rangeTokens.length != 2) {
+            return false;
+        }
+        try {
+            return checkpoint.isDataFileProcessed(nameTokens[0], Long.parseLong(rangeTokens[1]));
+        } catch (NumberFormatException e) {
+            return false;
         }
-        return journalBlocks;
     }
 
     /**
@@ -156,41 +469,15 @@ public final class JournalS3ExportReader {
     }
 
     /**
-     * Retrieve a list of {@link JournalBlock} from the given {@link S3Object}.
-     *
-     * @param s3Object
-     *              A {@link S3Object}.
-     * @return a list of {@link JournalBlock}.
-     * @throws IllegalStateException if invalid IonType is found in the S3 Object.
-     */
-    private static List<JournalBlock> getJournalBlocks(final S3Object s3Object) {
-        IonReader ionReader = SYSTEM.newReader(s3Object.getObjectContent());
-        List<JournalBlock> journalBlocks = new ArrayList<>();
-        // data files contain list of blocks
-        while (ionReader.next() != null) {
-            if (ionReader.getType() != IonType.STRUCT) {
-                throw new IllegalStateException("Expected ion STRUCT but found " + ionReader.getType());
-            }
-            try {
-                journalBlocks.add(Constants.MAPPER.readValue(SYSTEM.newValue(ionReader), JournalBlock.class));
-            } catch (IOException ioe) {
-                throw new IllegalStateException(ioe);
-            }
-        }
-        log.info("Found " + journalBlocks.size() + " blocks(s) from data file - " + s3Object.getKey());
-        return journalBlocks;
-    }
-
-    /**
-     * Given the S3Object to the completed manifest file, return the keys
+     * Given the content of the completed manifest file, return the keys
      * which are part of this export request.
      *
-     * @param s3Object
-     *              A {@link S3Object}.
+     * @param manifest
+     *              The content of the completed manifest.
      * @return a list of data file keys containing the chunk of {@link JournalBlock}.
      */
-    private static List<String> getDataFileKeysFromManifest(final S3Object s3Object) {
-        IonReader ionReader = IonReaderBuilder.standard().build(s3Object.getObjectContent());
+    private static List<String> getDataFileKeysFromManifest(final InputStream manifest) {
+        IonReader ionReader = IonReaderBuilder.standard().build(manifest);
         ionReader.next(); // Read the data
         List<String> keys = new ArrayList<>();
         IonStruct ionStruct = (IonStruct) SYSTEM.newValue(ionReader);
@@ -198,4 +485,103 @@ public final class JournalS3ExportReader {
         ionKeysList.forEach(key -> keys.add(((IonString) key).stringValue()));
         return keys;
     }
+
+    /**
+     * Iterates over the blocks of a list of data files, opening each data file only once the
+     * previous one has been read to the end. Only the first and the last block of the current file are
+     * retained, to check them against the range in the file's key.
+     */
+    private static final class JournalBlockIterator implements Iterator<JournalBlock>, Closeable {
+        private final Iterator<String> dataFileKeys;
+        private final JournalBlockDecoder decoder;
+        private final Function<String, InputStream> dataFileOpener;
+        private String currentKey;
+        private InputStream currentContent;
+        private IonReader currentReader;
+        private JournalBlock firstBlock;
+        private JournalBlock lastBlock;
+        private int blockCount;
+        private JournalBlock next;
+
+        JournalBlockIterator(final List<String> dataFileKeys, final JournalBlockDecoder decoder,
+                             final Function<String, InputStream> dataFileOpener) {
+            this.dataFileKeys = dataFileKeys.iterator();
+            this.decoder = decoder;
+            this.dataFileOpener = dataFileOpener;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (currentReader == null) {
+                    if (!dataFileKeys.hasNext()) {
+                        return false;
+                    }
+                    openNextFile();
+                }
+                if (currentReader.next() != null) {
+                    next = decoder.decode(currentReader);
+                    if (firstBlock == null) {
+                        firstBlock = next;
+                    }
+                    lastBlock = next;
+                    blockCount++;
+                } else {
+                    finishCurrentFile();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public JournalBlock next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JournalBlock block = next;
+            next = null;
+            return block;
+        }
+
+        @Override
+        public void close() {
+            closeCurrentFile();
+        }
+
+        private void openNextFile() {
+            currentKey = dataFileKeys.next();
+            currentContent = ExportDecompression.decompress(dataFileOpener.apply(currentKey), currentKey);
+            currentReader = SYSTEM.newReader(currentContent);
+            firstBlock = null;
+            lastBlock = null;
+            blockCount = 0;
+        }
+
+        private void finishCurrentFile() {
+            closeCurrentFile();
+            if (firstBlock == null) {
+                throw new IllegalStateException("No blocks found in data file - " + currentKey);
+            }
+            log.info("Found " + blockCount + " blocks(s) from data file - " + currentKey);
+            compareKeyWithContentRange(currentKey, firstBlock, lastBlock);
+            firstBlock = null;
+            lastBlock = null;
+        }
+
+        private void closeCurrentFile() {
+            try {
+                if (currentReader != null) {
+                    currentReader.close();
+                }
+                if (currentContent != null) {
+                    currentContent.close();
+                }
+            } catch (IOException ioe) {
+                log.warn("Failed to close data file " + currentKey, ioe);
+            } finally {
+                currentReader = null;
+                currentContent = null;
+            }
+        }
+    }
 }
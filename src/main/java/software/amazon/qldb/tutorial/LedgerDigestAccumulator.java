@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.qldb.model.GetDigestResult;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+
+/**
+ * Computes the digest of a ledger from its journal blocks in a single pass, so that an entire export can be
+ * compared with the result of {@link GetDigest#getDigest(String)} without fetching a proof per block.
+ *
+ * The digest is the root of a Merkle tree whose leaves are the block hashes of the strand in sequence order.
+ * Nodes are joined with {@link Verifier#joinHashesPairwise(byte[], byte[])} and, as for the entries hash of a
+ * block, a node without a sibling is carried up to the next level unchanged. Blocks are folded in as they
+ * arrive: only the root of each complete subtree along the right edge of the tree is kept, one per set bit
+ * of the block count, so memory stays logarithmic in the size of the ledger.
+ *
+ * The accumulator covers a single strand and must be given every block from sequence number 0.
+ */
+public final class LedgerDigestAccumulator {
+    public static final Logger log = LoggerFactory.getLogger(LedgerDigestAccumulator.class);
+    private static final int MAX_HEIGHT = 64;
+
+    private final byte[] peaks = new byte[MAX_HEIGHT * Verifier.HASH_LENGTH];
+    private String strandId;
+    private long blockCount;
+
+    /**
+     * Create an accumulator for a strand starting from its first block.
+     */
+    public LedgerDigestAccumulator() {
+    }
+
+    /**
+     * Resume an accumulator from the state returned by {@link #getTipAddress()} and {@link #getPeaks()}.
+     *
+     * @param tipAddress
+     *              The address of the last block folded into the digest.
+     * @param peaks
+     *              The peaks of the accumulator, smallest subtree first.
+     * @throws IllegalArgumentException if the number of peaks does not match the tip address, or a peak is not
+     *         a 32 byte hash.
+     */
+    public LedgerDigestAccumulator(final BlockAddress tipAddress, final byte[][] peaks) {
+        this.strandId = tipAddress.getStrandId();
+        this.blockCount = tipAddress.getSequenceNo() + 1;
+        if (blockCount <= 0 || peaks == null || peaks.length != Long.bitCount(blockCount)) {
+            throw new IllegalArgumentException("Digest peaks do not match the tip address " + tipAddress);
+        }
+        int index = 0;
+        for (int height = 0; height < MAX_HEIGHT; height++) {
+            if ((blockCount >>> height & 1) == 0) {
+                continue;
+            }
+            byte[] peak = peaks[index++];
+            if (peak == null || peak.length != Verifier.HASH_LENGTH) {
+                throw new IllegalArgumentException("Invalid hash.");
+            }
+            System.arraycopy(peak, 0, this.peaks, height * Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        }
+    }
+
+    /**
+     * Fold the next block of the strand into the digest.
+     *
+     * @param block
+     *              The block following the last one added.
+     * @throws IllegalStateException if the block is not the next block of the strand.
+     */
+    public void add(final JournalBlock block) {
+        add(block.getBlockAddress(), block.getBlockHash());
+    }
+
+    /**
+     * Fold the hash of the next block of the strand into the digest.
+     *
+     * @param blockAddress
+     *              The address of the block following the last one added.
+     * @param blockHash
+     *              The hash of that block.
+     * @throws IllegalStateException if the block is not the next block of the strand.
+     * @throws IllegalArgumentException if the block hash is not a 32 byte hash.
+     */
+    public void add(final BlockAddress blockAddress, final byte[] blockHash) {
+        if (blockAddress == null || blockAddress.getStrandId() == null) {
+            throw new IllegalStateException("Block has no address.");
+        }
+        if (strandId != null && !strandId.equals(blockAddress.getStrandId())) {
+            throw new IllegalStateException("Block at " + blockAddress + " is not on strand " + strandId);
+        }
+        if (blockAddress.getSequenceNo() != blockCount) {
+            throw new IllegalStateException("Expected the block with sequence number " + blockCount
+                    + " but found the block at " + blockAddress);
+        }
+        if (blockHash == null || blockHash.length != Verifier.HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid hash.");
+        }
+        strandId = blockAddress.getStrandId();
+
+        // Adding a leaf works like incrementing a binary counter: every complete subtree of the same height
+        // is merged into the carry, and the carry becomes the peak at the first free height.
+        byte[] carry = blockHash.clone();
+        int height = 0;
+        for (long count = blockCount; (count & 1) == 1; count >>>= 1) {
+            Verifier.joinHashesPairwise(peaks, height * Verifier.HASH_LENGTH, carry, 0, carry, 0);
+            height++;
+        }
+        System.arraycopy(carry, 0, peaks, height * Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        blockCount++;
+    }
+
+    /**
+     * @return the number of blocks folded into the digest.
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return the address of the last block folded into the digest, or {@code null} if there is none.
+     */
+    public BlockAddress getTipAddress() {
+        return blockCount == 0 ? null : new BlockAddress(strandId, blockCount - 1);
+    }
+
+    /**
+     * @return the roots of the complete subtrees accumulated so far, smallest subtree first. Together with the
+     *         tip address they are enough to resume the accumulator.
+     */
+    public byte[][] getPeaks() {
+        byte[][] result = new byte[Long.bitCount(blockCount)][];
+        int index = 0;
+        for (int height = 0; height < MAX_HEIGHT; height++) {
+            if ((blockCount >>> height & 1) == 1) {
+                result[index++] = Arrays.copyOfRange(peaks, height * Verifier.HASH_LENGTH,
+                        (height + 1) * Verifier.HASH_LENGTH);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the digest of the blocks added so far, joining the peaks from the smallest subtree up.
+     *
+     * @return the digest, or an empty array if no block has been added.
+     */
+    public byte[] getDigest() {
+        byte[] digest = null;
+        for (int height = 0; height < MAX_HEIGHT; height++) {
+            if ((blockCount >>> height & 1) == 0) {
+                continue;
+            }
+            if (digest == null) {
+                digest = Arrays.copyOfRange(peaks, height * Verifier.HASH_LENGTH, (height + 1) * Verifier.HASH_LENGTH);
+            } else {
+                Verifier.joinHashesPairwise(peaks, height * Verifier.HASH_LENGTH, digest, 0, digest, 0);
+            }
+        }
+        return digest == null ? new byte[0] : digest;
+    }
+
+    /**
+     * Compare the accumulated digest with a digest returned by QLDB.
+     *
+     * @param getDigestResult
+     *              The result of {@link GetDigest#getDigest(String)}.
+     * @return {@code true} if the digest tip is the last block added and the digests are equal.
+     * @throws IllegalArgumentException if the digest tip address cannot be parsed.
+     */
+    public boolean matches(final GetDigestResult getDigestResult) {
+        BlockAddress tipAddress;
+        try {
+            tipAddress = Constants.MAPPER.readValue(getDigestResult.getDigestTipAddress().getIonText(),
+                    BlockAddress.class);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Could not parse the digest tip address.", ioe);
+        }
+        if (!tipAddress.equals(getTipAddress())) {
+            log.info("Digest tip {} is not the last block added, {}.", tipAddress, getTipAddress());
+            return false;
+        }
+        byte[] expected = Verifier.convertByteBufferToByteArray(getDigestResult.getDigest().asReadOnlyBuffer());
+        return Arrays.equals(expected, getDigest());
+    }
+}
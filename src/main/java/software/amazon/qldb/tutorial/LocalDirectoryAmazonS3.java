@@ -0,0 +1,336 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * A stand-in for {@link com.amazonaws.services.s3.AmazonS3} backed by a local directory, so that journal exports
+ * copied to disk can be read and benchmarked without network access.
+ *
+ * Each bucket is a sub-directory of the root directory, read through a {@link LocalDirectoryExportSource}, so
+ * keys are listed, resolved and memory-mapped exactly as the {@link ExportSource} backend does. Only the read
+ * operations used by {@link JournalS3ExportReader} are supported: object listing, object metadata and object
+ * reads. Every request can optionally be delayed to simulate network latency.
+ *
+ * A listing walks the prefix directory once, on its first page; continuation pages are served from that walk.
+ * The walks of the {@value #MAX_CACHED_LISTINGS} most recently used listings are kept, and a listing's walk is
+ * dropped once its last page has been served.
+ *
+ * ETags are derived from the file size and modification time rather than the content's MD5.
+ */
+public final class LocalDirectoryAmazonS3 extends AbstractAmazonS3 {
+    public static final Logger log = LoggerFactory.getLogger(LocalDirectoryAmazonS3.class);
+    private static final int DEFAULT_MAX_KEYS = 1000;
+    private static final int MAX_CACHED_LISTINGS = 16;
+
+    private final Path rootDirectory;
+    private final long requestLatencyMillis;
+    private final ConcurrentMap<String, LocalDirectoryExportSource> sources = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, List<String>> listings = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param rootDirectory
+     *              The directory containing one sub-directory per bucket.
+     */
+    public LocalDirectoryAmazonS3(final Path rootDirectory) {
+        this(rootDirectory, 0);
+    }
+
+    /**
+     * @param rootDirectory
+     *              The directory containing one sub-directory per bucket.
+     * @param requestLatencyMillis
+     *              The delay added to every request, in milliseconds.
+     */
+    public LocalDirectoryAmazonS3(final Path rootDirectory, final long requestLatencyMillis) {
+        this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+        this.requestLatencyMillis = requestLatencyMillis;
+    }
+
+    @Override
+    public S3Object getObject(final String bucketName, final String key) {
+        simulateLatency();
+        Path file = resolve(bucketName, key);
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(bucketName);
+        s3Object.setKey(key);
+        s3Object.setObjectMetadata(metadata(file, bucketName, key));
+        s3Object.setObjectContent(source(bucketName).open(key));
+        return s3Object;
+    }
+
+    @Override
+    public S3Object getObject(final GetObjectRequest getObjectRequest) {
+        S3Object s3Object = getObject(getObjectRequest.getBucketName(), getObjectRequest.getKey());
+        long[] range = getObjectRequest.getRange();
+        if (range == null) {
+            return s3Object;
+        }
+        try {
+            InputStream content = s3Object.getObjectContent();
+            long skipped = 0;
+            while (skipped < range[0]) {
+                long n = content.skip(range[0] - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            long length = range[1] - range[0] + 1;
+            s3Object.setObjectContent(new BoundedInputStream(content, length));
+            s3Object.getObjectMetadata().setContentLength(
+                Math.max(0, Math.min(length, s3Object.getObjectMetadata().getContentLength() - range[0])));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return s3Object;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(final String bucketName, final String key) {
+        simulateLatency();
+        return metadata(resolve(bucketName, key), bucketName, key);
+    }
+
+    @Override
+    public boolean doesObjectExist(final String bucketName, final String key) {
+        simulateLatency();
+        return source(bucketName).exists(key);
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(final String bucketName, final String prefix) {
+        return listObjectsV2(new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix));
+    }
+
+    /**
+     * Lists keys in lexicographic order, honouring the prefix, delimiter, start-after, max-keys and continuation
+     * token of the request. The continuation token is the last key or common prefix of the previous page.
+     * Keys of compressed files are listed without their compression suffix, as {@link ExportSource#listKeys}.
+     */
+    @Override
+    public ListObjectsV2Result listObjectsV2(final ListObjectsV2Request request) {
+        simulateLatency();
+        String bucketName = request.getBucketName();
+        String prefix = request.getPrefix() == null ? "" : request.getPrefix();
+        String delimiter = request.getDelimiter();
+        String after = request.getContinuationToken() != null ? request.getContinuationToken() : request.getStartAfter();
+        int maxKeys = request.getMaxKeys() == null ? DEFAULT_MAX_KEYS : request.getMaxKeys();
+
+        TreeSet<String> entries = new TreeSet<>();
+        for (String key : listKeys(bucketName, prefix, request.getContinuationToken() != null)) {
+            int delimiterIndex = delimiter == null || delimiter.isEmpty()
+                ? -1 : key.indexOf(delimiter, prefix.length());
+            entries.add(delimiterIndex < 0 ? key : key.substring(0, delimiterIndex + delimiter.length()));
+        }
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(bucketName);
+        result.setPrefix(request.getPrefix());
+        result.setContinuationToken(request.getContinuationToken());
+        List<String> commonPrefixes = new ArrayList<>();
+        int count = 0;
+        String last = null;
+        for (String entry : after == null ? entries : entries.tailSet(after, false)) {
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(last);
+                break;
+            }
+            if (delimiter != null && !delimiter.isEmpty() && entry.endsWith(delimiter)
+                    && entry.indexOf(delimiter, prefix.length()) == entry.length() - delimiter.length()) {
+                commonPrefixes.add(entry);
+            } else {
+                Path file = resolve(bucketName, entry);
+                ObjectMetadata metadata = metadata(file, bucketName, entry);
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setBucketName(bucketName);
+                summary.setKey(entry);
+                summary.setSize(metadata.getContentLength());
+                summary.setETag(metadata.getETag());
+                result.getObjectSummaries().add(summary);
+            }
+            last = entry;
+            count++;
+        }
+        if (!result.isTruncated()) {
+            forgetListing(bucketName, prefix);
+        }
+        result.setCommonPrefixes(commonPrefixes);
+        result.setKeyCount(count);
+        return result;
+    }
+
+    /**
+     * The first page of a listing walks the prefix directory and keeps the keys for the continuation pages that
+     * follow it, so paging through a listing does not walk the directory again. A continuation page whose walk
+     * was evicted walks the directory again.
+     */
+    private List<String> listKeys(final String bucketName, final String prefix, final boolean continuation) {
+        String listingKey = bucketName + "/" + prefix;
+        if (continuation) {
+            synchronized (listings) {
+                List<String> keys = listings.get(listingKey);
+                if (keys != null) {
+                    return keys;
+                }
+            }
+        }
+        List<String> keys = source(bucketName).listKeys(prefix);
+        synchronized (listings) {
+            listings.put(listingKey, keys);
+            Iterator<List<String>> iterator = listings.values().iterator();
+            while (listings.size() > MAX_CACHED_LISTINGS) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return keys;
+    }
+
+    private void forgetListing(final String bucketName, final String prefix) {
+        synchronized (listings) {
+            listings.remove(bucketName + "/" + prefix);
+        }
+    }
+
+    private LocalDirectoryExportSource source(final String bucketName) {
+        return sources.computeIfAbsent(bucketName, name -> new LocalDirectoryExportSource(bucketDirectory(name)));
+    }
+
+    private ObjectMetadata metadata(final Path file, final String bucketName, final String key) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(attributes.size());
+            metadata.setHeader("ETag", Long.toHexString(attributes.size()) + "-"
+                + Long.toHexString(attributes.lastModifiedTime().toMillis()));
+            return metadata;
+        } catch (IOException ioe) {
+            throw noSuchKey(bucketName, key);
+        }
+    }
+
+    private Path resolve(final String bucketName, final String key) {
+        Path file = source(bucketName).resolve(key);
+        if (!Files.isRegularFile(file)) {
+            throw noSuchKey(bucketName, key);
+        }
+        return file;
+    }
+
+    private Path bucketDirectory(final String bucketName) {
+        Path bucketDirectory = rootDirectory.resolve(bucketName).normalize();
+        if (!bucketDirectory.getParent().equals(rootDirectory) || !Files.isDirectory(bucketDirectory)) {
+            AmazonS3Exception exception = new AmazonS3Exception("The specified bucket does not exist: " + bucketName);
+            exception.setStatusCode(404);
+            exception.setErrorCode("NoSuchBucket");
+            throw exception;
+        }
+        return bucketDirectory;
+    }
+
+    private static AmazonS3Exception noSuchKey(final String bucketName, final String key) {
+        AmazonS3Exception exception = new AmazonS3Exception("The specified key does not exist: "
+            + bucketName + "/" + key);
+        exception.setStatusCode(404);
+        exception.setErrorCode("NoSuchKey");
+        return exception;
+    }
+
+    private void simulateLatency() {
+        if (requestLatencyMillis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(requestLatencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating request latency", e);
+        }
+    }
+
+    /**
+     * Limits the number of bytes that can be read from the underlying stream, to serve ranged reads.
+     */
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(final InputStream in, final long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
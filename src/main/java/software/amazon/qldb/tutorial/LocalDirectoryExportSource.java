@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ExportSource} reading a journal export that was copied to a local directory, for example with
+ * {@code aws s3 sync s3://bucket/prefix dir/prefix}. The directory stands for the bucket: each key is a path
+ * relative to it.
+ *
+ * Manifests and data files are memory-mapped rather than read through a stream, so the decoder reads straight
+ * from the page cache and an export on local NVMe is processed at disk speed.
+ *
+ * Files archived compressed keep their compression suffix on disk, for example {@code strand.0-9.ion.gz}, but
+ * are listed and looked up under the key QLDB wrote them with; {@link JournalS3ExportReader} decompresses them.
+ */
+public final class LocalDirectoryExportSource implements ExportSource {
+    public static final Logger log = LoggerFactory.getLogger(LocalDirectoryExportSource.class);
+
+    private final Path rootDirectory;
+
+    /**
+     * @param rootDirectory
+     *              The directory holding the objects of the export's bucket.
+     */
+    public LocalDirectoryExportSource(final Path rootDirectory) {
+        this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Only the directory named by the prefix up to its last {@code /} is walked, not the whole root.
+     */
+    @Override
+    public List<String> listKeys(final String prefix) {
+        Path directory = rootDirectory.resolve(prefix.substring(0, prefix.lastIndexOf('/') + 1)).normalize();
+        if (!directory.startsWith(rootDirectory)) {
+            throw new IllegalArgumentException("Prefix " + prefix + " is outside of " + rootDirectory);
+        }
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files
+                .filter(Files::isRegularFile)
+                .map(this::toKey)
+                .map(ExportDecompression::stripCompressedSuffix)
+                .filter(key -> key.startsWith(prefix))
+                .sorted()
+                .distinct()
+                .collect(Collectors.toList());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not list " + directory, ioe);
+        }
+    }
+
+    @Override
+    public boolean exists(final String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public long getSize(final String key) {
+        try {
+            return Files.size(resolve(key));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not read the size of " + key, ioe);
+        }
+    }
+
+    @Override
+    public InputStream open(final String key) {
+        Path file = resolve(key);
+        log.info("Reading file " + file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not map " + file, ioe);
+        }
+    }
+
+    private String toKey(final Path file) {
+        return rootDirectory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Resolve the file of a key, falling back to a compressed copy of it if the file itself does not exist.
+     */
+    Path resolve(final String key) {
+        Path file = rootDirectory.resolve(key).normalize();
+        if (!file.startsWith(rootDirectory)) {
+            throw new IllegalArgumentException("Key " + key + " is outside of " + rootDirectory);
+        }
+        if (!Files.exists(file)) {
+            for (String suffix : ExportDecompression.COMPRESSED_SUFFIXES) {
+                Path compressed = file.resolveSibling(file.getFileName() + suffix);
+                if (Files.isRegularFile(compressed)) {
+                    return compressed;
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A secondary index from a field value to the ids of the documents holding it, kept off-heap in a memory-mapped
+ * file. Every document holds at most one value, so the index answers both "which document has CarId X" and
+ * "which documents have Owner Y".
+ *
+ * The file starts with a header, followed by two tables of bucket heads and a heap of postings. Each posting
+ * pairs a value with a document id and sits on two chains: the chain of its value's bucket, used by lookups,
+ * and the chain of its document's bucket, used to find the posting to retire when the document changes. Retired
+ * postings are only flagged, and are dropped when the file is rebuilt, which happens once the heap fills up or
+ * the chains grow longer than two postings per bucket on average.
+ *
+ * The header carries a clean flag, which is cleared on disk before the first change after a {@link #force()} and
+ * set again once the changes are forced. A file opened without the flag may hold a torn update, since the pages
+ * of a mapped file reach the disk in no particular order, and should be rebuilt from its source.
+ *
+ * All methods are synchronized, since a rebuild remaps the file.
+ */
+public final class MappedSecondaryIndex implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(MappedSecondaryIndex.class);
+    public static final int DEFAULT_BUCKET_COUNT = 1 << 16;
+    public static final int MAX_BUCKET_COUNT = 1 << 24;
+    private static final int MAGIC = 0x51534958;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int BUCKET_COUNT_OFFSET = 8;
+    private static final int LIVE_COUNT_OFFSET = 12;
+    private static final int POSTING_COUNT_OFFSET = 16;
+    private static final int HEAP_END_OFFSET = 20;
+    private static final int CLEAN_OFFSET = 24;
+    // Next posting of the value chain, next posting of the document chain, retired flag.
+    private static final int POSTING_HEADER_LENGTH = 2 * Integer.BYTES + 1;
+    private static final int RETIRED_OFFSET = 2 * Integer.BYTES;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final boolean openedClean;
+    private int bucketCount;
+
+    private MappedSecondaryIndex(final Path file, final FileChannel channel, final MappedByteBuffer buffer) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bucketCount = buffer.getInt(BUCKET_COUNT_OFFSET);
+        this.openedClean = buffer.get(CLEAN_OFFSET) != 0;
+    }
+
+    /**
+     * Open an index file, creating it with {@link #DEFAULT_BUCKET_COUNT} buckets if it does not exist.
+     *
+     * @param file
+     *              The index file.
+     * @return the index.
+     * @throws UncheckedIOException if the file cannot be opened.
+     */
+    public static MappedSecondaryIndex open(final Path file) {
+        return open(file, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * Open an index file, creating it if it does not exist.
+     *
+     * @param file
+     *              The index file.
+     * @param bucketCount
+     *              The number of buckets of a new file, rounded up to a power of two. Ignored if the file exists.
+     * @return the index.
+     * @throws UncheckedIOException if the file cannot be opened.
+     * @throws IllegalStateException if the file is not an index file.
+     */
+    public static MappedSecondaryIndex open(final Path file, final int bucketCount) {
+        if (bucketCount <= 0 || bucketCount > MAX_BUCKET_COUNT) {
+            throw new IllegalArgumentException("Bucket count must be between 1 and 2^24.");
+        }
+        try {
+            if (!Files.exists(file) || Files.size(file) == 0) {
+                create(file, Integer.highestOneBit(bucketCount) < bucketCount
+                        ? Integer.highestOneBit(bucketCount) << 1 : bucketCount, 0);
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+                channel.close();
+                throw new IllegalStateException(file + " is not a secondary index file.");
+            }
+            return new MappedSecondaryIndex(file, channel, buffer);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open secondary index " + file, ioe);
+        }
+    }
+
+    /**
+     * Set the value of a document, replacing its previous value if any.
+     *
+     * @param documentId
+     *              The id of the document.
+     * @param value
+     *              The value of the indexed field, or {@code null} if the document no longer has one.
+     * @throws IllegalArgumentException if the id or value is longer than 65535 bytes in UTF-8, in which case the
+     *         index is left unchanged.
+     */
+    public synchronized void put(final String documentId, final String value) {
+        byte[] encodedId = encode(documentId);
+        byte[] encodedValue = value != null ? encode(value) : null;
+        int current = findDocumentPosting(encodedId);
+        if (current == 0 ? encodedValue == null : encodedValue != null && valueEquals(current, encodedValue)) {
+            return;
+        }
+        markDirty();
+        if (current != 0) {
+            buffer.put(current + RETIRED_OFFSET, (byte) 1);
+            buffer.putInt(LIVE_COUNT_OFFSET, size() - 1);
+        }
+        if (encodedValue != null) {
+            append(encodedValue, encodedId);
+        }
+    }
+
+    /**
+     * @param s
+     *              A document id or value.
+     * @return whether the string is short enough to be indexed.
+     */
+    public static boolean canIndex(final String s) {
+        // A UTF-8 encoding takes at most three bytes per UTF-16 char, so only long strings need encoding.
+        return s.length() <= MAX_STRING_LENGTH / 3 || s.getBytes(StandardCharsets.UTF_8).length <= MAX_STRING_LENGTH;
+    }
+
+    /**
+     * Remove a document from the index.
+     *
+     * @param documentId
+     *              The id of the document.
+     */
+    public void remove(final String documentId) {
+        put(documentId, null);
+    }
+
+    /**
+     * @param value
+     *              The value of the indexed field.
+     * @return the ids of the documents holding the value, in no particular order.
+     */
+    public synchronized Set<String> getDocumentIds(final String value) {
+        byte[] encodedValue = encode(value);
+        Set<String> documentIds = new LinkedHashSet<>();
+        for (int posting = buffer.getInt(valueBucket(value)); posting != 0; posting = buffer.getInt(posting)) {
+            if (buffer.get(posting + RETIRED_OFFSET) == 0 && valueEquals(posting, encodedValue)) {
+                documentIds.add(readDocumentId(posting));
+            }
+        }
+        return documentIds;
+    }
+
+    /**
+     * @param value
+     *              The value of a field that is unique per document, such as a car id.
+     * @return the id of a document holding the value, or {@code null} if there is none.
+     */
+    public synchronized String getDocumentId(final String value) {
+        byte[] encodedValue = encode(value);
+        for (int posting = buffer.getInt(valueBucket(value)); posting != 0; posting = buffer.getInt(posting)) {
+            if (buffer.get(posting + RETIRED_OFFSET) == 0 && valueEquals(posting, encodedValue)) {
+                return readDocumentId(posting);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param documentId
+     *              The id of the document.
+     * @return the indexed value of the document, or {@code null} if it has none.
+     */
+    public synchronized String getValue(final String documentId) {
+        int posting = findDocumentPosting(documentId);
+        return posting != 0 ? readValue(posting) : null;
+    }
+
+    /**
+     * @return the number of documents in the index.
+     */
+    public synchronized int size() {
+        return buffer.getInt(LIVE_COUNT_OFFSET);
+    }
+
+    /**
+     * @return whether the file was closed or forced after its last change when it was opened. If not, it may hold
+     * a torn update and should be rebuilt.
+     */
+    public boolean wasOpenedClean() {
+        return openedClean;
+    }
+
+    /**
+     * Write the changes made so far to disk, then mark the file clean.
+     */
+    public synchronized void force() {
+        buffer.force();
+        if (buffer.get(CLEAN_OFFSET) == 0) {
+            buffer.put(CLEAN_OFFSET, (byte) 1);
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not close secondary index " + file, ioe);
+        }
+    }
+
+    /**
+     * Clear the clean flag on disk before the first change after a {@link #force()}, so that no change can reach
+     * the disk ahead of it.
+     */
+    private void markDirty() {
+        if (buffer.get(CLEAN_OFFSET) != 0) {
+            buffer.put(CLEAN_OFFSET, (byte) 0);
+            buffer.force();
+        }
+    }
+
+    private void append(final byte[] value, final byte[] documentId) {
+        int length = POSTING_HEADER_LENGTH + 2 * Short.BYTES + value.length + documentId.length;
+        int postingCount = buffer.getInt(POSTING_COUNT_OFFSET);
+        if (buffer.getInt(HEAP_END_OFFSET) + (long) length > buffer.capacity() || postingCount >= 2 * bucketCount) {
+            rebuild(length);
+        }
+        // A rebuilt file starts out clean.
+        markDirty();
+        int posting = buffer.getInt(HEAP_END_OFFSET);
+        int valueBucket = valueBucket(value);
+        int documentBucket = documentBucket(documentId);
+        buffer.putInt(posting, buffer.getInt(valueBucket));
+        buffer.putInt(posting + Integer.BYTES, buffer.getInt(documentBucket));
+        buffer.put(posting + RETIRED_OFFSET, (byte) 0);
+        int position = posting + POSTING_HEADER_LENGTH;
+        buffer.putShort(position, (short) value.length);
+        position += Short.BYTES;
+        putBytes(position, value);
+        position += value.length;
+        buffer.putShort(position, (short) documentId.length);
+        position += Short.BYTES;
+        putBytes(position, documentId);
+        buffer.putInt(valueBucket, posting);
+        buffer.putInt(documentBucket, posting);
+        buffer.putInt(HEAP_END_OFFSET, posting + length);
+        buffer.putInt(POSTING_COUNT_OFFSET, buffer.getInt(POSTING_COUNT_OFFSET) + 1);
+        buffer.putInt(LIVE_COUNT_OFFSET, buffer.getInt(LIVE_COUNT_OFFSET) + 1);
+    }
+
+    /**
+     * Copy the live postings into a new file sized for them and the next posting, with more buckets if the
+     * live postings alone would fill the current ones, then swap it in.
+     *
+     * @throws IllegalStateException if the live postings would fill even {@link #MAX_BUCKET_COUNT} buckets, which
+     * would otherwise rebuild the file on every append.
+     */
+    private void rebuild(final int nextPostingLength) {
+        int live = size();
+        if (live + 1 >= 2 * MAX_BUCKET_COUNT) {
+            throw new IllegalStateException("Secondary index " + file + " cannot hold more than "
+                    + (2 * MAX_BUCKET_COUNT - 1) + " documents.");
+        }
+        int newBucketCount = bucketCount;
+        while (live + 1 >= newBucketCount && newBucketCount < MAX_BUCKET_COUNT) {
+            newBucketCount <<= 1;
+        }
+        int end = buffer.getInt(HEAP_END_OFFSET);
+        long liveBytes = 0;
+        for (int posting = firstPosting(); posting < end; posting += postingLength(posting)) {
+            if (buffer.get(posting + RETIRED_OFFSET) == 0) {
+                liveBytes += postingLength(posting);
+            }
+        }
+        long heapBytes = Math.max(2 * (liveBytes + nextPostingLength), 1 << 16);
+        if (HEADER_LENGTH + 8L * newBucketCount + heapBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Secondary index " + file + " cannot grow beyond 2 GiB.");
+        }
+        Path rebuilt = file.resolveSibling(file.getFileName() + ".rebuild");
+        try {
+            create(rebuilt, newBucketCount, heapBytes);
+            try (MappedSecondaryIndex target = open(rebuilt)) {
+                // Walk the heap in order so that the newest posting of a chain is still first after the copy.
+                for (int posting = firstPosting(); posting < end; posting += postingLength(posting)) {
+                    if (buffer.get(posting + RETIRED_OFFSET) == 0) {
+                        target.append(readBytes(posting + POSTING_HEADER_LENGTH),
+                                readBytes(documentIdPosition(posting)));
+                    }
+                }
+            }
+            buffer.force();
+            channel.close();
+            Files.move(rebuilt, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            bucketCount = newBucketCount;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not rebuild secondary index " + file, ioe);
+        }
+        log.debug("Rebuilt secondary index {} with {} buckets for {} documents.", file, bucketCount, live);
+    }
+
+    private static void create(final Path file, final int bucketCount, final long heapBytes) throws IOException {
+        long size = HEADER_LENGTH + 8L * bucketCount + Math.max(heapBytes, 1 << 16);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(Integer.BYTES, VERSION);
+            buffer.putInt(BUCKET_COUNT_OFFSET, bucketCount);
+            buffer.putInt(LIVE_COUNT_OFFSET, 0);
+            buffer.putInt(POSTING_COUNT_OFFSET, 0);
+            buffer.putInt(HEAP_END_OFFSET, HEADER_LENGTH + 8 * bucketCount);
+            buffer.put(CLEAN_OFFSET, (byte) 1);
+            buffer.force();
+        }
+    }
+
+    private int findDocumentPosting(final String documentId) {
+        return findDocumentPosting(encode(documentId));
+    }
+
+    private int findDocumentPosting(final byte[] encodedId) {
+        int documentBucket = documentBucket(encodedId);
+        for (int posting = buffer.getInt(documentBucket); posting != 0;
+             posting = buffer.getInt(posting + Integer.BYTES)) {
+            if (buffer.get(posting + RETIRED_OFFSET) == 0 && bytesEqual(documentIdPosition(posting), encodedId)) {
+                return posting;
+            }
+        }
+        return 0;
+    }
+
+    private int valueBucket(final String value) {
+        return valueBucket(encode(value));
+    }
+
+    private int valueBucket(final byte[] value) {
+        return HEADER_LENGTH + Integer.BYTES * (hash(value) & (bucketCount - 1));
+    }
+
+    private int documentBucket(final byte[] documentId) {
+        return HEADER_LENGTH + Integer.BYTES * (bucketCount + (hash(documentId) & (bucketCount - 1)));
+    }
+
+    private int firstPosting() {
+        return HEADER_LENGTH + 8 * bucketCount;
+    }
+
+    private int postingLength(final int posting) {
+        int documentIdPosition = documentIdPosition(posting);
+        return documentIdPosition + Short.BYTES + Short.toUnsignedInt(buffer.getShort(documentIdPosition)) - posting;
+    }
+
+    private int documentIdPosition(final int posting) {
+        int valuePosition = posting + POSTING_HEADER_LENGTH;
+        return valuePosition + Short.BYTES + Short.toUnsignedInt(buffer.getShort(valuePosition));
+    }
+
+    private boolean valueEquals(final int posting, final byte[] value) {
+        return bytesEqual(posting + POSTING_HEADER_LENGTH, value);
+    }
+
+    private boolean bytesEqual(final int position, final byte[] expected) {
+        if (Short.toUnsignedInt(buffer.getShort(position)) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(position + Short.BYTES + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readValue(final int posting) {
+        return new String(readBytes(posting + POSTING_HEADER_LENGTH), StandardCharsets.UTF_8);
+    }
+
+    private String readDocumentId(final int posting) {
+        return new String(readBytes(documentIdPosition(posting)), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(final int position) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + Short.BYTES + i);
+        }
+        return bytes;
+    }
+
+    private void putBytes(final int position, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(position + i, bytes[i]);
+        }
+    }
+
+    private static byte[] encode(final String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Cannot index a string of " + bytes.length + " bytes.");
+        }
+        return bytes;
+    }
+
+    private static int hash(final byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        return h ^ (h >>> 16);
+    }
+}
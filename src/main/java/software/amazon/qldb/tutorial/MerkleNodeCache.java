@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe memo of Merkle node hashes keyed by the pair of child hashes they were joined from.
+ *
+ * Proofs for different revisions against the same ledger digest share most of their upper Merkle path. Once
+ * two proofs reach a common ancestor, every further level joins the same pair of hashes, so looking the pair
+ * up here lets each shared node be hashed only once per batch.
+ *
+ * The memo is a direct-mapped table: each pair maps to exactly one slot and a newer pair simply replaces the
+ * older one in that slot. Memory use is therefore fixed by the capacity, and reads and writes need no locks.
+ *
+ * Most pairs, those below the point where proofs meet, are joined only once. A pair is therefore only stored
+ * the second time it misses its slot: the first miss hashes it through a per-thread buffer and just remembers a
+ * fingerprint of the pair, so joins that are never repeated allocate nothing. A stored node is a single array
+ * holding both children and their joined hash.
+ */
+public final class MerkleNodeCache {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final int NODE_LENGTH = 3 * Verifier.HASH_LENGTH;
+    private static final ThreadLocal<byte[]> CHILDREN =
+            ThreadLocal.withInitial(() -> new byte[2 * Verifier.HASH_LENGTH]);
+
+    // Each node is the low child, the high child and their joined hash, back to back.
+    private final AtomicReferenceArray<byte[]> slots;
+    private final AtomicLongArray fingerprints;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MerkleNodeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *              The maximum number of node hashes to remember. Rounded up to a power of two.
+     */
+    public MerkleNodeCache(final int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.fingerprints = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Join two non-empty hashes like {@link Verifier#joinHashesPairwise(byte[], int, byte[], int, byte[], int)},
+     * reusing the remembered result if this pair has been joined before.
+     *
+     * @param h1
+     *              Byte array containing one of the hashes to join.
+     * @param h1Offset
+     *              Offset of the hash within {@code h1}.
+     * @param h2
+     *              Byte array containing the other hash to join.
+     * @param h2Offset
+     *              Offset of the hash within {@code h2}.
+     * @param out
+     *              Byte array receiving the joined hash. The output range may overlap either input.
+     * @param outOffset
+     *              Offset within {@code out} at which the joined hash is written.
+     */
+    public void joinHashesPairwise(final byte[] h1, final int h1Offset, final byte[] h2, final int h2Offset,
+                                   final byte[] out, final int outOffset) {
+        boolean ordered = Verifier.compareHashes(h1, h1Offset, h2, h2Offset) < 0;
+        byte[] low = ordered ? h1 : h2;
+        int lowOffset = ordered ? h1Offset : h2Offset;
+        byte[] high = ordered ? h2 : h1;
+        int highOffset = ordered ? h2Offset : h1Offset;
+
+        int slot = slotFor(low, lowOffset, high, highOffset);
+        byte[] node = slots.get(slot);
+        if (node != null && matches(node, low, lowOffset, high, highOffset)) {
+            System.arraycopy(node, 2 * Verifier.HASH_LENGTH, out, outOffset, Verifier.HASH_LENGTH);
+            hits.increment();
+            return;
+        }
+        misses.increment();
+
+        long fingerprint = fingerprint(low, lowOffset, high, highOffset);
+        if (fingerprints.getAndSet(slot, fingerprint) != fingerprint) {
+            // First sighting of this pair in its slot. Copy the children aside, the output range may overwrite
+            // one of them.
+            byte[] children = CHILDREN.get();
+            System.arraycopy(low, lowOffset, children, 0, Verifier.HASH_LENGTH);
+            System.arraycopy(high, highOffset, children, Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+            Verifier.joinHashesPairwise(children, 0, children, Verifier.HASH_LENGTH, out, outOffset);
+            return;
+        }
+
+        node = new byte[NODE_LENGTH];
+        System.arraycopy(low, lowOffset, node, 0, Verifier.HASH_LENGTH);
+        System.arraycopy(high, highOffset, node, Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        Verifier.joinHashesPairwise(node, 0, node, Verifier.HASH_LENGTH, node, 2 * Verifier.HASH_LENGTH);
+        slots.set(slot, node);
+        System.arraycopy(node, 2 * Verifier.HASH_LENGTH, out, outOffset, Verifier.HASH_LENGTH);
+    }
+
+    /**
+     * @return the number of joins answered from the memo.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of joins that had to be hashed.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * The children are SHA-256 hashes, so any of their bytes are already uniformly distributed.
+     */
+    private int slotFor(final byte[] low, final int lowOffset, final byte[] high, final int highOffset) {
+        int h = (low[lowOffset] & 0xFF)
+                | (low[lowOffset + 1] & 0xFF) << 8
+                | (low[lowOffset + 2] & 0xFF) << 16
+                | (low[lowOffset + 3] & 0xFF) << 24;
+        h = 31 * h + ((high[highOffset] & 0xFF)
+                | (high[highOffset + 1] & 0xFF) << 8
+                | (high[highOffset + 2] & 0xFF) << 16
+                | (high[highOffset + 3] & 0xFF) << 24);
+        return h & mask;
+    }
+
+    /**
+     * A 64-bit summary of a pair, only used to decide whether a pair is worth storing. A collision merely
+     * stores a node that is then checked in full like any other.
+     */
+    private static long fingerprint(final byte[] low, final int lowOffset, final byte[] high, final int highOffset) {
+        long fingerprint = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            fingerprint = fingerprint << 8 | ((low[lowOffset + i] ^ high[highOffset + Long.BYTES + i]) & 0xFF);
+        }
+        return fingerprint;
+    }
+
+    private static boolean matches(final byte[] node, final byte[] low, final int lowOffset, final byte[] high,
+                                   final int highOffset) {
+        for (int i = 0; i < Verifier.HASH_LENGTH; i++) {
+            if (node[i] != low[lowOffset + i] || node[Verifier.HASH_LENGTH + i] != high[highOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
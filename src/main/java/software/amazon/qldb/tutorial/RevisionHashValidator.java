@@ -0,0 +1,316 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.RevisionHashCheck;
+
+/**
+ * Validates revision hashes on a work-stealing {@link ForkJoinPool} while the export is still being decoded.
+ *
+ * A {@link software.amazon.qldb.tutorial.qldb.JournalBlockDecoder} created with a validator hands over one
+ * {@link RevisionHashCheck} per revision. Checks are grouped into batches, and each batch is split across the
+ * pool, so the decoding thread never waits for SHA-256 work unless too many batches are already pending.
+ * Failures do not stop the export; they are collected into a {@link Report} that lists every block address
+ * holding a revision whose hash does not match.
+ *
+ * For very large exports the validator can check a random sample of revisions instead of all of them. The
+ * decoder asks {@link #sample()} once it has read a revision and only submits the ones selected, so skipped
+ * revisions cost no hashing at all. Hash-only revisions are never sampled, since there is nothing to check
+ * them against, so they do not dilute the sample. The report then bounds the fraction of invalid revisions
+ * among the revisions that can be checked; see {@link Report#getInvalidFractionUpperBound(double)}.
+ */
+public final class RevisionHashValidator {
+    public static final Logger log = LoggerFactory.getLogger(RevisionHashValidator.class);
+    private static final int BATCH_SIZE = 256;
+    private static final int SPLIT_THRESHOLD = 16;
+    private static final Comparator<BlockAddress> BLOCK_ADDRESS_ORDER =
+            Comparator.comparing(BlockAddress::getStrandId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                    .thenComparingLong(BlockAddress::getSequenceNo);
+
+    private final ForkJoinPool pool;
+    private final int maxPendingBatches;
+    private final double sampleRate;
+    private final LongAdder revisionsSeen = new LongAdder();
+    private final LongAdder revisionsFailed = new LongAdder();
+    private final Semaphore pendingBatches;
+    private final LongAdder revisionsChecked = new LongAdder();
+    private final ConcurrentSkipListSet<BlockAddress> failedBlockAddresses =
+            new ConcurrentSkipListSet<>(BLOCK_ADDRESS_ORDER);
+    private List<RevisionHashCheck> batch = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * Validate revisions on the common {@link ForkJoinPool}.
+     */
+    public RevisionHashValidator() {
+        this(ForkJoinPool.commonPool(), 4 * ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * @param pool
+     *              The {@link ForkJoinPool} to validate revisions on.
+     * @param maxPendingBatches
+     *              The number of batches that may wait for validation before {@link #submit} blocks, which bounds
+     *              the memory held by pending checks.
+     */
+    public RevisionHashValidator(final ForkJoinPool pool, final int maxPendingBatches) {
+        this(pool, maxPendingBatches, 1.0);
+    }
+
+    /**
+     * @param pool
+     *              The {@link ForkJoinPool} to validate revisions on.
+     * @param maxPendingBatches
+     *              The number of batches that may wait for validation before {@link #submit} blocks, which bounds
+     *              the memory held by pending checks.
+     * @param sampleRate
+     *              The fraction of revisions to validate, greater than 0 and at most 1.
+     */
+    public RevisionHashValidator(final ForkJoinPool pool, final int maxPendingBatches, final double sampleRate) {
+        if (maxPendingBatches <= 0) {
+            throw new IllegalArgumentException("The number of pending batches must be positive.");
+        }
+        if (!(sampleRate > 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("The sample rate must be greater than 0 and at most 1.");
+        }
+        this.pool = pool;
+        this.maxPendingBatches = maxPendingBatches;
+        this.sampleRate = sampleRate;
+        this.pendingBatches = new Semaphore(maxPendingBatches);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Decide whether the next revision should be validated. Every call counts one revision as seen.
+     *
+     * @return {@code true} if the revision is part of the sample and should be submitted.
+     */
+    public boolean sample() {
+        revisionsSeen.increment();
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Queue the hash check of one revision. Hash-only revisions are not checked or counted.
+     *
+     * @param check
+     *              The revision to check.
+     */
+    public void submit(final RevisionHashCheck check) {
+        List<RevisionHashCheck> full = null;
+        synchronized (this) {
+            batch.add(check);
+            if (batch.size() >= BATCH_SIZE) {
+                full = batch;
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+    }
+
+    /**
+     * Validate every revision submitted so far and wait for all of them to complete.
+     *
+     * @return the report of all revisions validated by this validator.
+     * @throws IllegalStateException if interrupted while waiting.
+     */
+    public Report awaitReport() {
+        List<RevisionHashCheck> remaining;
+        synchronized (this) {
+            remaining = batch;
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+        if (!remaining.isEmpty()) {
+            dispatch(remaining);
+        }
+        pendingBatches.acquireUninterruptibly(maxPendingBatches);
+        pendingBatches.release(maxPendingBatches);
+        return new Report(revisionsSeen.sum(), revisionsChecked.sum(), revisionsFailed.sum(),
+                new ArrayList<>(failedBlockAddresses));
+    }
+
+    private void dispatch(final List<RevisionHashCheck> checks) {
+        try {
+            pendingBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to validate revisions", e);
+        }
+        pool.execute(new ValidateRangeTask(checks, 0, checks.size(), true));
+    }
+
+    private void validate(final RevisionHashCheck check) {
+        if (check.isHashOnly()) {
+            // Nothing to check, and counting it as checked would overstate the sample.
+            return;
+        }
+        boolean valid;
+        try {
+            valid = check.isValid();
+        } catch (RuntimeException e) {
+            log.warn("Failed to compute the hash of a revision in block {}", check.getBlockAddress(), e);
+            valid = false;
+        }
+        if (!valid) {
+            revisionsFailed.increment();
+            if (check.getBlockAddress() != null) {
+                failedBlockAddresses.add(check.getBlockAddress());
+            }
+        }
+        revisionsChecked.increment();
+    }
+
+    /**
+     * Validates the checks {@code [from, to)} of a batch, splitting the range until it is small enough.
+     * The root task of a batch releases the batch's pending permit once the whole range is done.
+     */
+    private final class ValidateRangeTask extends RecursiveAction {
+        private final List<RevisionHashCheck> checks;
+        private final int from;
+        private final int to;
+        private final boolean root;
+
+        ValidateRangeTask(final List<RevisionHashCheck> checks, final int from, final int to, final boolean root) {
+            this.checks = checks;
+            this.from = from;
+            this.to = to;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (to - from > SPLIT_THRESHOLD) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new ValidateRangeTask(checks, from, middle, false),
+                            new ValidateRangeTask(checks, middle, to, false));
+                } else {
+                    for (int i = from; i < to; i++) {
+                        validate(checks.get(i));
+                    }
+                }
+            } finally {
+                if (root) {
+                    pendingBatches.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * The outcome of validating revision hashes.
+     */
+    public static final class Report {
+        private final long revisionsSeen;
+        private final long revisionsChecked;
+        private final long revisionsFailed;
+        private final List<BlockAddress> failedBlockAddresses;
+
+        Report(final long revisionsSeen, final long revisionsChecked, final long revisionsFailed,
+               final List<BlockAddress> failedBlockAddresses) {
+            this.revisionsSeen = revisionsSeen;
+            this.revisionsChecked = revisionsChecked;
+            this.revisionsFailed = revisionsFailed;
+            this.failedBlockAddresses = Collections.unmodifiableList(failedBlockAddresses);
+        }
+
+        /**
+         * @return the number of revisions decoded that could be checked, whether or not they were sampled.
+         *         Hash-only revisions are not counted.
+         */
+        public long getRevisionsSeen() {
+            return revisionsSeen;
+        }
+
+        public long getRevisionsChecked() {
+            return revisionsChecked;
+        }
+
+        public long getRevisionsFailed() {
+            return revisionsFailed;
+        }
+
+        /**
+         * Bound the fraction of invalid revisions among all revisions seen, given that none of the sampled
+         * revisions was invalid. If a fraction {@code p} of the revisions were invalid, a uniform sample of
+         * {@code n} revisions would miss all of them with probability {@code (1 - p)^n}; the bound is the
+         * smallest {@code p} for which that probability drops to {@code 1 - confidence}. At 95% confidence
+         * this is close to {@code 3 / n}.
+         *
+         * @param confidence
+         *              The confidence level, between 0 and 1 exclusive.
+         * @return the upper bound on the invalid fraction, {@code 0} if every revision was checked, or {@code 1}
+         *         if nothing was checked or a sampled revision failed, in which case the export is invalid.
+         */
+        public double getInvalidFractionUpperBound(final double confidence) {
+            if (!(confidence > 0 && confidence < 1)) {
+                throw new IllegalArgumentException("Confidence must be between 0 and 1 exclusive.");
+            }
+            if (revisionsFailed > 0 || revisionsChecked == 0) {
+                return 1.0;
+            }
+            if (revisionsChecked >= revisionsSeen) {
+                return 0.0;
+            }
+            return -Math.expm1(Math.log1p(-confidence) / revisionsChecked);
+        }
+
+        /**
+         * @return the addresses of the blocks holding at least one invalid revision, ordered by strand and
+         *         sequence number. Invalid revisions whose block address is unknown are counted in
+         *         {@link #getRevisionsFailed()} but not listed here.
+         */
+        public List<BlockAddress> getFailedBlockAddresses() {
+            return failedBlockAddresses;
+        }
+
+        public boolean isValid() {
+            return revisionsFailed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{"
+                + "revisionsSeen=" + revisionsSeen
+                + ", revisionsChecked=" + revisionsChecked
+                + ", revisionsFailed=" + revisionsFailed
+                + ", failedBlockAddresses=" + failedBlockAddresses
+                + '}';
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * An {@link ExportSource} reading a journal export from its S3 bucket.
+ *
+ * Listing a prefix with many objects takes one request per thousand keys. With a listing parallelism above one,
+ * a prefix that does not fit in one page is split into key ranges, and the ranges are listed concurrently, each
+ * following its own continuation tokens. The split is taken from the first page: its first and last keys share
+ * a common prefix, and the keys after the page are split on the character that follows it. Keys of a journal
+ * export share the export id and strand id, so splitting right after the requested prefix would put them all in
+ * one range. The split characters are drawn from the character classes seen at that position in the first page,
+ * so the numeric block ranges of data file keys are split on digits.
+ */
+public final class S3ExportSource implements ExportSource {
+    public static final Logger log = LoggerFactory.getLogger(S3ExportSource.class);
+    private static final String DIGITS = "0123456789";
+    private static final String UPPERCASE_LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String LOWERCASE_LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String PARTITION_CHARACTERS = DIGITS + UPPERCASE_LETTERS + LOWERCASE_LETTERS;
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final int listingParallelism;
+
+    /**
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param bucket
+     *              The bucket the export was written to.
+     */
+    public S3ExportSource(final AmazonS3 amazonS3, final String bucket) {
+        this(amazonS3, bucket, 1);
+    }
+
+    /**
+     * @param amazonS3
+     *              The low level S3 client.
+     * @param bucket
+     *              The bucket the export was written to.
+     * @param listingParallelism
+     *              The number of key ranges listed concurrently, at most the number of alphanumeric characters.
+     */
+    public S3ExportSource(final AmazonS3 amazonS3, final String bucket, final int listingParallelism) {
+        if (listingParallelism <= 0 || listingParallelism > PARTITION_CHARACTERS.length()) {
+            throw new IllegalArgumentException("Listing parallelism must be between 1 and "
+                + PARTITION_CHARACTERS.length() + ".");
+        }
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.listingParallelism = listingParallelism;
+    }
+
+    public AmazonS3 getAmazonS3() {
+        return amazonS3;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * List the keys under the prefix, following continuation tokens until the listing is complete. A prefix
+     * that fits in a single page is listed with a single request, whatever the listing parallelism.
+     */
+    @Override
+    public List<String> listKeys(final String prefix) {
+        if (listingParallelism == 1) {
+            return listRange(prefix, null, null, null);
+        }
+        ListObjectsV2Result firstPage = amazonS3.listObjectsV2(new ListObjectsV2Request()
+            .withBucketName(bucket)
+            .withPrefix(prefix));
+        List<String> keys = new ArrayList<>();
+        firstPage.getObjectSummaries().forEach(summary -> keys.add(summary.getKey()));
+        if (!firstPage.isTruncated()) {
+            return keys;
+        }
+        // Range i holds the keys after boundary i, up to and including boundary i + 1. The first range starts
+        // after the first page and continues from it.
+        List<String> boundaries = boundaries(keys);
+        int rangeCount = boundaries.size() - 1;
+        if (rangeCount == 1) {
+            keys.addAll(listRange(prefix, null, firstPage.getNextContinuationToken(), null));
+            return keys;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(rangeCount, new DaemonThreadFactory("export-list-"));
+        try {
+            List<Future<List<String>>> ranges = new ArrayList<>(rangeCount);
+            for (int i = 0; i < rangeCount; i++) {
+                String startAfter = i == 0 ? null : boundaries.get(i);
+                String continuationToken = i == 0 ? firstPage.getNextContinuationToken() : null;
+                String last = boundaries.get(i + 1);
+                ranges.add(executor.submit(() -> listRange(prefix, startAfter, continuationToken, last)));
+            }
+            for (Future<List<String>> range : ranges) {
+                keys.addAll(range.get());
+            }
+            return keys;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing " + prefix, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to list " + prefix, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean exists(final String key) {
+        return amazonS3.doesObjectExist(bucket, key);
+    }
+
+    @Override
+    public long getSize(final String key) {
+        return amazonS3.getObjectMetadata(bucket, key).getContentLength();
+    }
+
+    @Override
+    public InputStream open(final String key) {
+        log.info("Reading file with S3 key " + key + " from bucket: " + bucket);
+        return amazonS3.getObject(bucket, key).getObjectContent();
+    }
+
+    /**
+     * Pick the boundaries of the key ranges that follow a first page of keys. The first and last keys of the page
+     * share a common prefix; the keys after the page are split on the character following it, using the
+     * characters above the one in the page's last key. Those are taken from the digits, uppercase and lowercase
+     * letters whose classes occur at that position in the page, or from all of them if none does.
+     *
+     * @param page
+     *              The sorted keys of the first page.
+     * @return the page's last key, the boundaries between ranges, and {@code null} for the open end of the last
+     *         range.
+     */
+    List<String> boundaries(final List<String> page) {
+        String firstKey = page.get(0);
+        String lastKey = page.get(page.size() - 1);
+        int position = 0;
+        while (position < firstKey.length() && position < lastKey.length()
+                && firstKey.charAt(position) == lastKey.charAt(position)) {
+            position++;
+        }
+        StringBuilder candidates = new StringBuilder();
+        if (position < lastKey.length()) {
+            for (char c : alphabet(page, position).toCharArray()) {
+                if (c > lastKey.charAt(position)) {
+                    candidates.append(c);
+                }
+            }
+        }
+        int rangeCount = Math.min(listingParallelism, candidates.length() + 1);
+        List<String> boundaries = new ArrayList<>(rangeCount + 1);
+        boundaries.add(lastKey);
+        for (int i = 1; i < rangeCount; i++) {
+            boundaries.add(lastKey.substring(0, position) + candidates.charAt(i * candidates.length() / rangeCount));
+        }
+        boundaries.add(null);
+        return boundaries;
+    }
+
+    /**
+     * @return the character classes, among digits, uppercase and lowercase letters, of the characters found at
+     *         the position in the keys, or all of them if no key has an alphanumeric character there.
+     */
+    private static String alphabet(final List<String> keys, final int position) {
+        boolean digits = false;
+        boolean uppercase = false;
+        boolean lowercase = false;
+        for (String key : keys) {
+            if (position < key.length()) {
+                char c = key.charAt(position);
+                digits |= DIGITS.indexOf(c) >= 0;
+                uppercase |= UPPERCASE_LETTERS.indexOf(c) >= 0;
+                lowercase |= LOWERCASE_LETTERS.indexOf(c) >= 0;
+            }
+        }
+        if (!digits && !uppercase && !lowercase) {
+            return PARTITION_CHARACTERS;
+        }
+        return (digits ? DIGITS : "") + (uppercase ? UPPERCASE_LETTERS : "") + (lowercase ? LOWERCASE_LETTERS : "");
+    }
+
+    /**
+     * List the keys under the prefix that come after {@code startAfter} and up to {@code last}, where
+     * {@code null} leaves that side open. A listing already under way is resumed from its continuation token.
+     */
+    private List<String> listRange(final String prefix, final String startAfter, final String continuationToken,
+                                   final String last) {
+        List<String> keys = new ArrayList<>();
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucket)
+            .withPrefix(prefix)
+            .withStartAfter(startAfter)
+            .withContinuationToken(continuationToken);
+        ListObjectsV2Result result;
+        do {
+            result = amazonS3.listObjectsV2(request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (last != null && summary.getKey().compareTo(last) > 0) {
+                    return keys;
+                }
+                keys.add(summary.getKey());
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return keys;
+    }
+}
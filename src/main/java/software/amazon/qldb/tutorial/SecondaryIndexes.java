@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonText;
+import com.amazon.ion.IonValue;
+import com.amazonaws.services.qldb.model.DescribeJournalS3ExportResult;
+import com.amazonaws.services.s3.AmazonS3;
+
+import software.amazon.qldb.tutorial.qldb.DocumentInfo;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+/**
+ * A set of {@link MappedSecondaryIndex} over top level fields of exported revisions, kept up to date as new
+ * blocks arrive. For example, indexing the {@code CarId} and {@code Owner} fields of
+ * {@link Constants#CARS_TABLE_NAME} answers car id lookups and "which cars does X own" locally, instead of
+ * scanning the table in the ledger.
+ *
+ * Each index is stored in its own file in the directory, {@code [table].[field].idx}, next to an
+ * {@link ExportCheckpoint} of the blocks applied to all of them. Blocks already recorded in the checkpoint are
+ * skipped, so new exports can be applied incrementally. The names of the indexes the checkpoint covers are kept
+ * next to it, in {@code indexes.ion}. All indexes and the checkpoint are discarded when the directory is opened,
+ * and the next catch-up rebuilds them from the start of the journal, if the checkpoint does not cover exactly the
+ * requested indexes, for example because a field was added, or if an index was not committed before it was last
+ * closed, for example because the process died.
+ *
+ * Text values are indexed as their string value and other values as Ion text. A revision without data, or
+ * without the indexed field, removes its document from the index, as does a value too long to be indexed,
+ * which is logged rather than failing the block.
+ */
+public final class SecondaryIndexes implements Closeable {
+    public static final Logger log = LoggerFactory.getLogger(SecondaryIndexes.class);
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint.ion";
+    private static final String INDEX_NAMES_FILE_NAME = "indexes.ion";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final Path directory;
+    private final Path checkpointFile;
+    private final ExportCheckpoint checkpoint;
+    private final Map<String, Map<String, MappedSecondaryIndex>> indexes = new LinkedHashMap<>();
+
+    private SecondaryIndexes(final Path directory) {
+        this.directory = directory;
+        this.checkpointFile = directory.resolve(CHECKPOINT_FILE_NAME);
+        this.checkpoint = ExportCheckpoint.load(checkpointFile);
+    }
+
+    /**
+     * Open the indexes of a directory, creating the directory and any missing index. Every index and the
+     * checkpoint are discarded if the checkpoint was saved for other indexes, or if any index was left
+     * uncommitted.
+     *
+     * @param directory
+     *              The directory of the indexes.
+     * @param fieldNamesByTable
+     *              The names of the indexed fields of each table.
+     * @return the indexes.
+     * @throws UncheckedIOException if an index cannot be opened.
+     */
+    public static SecondaryIndexes open(final Path directory,
+                                        final Map<String, ? extends Collection<String>> fieldNamesByTable) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not create directory " + directory, ioe);
+        }
+        SecondaryIndexes secondaryIndexes = new SecondaryIndexes(directory);
+        List<String> indexNames = new ArrayList<>();
+        boolean created = false;
+        try {
+            for (Map.Entry<String, ? extends Collection<String>> table : fieldNamesByTable.entrySet()) {
+                String tableName = table.getKey();
+                for (String fieldName : table.getValue()) {
+                    if (!NAME.matcher(tableName).matches() || !NAME.matcher(fieldName).matches()) {
+                        throw new IllegalArgumentException("Invalid index name: " + tableName + "." + fieldName);
+                    }
+                    Path file = indexFile(directory, tableName, fieldName);
+                    if (!Files.exists(file) || Files.size(file) == 0) {
+                        created = true;
+                    }
+                    secondaryIndexes.indexes.computeIfAbsent(tableName, t -> new LinkedHashMap<>())
+                            .put(fieldName, MappedSecondaryIndex.open(file));
+                    indexNames.add(tableName + "." + fieldName);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            secondaryIndexes.indexes.values().forEach(fields -> fields.values().forEach(MappedSecondaryIndex::close));
+            if (e instanceof IOException) {
+                throw new UncheckedIOException("Could not open secondary indexes in " + directory, (IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+        Collections.sort(indexNames);
+        Path indexNamesFile = directory.resolve(INDEX_NAMES_FILE_NAME);
+        boolean sameIndexes = indexNames.equals(CheckpointFiles.read(indexNamesFile, List.class));
+        boolean clean = secondaryIndexes.indexes.values().stream().flatMap(fields -> fields.values().stream())
+                .allMatch(MappedSecondaryIndex::wasOpenedClean);
+        if (clean && (sameIndexes && !created || !Files.exists(secondaryIndexes.checkpointFile))) {
+            if (!sameIndexes) {
+                CheckpointFiles.write(indexNamesFile, indexNames);
+            }
+            return secondaryIndexes;
+        }
+        if (clean) {
+            log.warn("The checkpoint in {} was saved for other secondary indexes than {}, rebuilding them.",
+                    directory, indexNames);
+        } else {
+            log.warn("Secondary indexes in {} were not committed before they were closed, rebuilding them.",
+                    directory);
+        }
+        secondaryIndexes.indexes.values().forEach(fields -> fields.values().forEach(MappedSecondaryIndex::close));
+        try {
+            // The checkpoint goes first, so that a failure part way through never leaves it over empty indexes.
+            Files.deleteIfExists(secondaryIndexes.checkpointFile);
+            for (Map.Entry<String, Map<String, MappedSecondaryIndex>> table : secondaryIndexes.indexes.entrySet()) {
+                for (String fieldName : table.getValue().keySet()) {
+                    Files.deleteIfExists(indexFile(directory, table.getKey(), fieldName));
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not discard secondary indexes in " + directory, ioe);
+        }
+        return open(directory, fieldNamesByTable);
+    }
+
+    /**
+     * @param tableName
+     *              The name of the table.
+     * @param fieldName
+     *              The name of the indexed field.
+     * @return the index of the field.
+     * @throws IllegalArgumentException if the field is not indexed.
+     */
+    public MappedSecondaryIndex get(final String tableName, final String fieldName) {
+        Map<String, MappedSecondaryIndex> fields = indexes.get(tableName);
+        MappedSecondaryIndex index = fields != null ? fields.get(fieldName) : null;
+        if (index == null) {
+            throw new IllegalArgumentException("Field " + fieldName + " of table " + tableName + " is not indexed.");
+        }
+        return index;
+    }
+
+    /**
+     * Apply the blocks of a completed journal export that are not applied yet, then commit.
+     *
+     * @param describeJournalS3ExportResult
+     *              The result from the QLDB database describing a journal export.
+     * @param amazonS3
+     *              The low level S3 client.
+     * @return the number of blocks applied.
+     */
+    public long catchUp(final DescribeJournalS3ExportResult describeJournalS3ExportResult, final AmazonS3 amazonS3) {
+        try (Stream<JournalBlock> blocks = JournalS3ExportReader.streamExport(describeJournalS3ExportResult, amazonS3,
+                checkpoint)) {
+            return catchUp(blocks);
+        }
+    }
+
+    /**
+     * Apply the given blocks that are not applied yet, then commit.
+     *
+     * @param blocks
+     *              The blocks, in order within each strand.
+     * @return the number of blocks applied.
+     */
+    public long catchUp(final Stream<JournalBlock> blocks) {
+        long applied = blocks.filter(this::apply).count();
+        commit();
+        log.info("Applied {} blocks to the secondary indexes in {}.", applied, directory);
+        return applied;
+    }
+
+    /**
+     * Update the indexes with the revisions of a block, unless the block was already applied. The block is not
+     * durable until the next {@link #commit()}.
+     *
+     * @param block
+     *              The next block of its strand.
+     * @return whether the block was applied.
+     */
+    public synchronized boolean apply(final JournalBlock block) {
+        if (checkpoint.isProcessed(block.getBlockAddress())) {
+            return false;
+        }
+        Map<String, DocumentInfo> documents = block.getTransactionInfo() != null
+                ? block.getTransactionInfo().getDocuments() : null;
+        if (block.getRevisions() != null && documents != null) {
+            for (QldbRevision revision : block.getRevisions()) {
+                QldbRevision.Metadata metadata = revision.getMetadata();
+                DocumentInfo documentInfo = metadata != null ? documents.get(metadata.getId()) : null;
+                Map<String, MappedSecondaryIndex> fields = documentInfo != null
+                        ? indexes.get(documentInfo.getTableName()) : null;
+                if (fields == null) {
+                    continue;
+                }
+                IonStruct data = revision.getData();
+                fields.forEach((fieldName, index) -> {
+                    String value = data != null ? fieldValue(data.get(fieldName)) : null;
+                    if (value != null && !MappedSecondaryIndex.canIndex(value)) {
+                        log.warn("Field {} of document {} in block {} is too long to index, the document is left out "
+                                + "of the index.", fieldName, metadata.getId(), block.getBlockAddress());
+                        value = null;
+                    }
+                    index.put(metadata.getId(), value);
+                });
+            }
+        }
+        checkpoint.record(block.getBlockAddress());
+        return true;
+    }
+
+    /**
+     * Write the indexes to disk and save the checkpoint, making every applied block durable.
+     */
+    public synchronized void commit() {
+        indexes.values().forEach(fields -> fields.values().forEach(MappedSecondaryIndex::force));
+        checkpoint.save(checkpointFile);
+    }
+
+    /**
+     * Commit and close every index.
+     */
+    @Override
+    public synchronized void close() {
+        commit();
+        indexes.values().forEach(fields -> fields.values().forEach(MappedSecondaryIndex::close));
+    }
+
+    private static Path indexFile(final Path directory, final String tableName, final String fieldName) {
+        return directory.resolve(tableName + "." + fieldName + ".idx");
+    }
+
+    private static String fieldValue(final IonValue value) {
+        if (value == null || value.isNullValue()) {
+            return null;
+        }
+        return value instanceof IonText ? ((IonText) value).stringValue() : value.toString();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+
+/**
+ * The state of a {@link JournalChainVerifier} after a successful run, saved to a local Ion file so that the
+ * next run only has to verify the blocks appended since.
+ *
+ * For every strand the checkpoint holds the address and hash of the last verified block, which the next block
+ * must link to, and the peaks of the strand's {@link LedgerDigestAccumulator} if the strand was verified from
+ * its first block. The peaks are a few dozen hashes at most, however long the strand.
+ */
+public final class VerificationCheckpoint {
+    public static final Logger log = LoggerFactory.getLogger(VerificationCheckpoint.class);
+
+    private final List<StrandCheckpoint> strands;
+
+    @JsonCreator
+    public VerificationCheckpoint(@JsonProperty("strands") final List<StrandCheckpoint> strands) {
+        this.strands = strands == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(strands));
+    }
+
+    public List<StrandCheckpoint> getStrands() {
+        return strands;
+    }
+
+    /**
+     * Read a checkpoint from a file.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @return the checkpoint, or {@code null} if the file does not exist.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static VerificationCheckpoint load(final Path file) {
+        VerificationCheckpoint checkpoint = CheckpointFiles.read(file, VerificationCheckpoint.class);
+        if (checkpoint != null) {
+            log.info("Loaded verification checkpoint from {}: {}", file, checkpoint);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Write the checkpoint to a file. The checkpoint is forced to disk next to the file first and then atomically
+     * moved over it, so an interrupted save or a crash leaves the previous checkpoint intact.
+     *
+     * @param file
+     *              The checkpoint file.
+     * @throws UncheckedIOException if the file cannot be written.
+     */
+    public void save(final Path file) {
+        CheckpointFiles.write(file, this);
+        log.info("Saved verification checkpoint to {}: {}", file, this);
+    }
+
+    @Override
+    public String toString() {
+        return "VerificationCheckpoint{"
+                + "strands=" + strands
+                + '}';
+    }
+
+    /**
+     * The verified state of a single strand.
+     */
+    public static final class StrandCheckpoint {
+        private final BlockAddress lastBlockAddress;
+        private final byte[] lastBlockHash;
+        private final byte[][] digestPeaks;
+
+        /**
+         * @param lastBlockAddress
+         *              The address of the last verified block.
+         * @param lastBlockHash
+         *              The hash of the last verified block.
+         * @param digestPeaks
+         *              The peaks of the strand's digest accumulator, smallest subtree first, or {@code null} if
+         *              the strand was not verified from its first block.
+         */
+        @JsonCreator
+        public StrandCheckpoint(@JsonProperty("lastBlockAddress") final BlockAddress lastBlockAddress,
+                                @JsonProperty("lastBlockHash") final byte[] lastBlockHash,
+                                @JsonProperty("digestPeaks") final byte[][] digestPeaks) {
+            this.lastBlockAddress = lastBlockAddress;
+            this.lastBlockHash = lastBlockHash;
+            this.digestPeaks = digestPeaks;
+        }
+
+        public BlockAddress getLastBlockAddress() {
+            return lastBlockAddress;
+        }
+
+        public byte[] getLastBlockHash() {
+            return lastBlockHash;
+        }
+
+        public byte[][] getDigestPeaks() {
+            return digestPeaks;
+        }
+
+        @Override
+        public String toString() {
+            return "StrandCheckpoint{"
+                    + "lastBlockAddress=" + lastBlockAddress
+                    + ", lastBlockHash=" + (lastBlockHash == null ? null : Verifier.toBase64(lastBlockHash))
+                    + ", digestPeaks=" + (digestPeaks == null ? null : digestPeaks.length)
+                    + '}';
+        }
+    }
+}
@@ -20,11 +20,14 @@ package software.amazon.qldb.tutorial;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
@@ -44,25 +47,20 @@ import software.amazon.qldb.tutorial.qldb.Proof;
  */
 public final class Verifier {
     public static final Logger log = LoggerFactory.getLogger(Verifier.class);
-    private static final int HASH_LENGTH = 32;
+    public static final int HASH_LENGTH = 32;
     private static final int UPPER_BOUND = 8;
 
     /**
-     * Compares two hashes by their <em>signed</em> byte values in little-endian order.
+     * XOR mask that flips the sign bit of every byte in a word, so that an unsigned comparison of two
+     * masked words orders them like a byte-by-byte comparison of their <em>signed</em> values.
      */
-    private static Comparator<byte[]> hashComparator = (h1, h2) -> {
-        if (h1.length != HASH_LENGTH || h2.length != HASH_LENGTH) {
-            throw new IllegalArgumentException("Invalid hash.");
-        }
-        for (int i = h1.length - 1; i >= 0; i--) {
-            int byteEqual = Byte.compare(h1[i], h2[i]);
-            if (byteEqual != 0) {
-                return byteEqual;
-            }
-        }
+    private static final long SIGN_FLIP_MASK = 0x8080808080808080L;
 
-        return 0;
-    };
+    /**
+     * SHA-256 digests reused by {@link #joinHashesPairwise}. {@link MessageDigest#digest} resets the
+     * instance, so a digest can be reused for the next join on the same thread without any allocation.
+     */
+    private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = ThreadLocal.withInitial(Verifier::newMessageDigest);
 
     private Verifier() { }
 
@@ -98,6 +96,149 @@ public final class Verifier {
         return Arrays.equals(digest, candidateDigest);
     }
 
+    /**
+     * Verify the integrity of many documents with respect to the same QLDB ledger digest, using the
+     * common {@link ForkJoinPool}.
+     *
+     * @param digest
+     *              The QLDB ledger digest all proofs are verified against.
+     * @param documentHashes
+     *              The hashes of the documents to be verified.
+     * @param proofBlobs
+     *              The ion encoded proofs, where {@code proofBlobs.get(i)} is the proof for {@code documentHashes.get(i)}.
+     * @return a {@link BitSet} in which bit {@code i} is set if and only if document {@code i} is verified.
+     * @see #verifyAll(byte[], List, List, ForkJoinPool)
+     */
+    public static BitSet verifyAll(
+            final byte[] digest,
+            final List<byte[]> documentHashes,
+            final List<String> proofBlobs
+    ) {
+        return verifyAll(digest, documentHashes, proofBlobs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verify the integrity of many documents with respect to the same QLDB ledger digest.
+     *
+     * The pairs are split into ranges that are verified in parallel on the given {@link ForkJoinPool}. Ranges
+     * are aligned to 64 items so that every task writes its own words of the result bitmap. A proof that
+     * cannot be parsed, or a malformed hash, fails only its own item.
+     *
+     * @param digest
+     *              The QLDB ledger digest all proofs are verified against.
+     * @param documentHashes
+     *              The hashes of the documents to be verified.
+     * @param proofBlobs
+     *              The ion encoded proofs, where {@code proofBlobs.get(i)} is the proof for {@code documentHashes.get(i)}.
+     * @param pool
+     *              The {@link ForkJoinPool} to run the verification on.
+     * @return a {@link BitSet} in which bit {@code i} is set if and only if document {@code i} is verified.
+     * @throws IllegalArgumentException if the number of document hashes and proofs differ.
+     */
+    public static BitSet verifyAll(
+            final byte[] digest,
+            final List<byte[]> documentHashes,
+            final List<String> proofBlobs,
+            final ForkJoinPool pool
+    ) {
+        return verifyAll(digest, documentHashes, proofBlobs, pool, new MerkleNodeCache());
+    }
+
+    /**
+     * Verify the integrity of many documents with respect to the same QLDB ledger digest, sharing a
+     * {@link MerkleNodeCache} between all proofs.
+     *
+     * Proofs against one digest converge on the same upper Merkle path, so with the memo each shared ancestor
+     * is hashed once instead of once per proof. The same memo may be passed to several batches as long as
+     * they are all verified against the same digest.
+     *
+     * @param digest
+     *              The QLDB ledger digest all proofs are verified against.
+     * @param documentHashes
+     *              The hashes of the documents to be verified.
+     * @param proofBlobs
+     *              The ion encoded proofs, where {@code proofBlobs.get(i)} is the proof for {@code documentHashes.get(i)}.
+     * @param pool
+     *              The {@link ForkJoinPool} to run the verification on.
+     * @param nodeCache
+     *              The memo of intermediate node hashes.
+     * @return a {@link BitSet} in which bit {@code i} is set if and only if document {@code i} is verified.
+     * @throws IllegalArgumentException if the number of document hashes and proofs differ.
+     */
+    public static BitSet verifyAll(
+            final byte[] digest,
+            final List<byte[]> documentHashes,
+            final List<String> proofBlobs,
+            final ForkJoinPool pool,
+            final MerkleNodeCache nodeCache
+    ) {
+        if (documentHashes.size() != proofBlobs.size()) {
+            throw new IllegalArgumentException("Expected one proof per document hash but found "
+                    + documentHashes.size() + " hashes and " + proofBlobs.size() + " proofs.");
+        }
+        long[] words = new long[(documentHashes.size() + Long.SIZE - 1) / Long.SIZE];
+        pool.invoke(new VerifyRangeTask(digest, documentHashes, proofBlobs, nodeCache, words, 0,
+                documentHashes.size()));
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Verifies a single item of a batch, treating a malformed proof or hash as a failed verification.
+     */
+    private static boolean verifyQuietly(final byte[] documentHash, final byte[] digest, final String proofBlob,
+                                         final MerkleNodeCache nodeCache) {
+        try {
+            Proof proof = Proof.fromBlob(proofBlob);
+            return Arrays.equals(digest, buildCandidateDigest(proof, documentHash, nodeCache));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.warn("Unable to verify document hash {}: {}", toBase64(documentHash), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Verifies the items {@code [from, to)} of a batch, splitting on 64-item boundaries until a range
+     * fits in a single word of the result bitmap.
+     */
+    private static final class VerifyRangeTask extends RecursiveAction {
+        private final byte[] digest;
+        private final List<byte[]> documentHashes;
+        private final List<String> proofBlobs;
+        private final MerkleNodeCache nodeCache;
+        private final long[] words;
+        private final int from;
+        private final int to;
+
+        VerifyRangeTask(final byte[] digest, final List<byte[]> documentHashes, final List<String> proofBlobs,
+                        final MerkleNodeCache nodeCache, final long[] words, final int from, final int to) {
+            this.digest = digest;
+            this.documentHashes = documentHashes;
+            this.proofBlobs = proofBlobs;
+            this.nodeCache = nodeCache;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int wordCount = (to - from + Long.SIZE - 1) / Long.SIZE;
+            if (wordCount > 1) {
+                int middle = from + (wordCount / 2) * Long.SIZE;
+                invokeAll(new VerifyRangeTask(digest, documentHashes, proofBlobs, nodeCache, words, from, middle),
+                        new VerifyRangeTask(digest, documentHashes, proofBlobs, nodeCache, words, middle, to));
+                return;
+            }
+            long word = 0;
+            for (int i = from; i < to; i++) {
+                if (verifyQuietly(documentHashes.get(i), digest, proofBlobs.get(i), nodeCache)) {
+                    word |= 1L << (i - from);
+                }
+            }
+            words[from / Long.SIZE] = word;
+        }
+    }
+
     /**
      * Build the candidate digest representing the entire ledger from the internal hashes of the {@link Proof}.
      *
@@ -109,7 +250,16 @@ public final class Verifier {
      * @return a byte array of the candidate digest.
      */
     private static byte[] buildCandidateDigest(final Proof proof, final byte[] leafHash) {
-        return calculateRootHashFromInternalHashes(proof.getInternalHashes(), leafHash);
+        return calculateRootHashFromInternalHashes(proof, leafHash);
+    }
+
+    /**
+     * Build the candidate digest like {@link #buildCandidateDigest(Proof, byte[])}, looking up intermediate
+     * node hashes in the given memo first.
+     */
+    private static byte[] buildCandidateDigest(final Proof proof, final byte[] leafHash,
+                                               final MerkleNodeCache nodeCache) {
+        return calculateRootHashFromInternalHashes(proof, leafHash, nodeCache);
     }
 
     /**
@@ -144,18 +294,93 @@ public final class Verifier {
         if (h2.length == 0) {
             return h1;
         }
-        byte[] concatenated = new byte[h1.length + h2.length];
-        if (hashComparator.compare(h1, h2) < 0) {
-            System.arraycopy(h1, 0, concatenated, 0, h1.length);
-            System.arraycopy(h2, 0, concatenated, h1.length, h2.length);
+        if (h1.length != HASH_LENGTH || h2.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid hash.");
+        }
+        byte[] joined = new byte[HASH_LENGTH];
+        joinHashesPairwise(h1, 0, h2, 0, joined, 0);
+        return joined;
+    }
+
+    /**
+     * Allocation-free variant of {@link #joinHashesPairwise(byte[], byte[])} for two non-empty hashes.
+     * The sorted hashes are fed to a per-thread {@link MessageDigest} one after the other, which hashes
+     * exactly the same bytes as their concatenation, and the result is written into {@code out}.
+     * The output range may overlap either input.
+     *
+     * @param h1
+     *              Byte array containing one of the hashes to join.
+     * @param h1Offset
+     *              Offset of the hash within {@code h1}.
+     * @param h2
+     *              Byte array containing the other hash to join.
+     * @param h2Offset
+     *              Offset of the hash within {@code h2}.
+     * @param out
+     *              Byte array receiving the joined hash.
+     * @param outOffset
+     *              Offset within {@code out} at which the joined hash is written.
+     * @throws IllegalArgumentException if either hash range is not a complete hash.
+     */
+    public static void joinHashesPairwise(final byte[] h1, final int h1Offset, final byte[] h2, final int h2Offset,
+                                          final byte[] out, final int outOffset) {
+        MessageDigest messageDigest = MESSAGE_DIGEST.get();
+        if (compareHashes(h1, h1Offset, h2, h2Offset) < 0) {
+            messageDigest.update(h1, h1Offset, HASH_LENGTH);
+            messageDigest.update(h2, h2Offset, HASH_LENGTH);
         } else {
-            System.arraycopy(h2, 0, concatenated, 0, h2.length);
-            System.arraycopy(h1, 0, concatenated, h2.length, h1.length);
+            messageDigest.update(h2, h2Offset, HASH_LENGTH);
+            messageDigest.update(h1, h1Offset, HASH_LENGTH);
         }
-        MessageDigest messageDigest = newMessageDigest();
-        messageDigest.update(concatenated);
+        try {
+            messageDigest.digest(out, outOffset, HASH_LENGTH);
+        } catch (DigestException e) {
+            messageDigest.reset();
+            throw new IllegalArgumentException("Output buffer cannot hold a hash.", e);
+        }
+    }
 
-        return messageDigest.digest();
+    /**
+     * Compares two hashes by their <em>signed</em> byte values in little-endian order.
+     *
+     * The hashes are compared one 64-bit word at a time, starting from the most significant word. Flipping
+     * the sign bit of every byte turns the signed byte-wise comparison into an unsigned word comparison.
+     *
+     * @param h1
+     *              Byte array containing one of the hashes to compare.
+     * @param h1Offset
+     *              Offset of the hash within {@code h1}.
+     * @param h2
+     *              Byte array containing the other hash to compare.
+     * @param h2Offset
+     *              Offset of the hash within {@code h2}.
+     * @return a negative integer, zero, or a positive integer as {@code h1} is less than, equal to,
+     *         or greater than {@code h2}.
+     * @throws IllegalArgumentException if either hash range is not a complete hash.
+     */
+    static int compareHashes(final byte[] h1, final int h1Offset, final byte[] h2, final int h2Offset) {
+        if (h1Offset < 0 || h1.length - h1Offset < HASH_LENGTH || h2Offset < 0 || h2.length - h2Offset < HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid hash.");
+        }
+        for (int i = HASH_LENGTH - Long.BYTES; i >= 0; i -= Long.BYTES) {
+            long w1 = readLittleEndianLong(h1, h1Offset + i) ^ SIGN_FLIP_MASK;
+            long w2 = readLittleEndianLong(h2, h2Offset + i) ^ SIGN_FLIP_MASK;
+            if (w1 != w2) {
+                return Long.compareUnsigned(w1, w2) < 0 ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long readLittleEndianLong(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24
+                | (bytes[offset + 4] & 0xFFL) << 32
+                | (bytes[offset + 5] & 0xFFL) << 40
+                | (bytes[offset + 6] & 0xFFL) << 48
+                | (bytes[offset + 7] & 0xFFL) << 56;
     }
 
     /**
@@ -172,6 +397,67 @@ public final class Verifier {
         return internalHashes.stream().reduce(leafHash, Verifier::joinHashesPairwise);
     }
 
+    /**
+     * Starting with the provided {@code leafHash} combined with the internal hashes of the provided
+     * {@code proof} pairwise until only the root hash remains. The hashes are read in place from the
+     * {@link Proof}'s contiguous hash array and every level is joined into a single output buffer.
+     *
+     * @param proof
+     *              A Java representation of {@link Proof}
+     *              returned from {@link com.amazonaws.services.qldb.AmazonQLDB#getRevision}.
+     * @param leafHash
+     *              Leaf hashes of Merkle tree.
+     * @return the root hash.
+     */
+    public static byte[] calculateRootHashFromInternalHashes(final Proof proof, final byte[] leafHash) {
+        return calculateRootHashFromInternalHashes(proof, leafHash, null);
+    }
+
+    /**
+     * Starting with the provided {@code leafHash} combined with the internal hashes of the provided
+     * {@code proof} pairwise until only the root hash remains, reusing node hashes remembered by
+     * {@code nodeCache}.
+     *
+     * @param proof
+     *              A Java representation of {@link Proof}
+     *              returned from {@link com.amazonaws.services.qldb.AmazonQLDB#getRevision}.
+     * @param leafHash
+     *              Leaf hashes of Merkle tree.
+     * @param nodeCache
+     *              The memo of intermediate node hashes, or {@code null} to hash every level.
+     * @return the root hash.
+     */
+    public static byte[] calculateRootHashFromInternalHashes(final Proof proof, final byte[] leafHash,
+                                                             final MerkleNodeCache nodeCache) {
+        int count = proof.getInternalHashCount();
+        if (count == 0) {
+            return leafHash;
+        }
+        byte[] hashes = proof.getInternalHashBytes();
+        byte[] root;
+        if (leafHash.length == 0) {
+            root = Arrays.copyOf(hashes, HASH_LENGTH);
+        } else if (leafHash.length == HASH_LENGTH) {
+            root = new byte[HASH_LENGTH];
+            joinHashesPairwise(leafHash, 0, hashes, 0, root, nodeCache);
+        } else {
+            throw new IllegalArgumentException("Invalid hash.");
+        }
+        for (int i = 1; i < count; i++) {
+            joinHashesPairwise(root, 0, hashes, i * HASH_LENGTH, root, nodeCache);
+        }
+        return root;
+    }
+
+    private static void joinHashesPairwise(final byte[] h1, final int h1Offset, final byte[] h2, final int h2Offset,
+                                           final byte[] out, final MerkleNodeCache nodeCache) {
+        if (nodeCache == null) {
+            joinHashesPairwise(h1, h1Offset, h2, h2Offset, out, 0);
+        } else {
+            nodeCache.joinHashesPairwise(h1, h1Offset, h2, h2Offset, out, 0);
+        }
+    }
+
     /**
      * Flip a single random bit in the given byte array. This method is used to demonstrate
      * QLDB's verification features.
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial.qldb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonWriter;
+import com.amazon.ion.system.IonSystemBuilder;
+
+import software.amazon.qldb.tutorial.Verifier;
+
+/**
+ * A compact, read-only form of a {@link JournalBlock} for holding many blocks in memory at once.
+ *
+ * All hashes of the block, including those of its revisions, are stored back to back in a single byte array.
+ * Timestamps are kept as epoch milliseconds, revision fields are kept in parallel arrays rather than one object
+ * per revision, and revision data is kept as Ion binary rather than as a DOM. Strand ids, transaction ids,
+ * document ids, table names, table ids and statements are deduplicated through an {@link IdentifierPool} shared
+ * by all blocks, so a ledger with a handful of tables holds each table name only once.
+ *
+ * Revisions that carry nothing but their hash, such as those of a {@code CREATE TABLE} transaction, are kept as
+ * hash-only revisions, see {@link #isHashOnly(int)}; they have no document id, metadata or data.
+ *
+ * The getters of {@link JournalBlock} are available with the same signatures, but they build their result on
+ * every call. Code that walks many blocks should prefer the primitive accessors, such as
+ * {@link #getBlockTimestampMillis()} and {@link #getEntryHash(int)}.
+ */
+public final class CompactJournalBlock {
+    /**
+     * The value of {@link #getTxTimeMillis(int)} for a revision whose metadata has no transaction time.
+     */
+    public static final long NO_TX_TIME = Long.MIN_VALUE;
+
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final int BLOCK_HASH_OFFSET = 0;
+    private static final int ENTRIES_HASH_OFFSET = Verifier.HASH_LENGTH;
+    private static final int PREVIOUS_BLOCK_HASH_OFFSET = 2 * Verifier.HASH_LENGTH;
+
+    // Object layout of a 64-bit HotSpot JVM with compressed references, used by the size estimates.
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private final String strandId;
+    private final long sequenceNo;
+    private final String transactionId;
+    private final long blockTimestampMillis;
+    private final TransactionInfo transactionInfo;
+    private final boolean hasPreviousBlockHash;
+    private final int entriesHashCount;
+    // blockHash, entriesHash, previousBlockHash if any, the entries hash list, then one hash per revision.
+    private final byte[] hashes;
+    private final String[] documentIds;
+    private final long[] versions;
+    private final long[] txTimesMillis;
+    private final String[] txIds;
+    private final byte[][] data;
+    private final boolean[] hashOnly;
+
+    private CompactJournalBlock(final JournalBlock block, final IdentifierPool pool) {
+        if (block.getBlockAddress() == null || block.getBlockTimestamp() == null || block.getBlockHash() == null
+                || block.getEntriesHash() == null || block.getEntriesHashList() == null) {
+            throw new IllegalArgumentException("Block is missing required fields");
+        }
+        BlockAddress blockAddress = block.getBlockAddress();
+        this.strandId = pool.intern(blockAddress.getStrandId());
+        this.sequenceNo = blockAddress.getSequenceNo();
+        this.transactionId = pool.intern(block.getTransactionId());
+        this.blockTimestampMillis = block.getBlockTimestamp().getTime();
+        this.transactionInfo = intern(block.getTransactionInfo(), pool);
+        this.hasPreviousBlockHash = block.getPreviousBlockHash() != null;
+        this.entriesHashCount = block.getEntriesHashList().length;
+
+        List<QldbRevision> revisions = block.getRevisions();
+        int revisionCount = revisions != null ? revisions.size() : 0;
+        int entriesOffset = entriesOffset();
+        this.hashes = new byte[entriesOffset + (entriesHashCount + revisionCount) * Verifier.HASH_LENGTH];
+        putHash(block.getBlockHash(), BLOCK_HASH_OFFSET);
+        putHash(block.getEntriesHash(), ENTRIES_HASH_OFFSET);
+        if (hasPreviousBlockHash) {
+            putHash(block.getPreviousBlockHash(), PREVIOUS_BLOCK_HASH_OFFSET);
+        }
+        for (int i = 0; i < entriesHashCount; i++) {
+            putHash(block.getEntriesHashList()[i], entriesOffset + i * Verifier.HASH_LENGTH);
+        }
+
+        if (revisions == null) {
+            this.documentIds = null;
+            this.versions = null;
+            this.txTimesMillis = null;
+            this.txIds = null;
+            this.data = null;
+            this.hashOnly = null;
+            return;
+        }
+        this.documentIds = new String[revisionCount];
+        this.versions = new long[revisionCount];
+        this.txTimesMillis = new long[revisionCount];
+        this.txIds = new String[revisionCount];
+        this.data = new byte[revisionCount][];
+        this.hashOnly = new boolean[revisionCount];
+        for (int i = 0; i < revisionCount; i++) {
+            QldbRevision revision = revisions.get(i);
+            QldbRevision.Metadata metadata = revision.getMetadata();
+            if (revision.getHash() == null || metadata == null && revision.getData() != null) {
+                throw new IllegalArgumentException("Revision is missing required fields at " + blockAddress);
+            }
+            if (revision.getBlockAddress() != null && !blockAddress.equals(revision.getBlockAddress())) {
+                throw new IllegalArgumentException("Revision " + i + " is not addressed to its block "
+                        + blockAddress);
+            }
+            putHash(revision.getHash(), entriesOffset + (entriesHashCount + i) * Verifier.HASH_LENGTH);
+            if (metadata == null) {
+                hashOnly[i] = true;
+                txTimesMillis[i] = NO_TX_TIME;
+                continue;
+            }
+            documentIds[i] = pool.intern(metadata.getId());
+            versions[i] = metadata.getVersion();
+            txTimesMillis[i] = metadata.getTxTime() != null ? metadata.getTxTime().getTime() : NO_TX_TIME;
+            txIds[i] = pool.intern(metadata.getTxId());
+            data[i] = toBinary(revision.getData());
+        }
+    }
+
+    /**
+     * Compact a decoded block. Its revisions must all carry the block's own address, as they do in exports, or
+     * no address at all, in which case they are given the block's.
+     *
+     * @param block
+     *              The block to compact.
+     * @param pool
+     *              The pool deduplicating identifiers across blocks.
+     * @return the compact block.
+     * @throws IllegalArgumentException if the block or one of its revisions is missing required fields, or a
+     *         revision is addressed to another block.
+     */
+    public static CompactJournalBlock of(final JournalBlock block, final IdentifierPool pool) {
+        return new CompactJournalBlock(block, pool);
+    }
+
+    /**
+     * @return a {@link JournalBlock} with the same content, with its revision data parsed again.
+     */
+    public JournalBlock toJournalBlock() {
+        return new JournalBlock(getBlockAddress(), transactionId, getBlockTimestamp(), getBlockHash(),
+                getEntriesHash(), getPreviousBlockHash(), getEntriesHashList(), transactionInfo, getRevisions());
+    }
+
+    public BlockAddress getBlockAddress() {
+        return new BlockAddress(strandId, sequenceNo);
+    }
+
+    public String getStrandId() {
+        return strandId;
+    }
+
+    public long getSequenceNo() {
+        return sequenceNo;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public Date getBlockTimestamp() {
+        return new Date(blockTimestampMillis);
+    }
+
+    public long getBlockTimestampMillis() {
+        return blockTimestampMillis;
+    }
+
+    public TransactionInfo getTransactionInfo() {
+        return transactionInfo;
+    }
+
+    public byte[] getBlockHash() {
+        return hash(BLOCK_HASH_OFFSET);
+    }
+
+    public byte[] getEntriesHash() {
+        return hash(ENTRIES_HASH_OFFSET);
+    }
+
+    public byte[] getPreviousBlockHash() {
+        return hasPreviousBlockHash ? hash(PREVIOUS_BLOCK_HASH_OFFSET) : null;
+    }
+
+    public int getEntriesHashCount() {
+        return entriesHashCount;
+    }
+
+    public byte[] getEntryHash(final int index) {
+        if (index < 0 || index >= entriesHashCount) {
+            throw new IndexOutOfBoundsException("Entry " + index + " of " + entriesHashCount);
+        }
+        return hash(entriesOffset() + index * Verifier.HASH_LENGTH);
+    }
+
+    public byte[][] getEntriesHashList() {
+        byte[][] entriesHashList = new byte[entriesHashCount][];
+        for (int i = 0; i < entriesHashCount; i++) {
+            entriesHashList[i] = hash(entriesOffset() + i * Verifier.HASH_LENGTH);
+        }
+        return entriesHashList;
+    }
+
+    /**
+     * @return the number of revisions, or -1 if the block had no revisions list.
+     */
+    public int getRevisionCount() {
+        return documentIds != null ? documentIds.length : -1;
+    }
+
+    /**
+     * @return whether the revision carries nothing but its hash, in which case it has no document id, version,
+     *         transaction time, transaction id or data.
+     */
+    public boolean isHashOnly(final int index) {
+        return hashOnly[index];
+    }
+
+    /**
+     * @return the id of the revision's document, or {@code null} if the revision is hash-only.
+     */
+    public String getDocumentId(final int index) {
+        return documentIds[index];
+    }
+
+    public long getVersion(final int index) {
+        return versions[index];
+    }
+
+    /**
+     * @return the transaction time of the revision in epoch milliseconds, or {@link #NO_TX_TIME} if it has none.
+     */
+    public long getTxTimeMillis(final int index) {
+        return txTimesMillis[index];
+    }
+
+    public byte[] getRevisionHash(final int index) {
+        if (index < 0 || index >= documentIds.length) {
+            throw new IndexOutOfBoundsException("Revision " + index + " of " + documentIds.length);
+        }
+        return hash(entriesOffset() + (entriesHashCount + index) * Verifier.HASH_LENGTH);
+    }
+
+    /**
+     * @return the data of the revision, parsed from its Ion binary form, or {@code null} if it has none.
+     */
+    public IonStruct getData(final int index) {
+        return data[index] != null ? (IonStruct) SYSTEM.singleValue(data[index]) : null;
+    }
+
+    public QldbRevision getRevision(final int index) {
+        if (hashOnly[index]) {
+            return new QldbRevision(getBlockAddress(), null, getRevisionHash(index), null);
+        }
+        Date txTime = txTimesMillis[index] != NO_TX_TIME ? new Date(txTimesMillis[index]) : null;
+        QldbRevision.Metadata metadata = new QldbRevision.Metadata(documentIds[index], versions[index], txTime,
+                txIds[index]);
+        return new QldbRevision(getBlockAddress(), metadata, getRevisionHash(index), getData(index));
+    }
+
+    public List<QldbRevision> getRevisions() {
+        if (documentIds == null) {
+            return null;
+        }
+        List<QldbRevision> revisions = new ArrayList<>(documentIds.length);
+        for (int i = 0; i < documentIds.length; i++) {
+            revisions.add(getRevision(i));
+        }
+        return revisions;
+    }
+
+    /**
+     * Estimate the heap retained by this block, assuming a 64-bit JVM with compressed references. Identifiers
+     * held by the pool are shared across blocks and are not counted, nor is the revision data or the maps and
+     * lists of the transaction info, so that the result compares with {@link #estimateSize(JournalBlock)}.
+     * This is a layout calculation, not a measurement; {@code gradle footprint} measures the whole retained heap
+     * of decoded and compact blocks, data and transaction info included, with JOL.
+     *
+     * @return the estimated size in bytes.
+     */
+    public long getEstimatedSize() {
+        long size = align(OBJECT_HEADER + 10 * REFERENCE + 2 * Long.BYTES + Integer.BYTES + 1);
+        size += byteArraySize(hashes.length);
+        if (documentIds != null) {
+            size += 3 * referenceArraySize(documentIds.length) + 2 * align(ARRAY_HEADER + Long.BYTES * versions.length)
+                    + byteArraySize(hashOnly.length);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the heap retained by a decoded block under the same assumptions as {@link #getEstimatedSize()}:
+     * revision data and the maps and lists of the transaction info are not counted, but every identifier and
+     * statement string is, since each decoded block holds its own copies.
+     *
+     * @param block
+     *              The decoded block.
+     * @return the estimated size in bytes.
+     */
+    public static long estimateSize(final JournalBlock block) {
+        long size = align(OBJECT_HEADER + 9 * REFERENCE);
+        size += blockAddressSize(block.getBlockAddress());
+        size += stringSize(block.getTransactionId());
+        size += dateSize(block.getBlockTimestamp());
+        size += byteArraySize(block.getBlockHash());
+        size += byteArraySize(block.getEntriesHash());
+        size += byteArraySize(block.getPreviousBlockHash());
+        if (block.getEntriesHashList() != null) {
+            size += referenceArraySize(block.getEntriesHashList().length);
+            for (byte[] hash : block.getEntriesHashList()) {
+                size += byteArraySize(hash);
+            }
+        }
+        TransactionInfo transactionInfo = block.getTransactionInfo();
+        if (transactionInfo != null && transactionInfo.getDocuments() != null) {
+            for (Map.Entry<String, DocumentInfo> document : transactionInfo.getDocuments().entrySet()) {
+                size += stringSize(document.getKey());
+                size += stringSize(document.getValue().getTableName());
+                size += stringSize(document.getValue().getTableId());
+            }
+        }
+        if (transactionInfo != null && transactionInfo.getStatements() != null) {
+            for (StatementInfo statement : transactionInfo.getStatements()) {
+                size += stringSize(statement.getStatement());
+            }
+        }
+        if (block.getRevisions() != null) {
+            // An ArrayList grown from its default capacity of ten.
+            size += align(OBJECT_HEADER + 2 * Integer.BYTES + REFERENCE)
+                    + referenceArraySize(Math.max(10, block.getRevisions().size()));
+            for (QldbRevision revision : block.getRevisions()) {
+                size += align(OBJECT_HEADER + 4 * REFERENCE);
+                size += blockAddressSize(revision.getBlockAddress());
+                size += byteArraySize(revision.getHash());
+                QldbRevision.Metadata metadata = revision.getMetadata();
+                if (metadata != null) {
+                    size += align(OBJECT_HEADER + 3 * REFERENCE + Long.BYTES);
+                    size += stringSize(metadata.getId()) + dateSize(metadata.getTxTime())
+                            + stringSize(metadata.getTxId());
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactJournalBlock{"
+            + "blockAddress=" + getBlockAddress()
+            + ", transactionId='" + transactionId + '\''
+            + ", blockTimestampMillis=" + blockTimestampMillis
+            + ", entriesHashCount=" + entriesHashCount
+            + ", revisionCount=" + getRevisionCount()
+            + '}';
+    }
+
+    private int entriesOffset() {
+        return hasPreviousBlockHash ? PREVIOUS_BLOCK_HASH_OFFSET + Verifier.HASH_LENGTH : PREVIOUS_BLOCK_HASH_OFFSET;
+    }
+
+    private byte[] hash(final int offset) {
+        return Arrays.copyOfRange(hashes, offset, offset + Verifier.HASH_LENGTH);
+    }
+
+    private void putHash(final byte[] hash, final int offset) {
+        if (hash.length != Verifier.HASH_LENGTH) {
+            throw new IllegalArgumentException("Expected a " + Verifier.HASH_LENGTH + " byte hash, got " + hash.length
+                    + " bytes: " + Verifier.toBase64(hash));
+        }
+        System.arraycopy(hash, 0, hashes, offset, Verifier.HASH_LENGTH);
+    }
+
+    private static TransactionInfo intern(final TransactionInfo transactionInfo, final IdentifierPool pool) {
+        if (transactionInfo == null) {
+            return null;
+        }
+        List<StatementInfo> statements = null;
+        if (transactionInfo.getStatements() != null) {
+            statements = new ArrayList<>(transactionInfo.getStatements().size());
+            for (StatementInfo statement : transactionInfo.getStatements()) {
+                statements.add(new StatementInfo(pool.intern(statement.getStatement()), statement.getStartTime(),
+                        statement.getStatementDigest()));
+            }
+        }
+        Map<String, DocumentInfo> documents = null;
+        if (transactionInfo.getDocuments() != null) {
+            documents = new LinkedHashMap<>();
+            for (Map.Entry<String, DocumentInfo> document : transactionInfo.getDocuments().entrySet()) {
+                DocumentInfo documentInfo = document.getValue();
+                documents.put(pool.intern(document.getKey()), new DocumentInfo(pool.intern(documentInfo.getTableName()),
+                        pool.intern(documentInfo.getTableId()), documentInfo.getStatementIndexList()));
+            }
+        }
+        return new TransactionInfo(statements, documents);
+    }
+
+    private static byte[] toBinary(final IonStruct data) {
+        if (data == null) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (IonWriter writer = SYSTEM.newBinaryWriter(out)) {
+            data.writeTo(writer);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static long blockAddressSize(final BlockAddress blockAddress) {
+        return blockAddress != null
+                ? align(OBJECT_HEADER + REFERENCE + Long.BYTES) + stringSize(blockAddress.getStrandId()) : 0;
+    }
+
+    /**
+     * A Java 8 string: the object with its value reference and cached hash, and a char array.
+     */
+    private static long stringSize(final String s) {
+        return s != null ? align(OBJECT_HEADER + REFERENCE + Integer.BYTES) + align(ARRAY_HEADER + 2L * s.length()) : 0;
+    }
+
+    private static long dateSize(final Date date) {
+        return date != null ? align(OBJECT_HEADER + Long.BYTES + REFERENCE) : 0;
+    }
+
+    private static long byteArraySize(final byte[] array) {
+        return array != null ? byteArraySize(array.length) : 0;
+    }
+
+    private static long byteArraySize(final int length) {
+        return align(ARRAY_HEADER + (long) length);
+    }
+
+    private static long referenceArraySize(final int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial.qldb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deduplicates identifiers such as strand ids, table names, table ids and transaction ids, so that blocks held
+ * in memory share a single copy of each rather than one copy per decoded value.
+ *
+ * Unlike {@link String#intern()} the pool is owned by its user and is released together with the blocks that
+ * reference it.
+ */
+public final class IdentifierPool {
+    private final ConcurrentMap<String, String> identifiers = new ConcurrentHashMap<>();
+
+    /**
+     * @param identifier
+     *              The identifier to deduplicate, may be {@code null}.
+     * @return the pooled copy of the identifier, which is equal to it.
+     */
+    public String intern(final String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        String pooled = identifiers.putIfAbsent(identifier, identifier);
+        return pooled != null ? pooled : identifier;
+    }
+
+    /**
+     * @return the number of distinct identifiers in the pool.
+     */
+    public int size() {
+        return identifiers.size();
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.IonType;
+import com.amazon.ion.system.IonSystemBuilder;
+import com.amazon.ionhash.IonHashReader;
+import com.amazon.ionhash.IonHashReaderBuilder;
+import com.amazon.ionhash.IonHasherProvider;
+
+import software.amazon.qldb.tutorial.RevisionHashValidator;
+import software.amazon.qldb.tutorial.Verifier;
+
+/**
+ * Decodes {@link JournalBlock}s straight from an {@link IonReader}.
+ *
+ * Every field is read from the reader into the model classes in a single pass. Only the user data of each
+ * revision is materialized as an {@link IonStruct}, because that is how {@link QldbRevision} exposes it.
+ * The result is equal to mapping a block's {@link IonStruct} with {@code Constants.MAPPER}, except that fields
+ * the model does not know about are skipped rather than rejected.
+ *
+ * Optionally, the hash of every revision is validated while it is read: an {@link IonHashReader} is layered on
+ * the source reader for the fields of each revision, so the metadata and data are hashed during the same pass
+ * that decodes them, without a second walk over the materialized values. The hash is checked the way
+ * {@link QldbRevision#computeHash(IonStruct, IonStruct)} computes it, so a deleted revision, which has metadata
+ * but no data, is checked against its metadata alone. A revision that only carries its hash, as the revisions
+ * of a {@code CREATE TABLE} transaction do, has nothing to check it against and is not validated.
+ *
+ * Alternatively, hashing can be taken off the decoding thread altogether: given a {@link RevisionHashValidator},
+ * the decoder keeps the metadata of each revision as an {@link IonStruct} and hands a {@link RevisionHashCheck}
+ * to the validator, which hashes revisions in parallel and reports mismatches instead of throwing. The sample
+ * is drawn once a revision has been read, so that hash-only revisions are not counted by it; revisions the
+ * validator does not sample are decoded as if validation were off.
+ *
+ * A decoder can also be restricted to the revisions of some tables with {@link #withTableNames(Collection)}.
+ * The {@code transactionInfo} of a block, which precedes its revisions, tells which documents belong to which
+ * table. A block without any document of the wanted tables has its whole revisions list skipped unread. In
+ * other blocks, a revision is dropped once its metadata shows an unwanted document, or once it turns out to
+ * have no metadata at all. Exports write the data of a revision before its metadata, so the data of a dropped
+ * revision has usually been materialized already; what the filter saves is the hashing and the sampling.
+ * Dropped revisions are neither validated nor counted by the validator's sample. In the unusual case of a
+ * block whose revisions precede its {@code transactionInfo}, the same revisions are dropped once the block has
+ * been read, after they were validated. Blocks themselves are always returned, with only the wanted revisions,
+ * so that the hash chain stays verifiable.
+ */
+public final class JournalBlockDecoder {
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final IonHasherProvider HASHER_PROVIDER = new PooledIonHasherProvider("SHA-256");
+
+    private final boolean validateRevisionHashes;
+    private final RevisionHashValidator revisionHashValidator;
+    private final Set<String> tableNames;
+
+    /**
+     * Create a decoder that does not validate revision hashes.
+     */
+    public JournalBlockDecoder() {
+        this(false);
+    }
+
+    /**
+     * @param validateRevisionHashes
+     *              Whether to check the hash of every revision against its metadata and data while decoding.
+     */
+    public JournalBlockDecoder(final boolean validateRevisionHashes) {
+        this(validateRevisionHashes, null, null);
+    }
+
+    /**
+     * Create a decoder that hands every revision to the given validator instead of checking it while decoding.
+     *
+     * @param revisionHashValidator
+     *              The validator that checks revision hashes in parallel.
+     */
+    public JournalBlockDecoder(final RevisionHashValidator revisionHashValidator) {
+        this(true, requireValidator(revisionHashValidator), null);
+    }
+
+    private JournalBlockDecoder(final boolean validateRevisionHashes, final RevisionHashValidator revisionHashValidator,
+                                final Set<String> tableNames) {
+        this.validateRevisionHashes = validateRevisionHashes;
+        this.revisionHashValidator = revisionHashValidator;
+        this.tableNames = tableNames;
+    }
+
+    private static RevisionHashValidator requireValidator(final RevisionHashValidator revisionHashValidator) {
+        if (revisionHashValidator == null) {
+            throw new IllegalArgumentException("Revision hash validator cannot be null.");
+        }
+        return revisionHashValidator;
+    }
+
+    /**
+     * Create a decoder like this one that only keeps the revisions of documents in the given tables.
+     *
+     * @param tableNames
+     *              The names of the tables to keep, for example {@code Constants.CARS_TABLE_NAME}.
+     * @return the filtering decoder.
+     */
+    public JournalBlockDecoder withTableNames(final Collection<String> tableNames) {
+        return new JournalBlockDecoder(validateRevisionHashes, revisionHashValidator,
+                Collections.unmodifiableSet(new HashSet<>(tableNames)));
+    }
+
+    /**
+     * @return the tables whose revisions are kept, or {@code null} if revisions of all tables are kept.
+     */
+    public Set<String> getTableNames() {
+        return tableNames;
+    }
+
+    public boolean isValidatingRevisionHashes() {
+        return validateRevisionHashes;
+    }
+
+    /**
+     * @return the validator revisions are handed to, or {@code null} if hashes are validated inline or not at all.
+     */
+    public RevisionHashValidator getRevisionHashValidator() {
+        return revisionHashValidator;
+    }
+
+    /**
+     * Decode the {@link JournalBlock} the given reader is positioned on. On return the reader has stepped
+     * out of the block, ready for {@link IonReader#next()}.
+     *
+     * @param reader
+     *              An {@link IonReader} positioned on a journal block struct.
+     * @return the decoded {@link JournalBlock}.
+     * @throws IllegalStateException if the block or one of its fields has an unexpected type.
+     * @throws IllegalArgumentException if revision hashes are validated inline and a revision does not match its
+     *         hash.
+     */
+    public JournalBlock decode(final IonReader reader) {
+        expectType(reader, IonType.STRUCT, "journal block");
+        if (reader.isNullValue()) {
+            throw new IllegalStateException("Expected a journal block but found null.struct");
+        }
+        BlockAddress blockAddress = null;
+        String transactionId = null;
+        Date blockTimestamp = null;
+        byte[] blockHash = null;
+        byte[] entriesHash = null;
+        byte[] previousBlockHash = null;
+        byte[][] entriesHashList = null;
+        TransactionInfo transactionInfo = null;
+        List<QldbRevision> revisions = null;
+        boolean revisionsFiltered = false;
+
+        reader.stepIn();
+        while (reader.next() != null) {
+            switch (reader.getFieldName()) {
+                case "blockAddress":
+                    blockAddress = readBlockAddress(reader);
+                    break;
+                case "transactionId":
+                    transactionId = readString(reader);
+                    break;
+                case "blockTimestamp":
+                    blockTimestamp = readDate(reader);
+                    break;
+                case "blockHash":
+                    blockHash = readBlob(reader);
+                    break;
+                case "entriesHash":
+                    entriesHash = readBlob(reader);
+                    break;
+                case "previousBlockHash":
+                    previousBlockHash = readBlob(reader);
+                    break;
+                case "entriesHashList":
+                    entriesHashList = readBlobList(reader);
+                    break;
+                case "transactionInfo":
+                    transactionInfo = readTransactionInfo(reader);
+                    break;
+                case "revisions":
+                    Set<String> wantedDocumentIds = tableNames != null && transactionInfo != null
+                            ? wantedDocumentIds(transactionInfo) : null;
+                    revisions = readRevisions(reader, wantedDocumentIds);
+                    revisionsFiltered = wantedDocumentIds != null;
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.stepOut();
+        if (tableNames != null && revisions != null && !revisionsFiltered) {
+            // The revisions came before the transaction info, so they can only be filtered now.
+            Set<String> wantedDocumentIds = wantedDocumentIds(transactionInfo);
+            revisions.removeIf(revision -> revision.getMetadata() == null
+                    || !wantedDocumentIds.contains(revision.getMetadata().getId()));
+        }
+        return new JournalBlock(blockAddress, transactionId, blockTimestamp, blockHash, entriesHash,
+                previousBlockHash, entriesHashList, transactionInfo, revisions);
+    }
+
+    private static BlockAddress readBlockAddress(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "blockAddress");
+        String strandId = null;
+        long sequenceNo = 0;
+        reader.stepIn();
+        while (reader.next() != null) {
+            switch (reader.getFieldName()) {
+                case "strandId":
+                    strandId = readString(reader);
+                    break;
+                case "sequenceNo":
+                    sequenceNo = readLong(reader);
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.stepOut();
+        return new BlockAddress(strandId, sequenceNo);
+    }
+
+    private static TransactionInfo readTransactionInfo(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "transactionInfo");
+        List<StatementInfo> statements = null;
+        Map<String, DocumentInfo> documents = null;
+        reader.stepIn();
+        while (reader.next() != null) {
+            switch (reader.getFieldName()) {
+                case "statements":
+                    statements = readStatements(reader);
+                    break;
+                case "documents":
+                    documents = readDocuments(reader);
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.stepOut();
+        return new TransactionInfo(statements, documents);
+    }
+
+    private static List<StatementInfo> readStatements(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.LIST, "statements");
+        List<StatementInfo> statements = new ArrayList<>();
+        reader.stepIn();
+        while (reader.next() != null) {
+            expectType(reader, IonType.STRUCT, "statement");
+            String statement = null;
+            Date startTime = null;
+            byte[] statementDigest = null;
+            reader.stepIn();
+            while (reader.next() != null) {
+                switch (reader.getFieldName()) {
+                    case "statement":
+                        statement = readString(reader);
+                        break;
+                    case "startTime":
+                        startTime = readDate(reader);
+                        break;
+                    case "statementDigest":
+                        statementDigest = readBlob(reader);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            reader.stepOut();
+            statements.add(new StatementInfo(statement, startTime, statementDigest));
+        }
+        reader.stepOut();
+        return statements;
+    }
+
+    private static Map<String, DocumentInfo> readDocuments(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "documents");
+        Map<String, DocumentInfo> documents = new LinkedHashMap<>();
+        reader.stepIn();
+        while (reader.next() != null) {
+            String documentId = reader.getFieldName();
+            expectType(reader, IonType.STRUCT, "document");
+            String tableName = null;
+            String tableId = null;
+            List<Integer> statementIndexList = null;
+            reader.stepIn();
+            while (reader.next() != null) {
+                switch (reader.getFieldName()) {
+                    case "tableName":
+                        tableName = readString(reader);
+                        break;
+                    case "tableId":
+                        tableId = readString(reader);
+                        break;
+                    case "statements":
+                        statementIndexList = readIntList(reader);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            reader.stepOut();
+            documents.put(documentId, new DocumentInfo(tableName, tableId, statementIndexList));
+        }
+        reader.stepOut();
+        return documents;
+    }
+
+    private Set<String> wantedDocumentIds(final TransactionInfo transactionInfo) {
+        Set<String> documentIds = new HashSet<>();
+        if (transactionInfo != null && transactionInfo.getDocuments() != null) {
+            transactionInfo.getDocuments().forEach((documentId, documentInfo) -> {
+                if (tableNames.contains(documentInfo.getTableName())) {
+                    documentIds.add(documentId);
+                }
+            });
+        }
+        return documentIds;
+    }
+
+    /**
+     * @param wantedDocumentIds
+     *              The ids of the documents whose revisions are kept, or {@code null} to keep all revisions.
+     */
+    private List<QldbRevision> readRevisions(final IonReader reader, final Set<String> wantedDocumentIds) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.LIST, "revisions");
+        List<QldbRevision> revisions = new ArrayList<>();
+        if (wantedDocumentIds != null && wantedDocumentIds.isEmpty()) {
+            // Leave the list unread, the next call to next() skips over it.
+            return revisions;
+        }
+        reader.stepIn();
+        while (reader.next() != null) {
+            QldbRevision revision = readRevision(reader, wantedDocumentIds);
+            if (revision != null) {
+                revisions.add(revision);
+            }
+        }
+        reader.stepOut();
+        return revisions;
+    }
+
+    /**
+     * Decode the {@link QldbRevision} the given reader is positioned on, for example a revision returned by a
+     * query of a committed view. On return the reader has stepped out of the revision.
+     *
+     * @param reader
+     *              An {@link IonReader} positioned on a revision struct.
+     * @return the decoded {@link QldbRevision}.
+     * @throws IllegalStateException if the revision or one of its fields has an unexpected type.
+     * @throws IllegalArgumentException if revision hashes are validated inline and the revision does not match
+     *         its hash.
+     */
+    public QldbRevision decodeRevision(final IonReader reader) {
+        return readRevision(reader, null);
+    }
+
+    /**
+     * @param wantedDocumentIds
+     *              The ids of the documents whose revisions are kept, or {@code null} to keep all revisions.
+     * @return the revision, or {@code null} if it belongs to a document that is not wanted.
+     */
+    private QldbRevision readRevision(final IonReader reader, final Set<String> wantedDocumentIds) {
+        expectType(reader, IonType.STRUCT, "revision");
+        BlockAddress blockAddress = null;
+        QldbRevision.Metadata metadata = null;
+        byte[] hash = null;
+        IonStruct data = null;
+        byte[] metadataHash = null;
+        byte[] dataHash = null;
+        IonStruct metadataStruct = null;
+        // The sample is drawn once the revision is known to be kept and to be more than a hash, so the metadata
+        // is captured in case the revision is sampled.
+        boolean captureMetadata = revisionHashValidator != null;
+        boolean unwanted = false;
+        reader.stepIn();
+        // Each field of the revision is a top level value for the hash reader, so the digest taken after
+        // stepping out of a field is the hash of that field's value alone.
+        IonHashReader hashReader = validateRevisionHashes && revisionHashValidator == null
+                ? IonHashReaderBuilder.standard().withHasherProvider(HASHER_PROVIDER).withReader(reader).build()
+                : null;
+        IonReader fieldReader = hashReader != null ? hashReader : reader;
+        while (fieldReader.next() != null) {
+            switch (fieldReader.getFieldName()) {
+                case "blockAddress":
+                    blockAddress = readBlockAddress(fieldReader);
+                    break;
+                case "metadata":
+                    if (captureMetadata) {
+                        metadataStruct = readMetadataStruct(fieldReader);
+                        metadata = metadataStruct != null ? readMetadata(metadataStruct) : null;
+                    } else {
+                        discardDigest(hashReader);
+                        metadata = readMetadata(fieldReader);
+                        metadataHash = metadata != null ? digest(hashReader) : null;
+                    }
+                    if (wantedDocumentIds != null
+                            && (metadata == null || !wantedDocumentIds.contains(metadata.getId()))) {
+                        // Stop hashing, the rest of the revision is skipped rather than read.
+                        unwanted = true;
+                        hashReader = null;
+                        fieldReader = reader;
+                    }
+                    break;
+                case "hash":
+                    hash = readBlob(fieldReader);
+                    break;
+                case "data":
+                    if (unwanted) {
+                        break;
+                    }
+                    discardDigest(hashReader);
+                    data = readData(fieldReader);
+                    dataHash = data != null ? digest(hashReader) : null;
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.stepOut();
+        // A revision without metadata belongs to no document, so no table filter wants it.
+        if (unwanted || wantedDocumentIds != null && metadata == null) {
+            return null;
+        }
+        boolean hashOnly = metadata == null && data == null;
+        if (hashReader != null && !hashOnly) {
+            validateHash(blockAddress, hash, metadataHash, dataHash);
+        } else if (revisionHashValidator != null && !hashOnly && revisionHashValidator.sample()) {
+            revisionHashValidator.submit(new RevisionHashCheck(blockAddress, metadataStruct, data, hash));
+        }
+        return new QldbRevision(blockAddress, metadata, hash, data);
+    }
+
+    /**
+     * @param dataHash
+     *              The hash of the data, or {@code null} for a deleted revision, whose hash covers its metadata
+     *              alone.
+     */
+    private static void validateHash(final BlockAddress blockAddress, final byte[] hash, final byte[] metadataHash,
+                                     final byte[] dataHash) {
+        if (hash == null || metadataHash == null) {
+            throw new IllegalArgumentException("Document is missing required fields");
+        }
+        byte[] candidateHash = Verifier.joinHashesPairwise(metadataHash, dataHash != null ? dataHash : new byte[0]);
+        if (!Arrays.equals(candidateHash, hash)) {
+            throw new IllegalArgumentException("Hash entry of QLDB revision and computed hash "
+                    + "of QLDB revision do not match at " + blockAddress);
+        }
+    }
+
+    /**
+     * Drop whatever the hash reader has hashed since the last digest, so that the next digest only covers
+     * the value about to be read.
+     */
+    private static void discardDigest(final IonHashReader hashReader) {
+        if (hashReader != null) {
+            hashReader.digest();
+        }
+    }
+
+    private static byte[] digest(final IonHashReader hashReader) {
+        return hashReader != null ? hashReader.digest() : null;
+    }
+
+    private static QldbRevision.Metadata readMetadata(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "metadata");
+        String id = null;
+        long version = 0;
+        Date txTime = null;
+        String txId = null;
+        reader.stepIn();
+        while (reader.next() != null) {
+            switch (reader.getFieldName()) {
+                case "id":
+                    id = readString(reader);
+                    break;
+                case "version":
+                    version = readLong(reader);
+                    break;
+                case "txTime":
+                    txTime = readDate(reader);
+                    break;
+                case "txId":
+                    txId = readString(reader);
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.stepOut();
+        return new QldbRevision.Metadata(id, version, txTime, txId);
+    }
+
+    private static IonStruct readMetadataStruct(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "metadata");
+        return (IonStruct) SYSTEM.newValue(reader);
+    }
+
+    private static QldbRevision.Metadata readMetadata(final IonStruct metadataStruct) {
+        try (IonReader reader = SYSTEM.newReader(metadataStruct)) {
+            reader.next();
+            return readMetadata(reader);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static IonStruct readData(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.STRUCT, "data");
+        return (IonStruct) SYSTEM.newValue(reader);
+    }
+
+    private static String readString(final IonReader reader) {
+        if (reader.getType() != IonType.STRING && reader.getType() != IonType.SYMBOL) {
+            throw unexpectedType(reader, "string");
+        }
+        return reader.isNullValue() ? null : reader.stringValue();
+    }
+
+    private static long readLong(final IonReader reader) {
+        if (reader.getType() != IonType.INT || reader.isNullValue()) {
+            throw unexpectedType(reader, "int");
+        }
+        return reader.longValue();
+    }
+
+    private static Date readDate(final IonReader reader) {
+        if (reader.getType() != IonType.TIMESTAMP) {
+            throw unexpectedType(reader, "timestamp");
+        }
+        return reader.isNullValue() ? null : reader.dateValue();
+    }
+
+    private static byte[] readBlob(final IonReader reader) {
+        if (reader.getType() != IonType.BLOB) {
+            throw unexpectedType(reader, "blob");
+        }
+        return reader.isNullValue() ? null : reader.newBytes();
+    }
+
+    private static byte[][] readBlobList(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.LIST, "list of blobs");
+        List<byte[]> blobs = new ArrayList<>();
+        reader.stepIn();
+        while (reader.next() != null) {
+            blobs.add(readBlob(reader));
+        }
+        reader.stepOut();
+        return blobs.toArray(new byte[blobs.size()][]);
+    }
+
+    private static List<Integer> readIntList(final IonReader reader) {
+        if (reader.isNullValue()) {
+            return null;
+        }
+        expectType(reader, IonType.LIST, "list of ints");
+        List<Integer> ints = new ArrayList<>();
+        reader.stepIn();
+        while (reader.next() != null) {
+            if (reader.getType() != IonType.INT || reader.isNullValue()) {
+                throw unexpectedType(reader, "int");
+            }
+            ints.add(reader.intValue());
+        }
+        reader.stepOut();
+        return ints;
+    }
+
+    private static void expectType(final IonReader reader, final IonType type, final String description) {
+        if (reader.getType() != type) {
+            throw new IllegalStateException("Expected ion " + type + " for " + description + " but found "
+                    + reader.getType());
+        }
+    }
+
+    private static IllegalStateException unexpectedType(final IonReader reader, final String expected) {
+        return new IllegalStateException("Expected ion " + expected + " for field " + reader.getFieldName()
+                + " but found " + reader.getType());
+    }
+}
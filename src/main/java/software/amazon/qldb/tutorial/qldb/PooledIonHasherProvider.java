@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+
+import com.amazon.ionhash.IonHasher;
+import com.amazon.ionhash.IonHasherProvider;
+import com.amazon.ionhash.MessageDigestIonHasherProvider;
+
+/**
+ * An {@link IonHasherProvider} that reuses {@link MessageDigest} instances instead of creating new ones.
+ *
+ * An Ion hash reader asks for a new hasher for the value being hashed and for every nested container, and
+ * {@link MessageDigestIonHasherProvider} looks up a new {@link MessageDigest} for each of them. The hashers
+ * returned here borrow a digest from a per-thread pool on their first update and give it back, reset, as
+ * soon as they produce their digest. Hashing one revision after another on the same thread therefore only
+ * ever uses as many digests as the deepest nesting of a revision.
+ */
+public final class PooledIonHasherProvider implements IonHasherProvider {
+    private static final int MAX_POOLED_DIGESTS = 32;
+
+    private final String algorithm;
+    private final ThreadLocal<ArrayDeque<MessageDigest>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * @param algorithm
+     *              The name of the {@link MessageDigest} algorithm, for example {@code SHA-256}.
+     * @throws IllegalArgumentException if the algorithm is not available on the current JVM.
+     */
+    public PooledIonHasherProvider(final String algorithm) {
+        this.algorithm = algorithm;
+        release(newMessageDigest());
+    }
+
+    @Override
+    public IonHasher newHasher() {
+        return new PooledIonHasher();
+    }
+
+    private MessageDigest borrow() {
+        MessageDigest messageDigest = pool.get().pollFirst();
+        return messageDigest != null ? messageDigest : newMessageDigest();
+    }
+
+    private void release(final MessageDigest messageDigest) {
+        ArrayDeque<MessageDigest> digests = pool.get();
+        if (digests.size() < MAX_POOLED_DIGESTS) {
+            digests.addFirst(messageDigest);
+        }
+    }
+
+    private MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(algorithm + " message digest is unavailable", e);
+        }
+    }
+
+    /**
+     * Holds a pooled {@link MessageDigest} only between its first update and its digest, since a hasher may be
+     * used again after producing a digest.
+     */
+    private final class PooledIonHasher implements IonHasher {
+        private MessageDigest messageDigest;
+
+        @Override
+        public void update(final byte[] bytes) {
+            if (messageDigest == null) {
+                messageDigest = borrow();
+            }
+            messageDigest.update(bytes);
+        }
+
+        @Override
+        public byte[] digest() {
+            if (messageDigest == null) {
+                messageDigest = borrow();
+            }
+            byte[] digest = messageDigest.digest();
+            release(messageDigest);
+            messageDigest = null;
+            return digest;
+        }
+    }
+}
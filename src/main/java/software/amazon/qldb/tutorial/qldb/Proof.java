@@ -25,29 +25,86 @@ import com.amazonaws.services.qldb.model.GetRevisionRequest;
 import com.amazonaws.services.qldb.model.GetRevisionResult;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import software.amazon.qldb.tutorial.Verifier;
+
 /**
  * A Java representation of the {@link Proof} object.
  * Returned from the {@link com.amazonaws.services.qldb.AmazonQLDB#getRevision(GetRevisionRequest)} api.
+ *
+ * The internal hashes are stored back to back in a single byte array, {@value Verifier#HASH_LENGTH} bytes per hash,
+ * rather than as one array per hash.
  */
 public final class Proof {
     private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final int INITIAL_HASH_CAPACITY = 32;
 
-    private List<byte[]> internalHashes;
+    private final byte[] internalHashes;
+    private final int internalHashCount;
 
+    /**
+     * Copies the internal hashes into a single array. Unlike earlier versions, which kept the list as given,
+     * every hash must be {@value Verifier#HASH_LENGTH} bytes long.
+     *
+     * @param internalHashes
+     *              The internal hashes of the proof.
+     * @throws IllegalArgumentException if a hash is not {@value Verifier#HASH_LENGTH} bytes long.
+     */
     public Proof(final List<byte[]> internalHashes) {
+        this.internalHashCount = internalHashes.size();
+        this.internalHashes = new byte[internalHashCount * Verifier.HASH_LENGTH];
+        for (int i = 0; i < internalHashCount; i++) {
+            byte[] hash = internalHashes.get(i);
+            if (hash.length != Verifier.HASH_LENGTH) {
+                throw new IllegalArgumentException("Invalid hash: internal hash " + i + " is " + hash.length
+                        + " bytes long, expected " + Verifier.HASH_LENGTH + ".");
+            }
+            System.arraycopy(hash, 0, this.internalHashes, i * Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        }
+    }
+
+    private Proof(final byte[] internalHashes, final int internalHashCount) {
         this.internalHashes = internalHashes;
+        this.internalHashCount = internalHashCount;
     }
 
+    /**
+     * Gets the internal hashes as a list with one array per hash. The list is built on every call; prefer
+     * {@link #getInternalHashBytes()} on hot paths.
+     *
+     * @return a list of the internal hashes.
+     */
     public List<byte[]> getInternalHashes() {
+        List<byte[]> list = new ArrayList<>(internalHashCount);
+        for (int i = 0; i < internalHashCount; i++) {
+            int offset = i * Verifier.HASH_LENGTH;
+            list.add(Arrays.copyOfRange(internalHashes, offset, offset + Verifier.HASH_LENGTH));
+        }
+        return list;
+    }
+
+    /**
+     * Gets the internal hashes stored contiguously; hash {@code i} starts at offset {@code i * Verifier.HASH_LENGTH}.
+     * The returned array is shared with this {@link Proof} and must not be modified.
+     *
+     * @return the internal hashes as a single byte array.
+     */
+    public byte[] getInternalHashBytes() {
         return internalHashes;
     }
 
+    public int getInternalHashCount() {
+        return internalHashCount;
+    }
+
     /**
      * Decodes a {@link Proof} from an ion text String. This ion text is returned in
      * a {@link GetRevisionResult#getProof()}
      *
+     * Each hash is copied from the ion reader directly into the shared hash array.
+     *
      * @param ionText
      *              The ion text representing a {@link Proof} object.
      * @return {@link JournalBlock} parsed from the ion text.
@@ -56,15 +113,28 @@ public final class Proof {
     public static Proof fromBlob(final String ionText) {
         try {
             IonReader reader = SYSTEM.newReader(ionText);
-            List<byte[]> list = new ArrayList<>();
+            byte[] hashes = new byte[INITIAL_HASH_CAPACITY * Verifier.HASH_LENGTH];
+            int count = 0;
             reader.next();
             reader.stepIn();
             while (reader.next() != null) {
-                list.add(reader.newBytes());
+                if (reader.byteSize() != Verifier.HASH_LENGTH) {
+                    throw new IllegalStateException("Expected a " + Verifier.HASH_LENGTH + " byte hash but found "
+                            + reader.byteSize() + " bytes");
+                }
+                int offset = count * Verifier.HASH_LENGTH;
+                if (offset == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                reader.getBytes(hashes, offset, Verifier.HASH_LENGTH);
+                count++;
+            }
+            if (hashes.length != count * Verifier.HASH_LENGTH) {
+                hashes = Arrays.copyOf(hashes, count * Verifier.HASH_LENGTH);
             }
-            return new Proof(list);
+            return new Proof(hashes, count);
         } catch (Exception e) {
-            throw new IllegalStateException("Failed to parse a Proof from byte array");
+            throw new IllegalStateException("Failed to parse a Proof from byte array: " + e.getMessage(), e);
         }
     }
 }
@@ -39,7 +39,7 @@ import com.amazon.ion.IonValue;
 import com.amazon.ion.system.IonSystemBuilder;
 import com.amazon.ionhash.IonHashReader;
 import com.amazon.ionhash.IonHashReaderBuilder;
-import com.amazon.ionhash.MessageDigestIonHasherProvider;
+import com.amazon.ionhash.IonHasherProvider;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -54,7 +54,7 @@ import software.amazon.qldb.tutorial.Verifier;
 public final class QldbRevision {
     private static final Logger log = LoggerFactory.getLogger(QldbRevision.class);
     private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
-    private static MessageDigestIonHasherProvider ionHasherProvider = new MessageDigestIonHasherProvider("SHA-256");
+    private static final IonHasherProvider ionHasherProvider = new PooledIonHasherProvider("SHA-256");
     private static final ZoneId UTC = ZoneId.of("UTC");
     private static final BigDecimal ONE_THOUSAND = BigDecimal.valueOf(1000L);
 
@@ -273,17 +273,18 @@ public final class QldbRevision {
     }
 
     /**
-     * Calculate the digest of two QLDB hashes.
+     * Calculate the digest of two QLDB hashes. A deleted revision has no data, and its hash is the hash of its
+     * metadata alone.
      *
      * @param metadata
      *              The metadata portion of a document.
      * @param data
-     *              The data portion of a document.
+     *              The data portion of a document, or {@code null} if the revision is a deletion.
      * @return the converted {@link QldbRevision} object.
      */
     public static byte[] computeHash(final IonStruct metadata, final IonStruct data) {
         byte[] metaDataHash = hashIonValue(metadata);
-        byte[] dataHash = hashIonValue(data);
+        byte[] dataHash = data != null ? hashIonValue(data) : new byte[0];
         return Verifier.joinHashesPairwise(metaDataHash, dataHash);
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import java.util.Arrays;
+
+import com.amazon.ion.IonStruct;
+
+/**
+ * The parts of a revision needed to check its hash, captured while decoding so that the check itself can run
+ * later, on another thread.
+ */
+public final class RevisionHashCheck {
+    private final BlockAddress blockAddress;
+    private final IonStruct metadata;
+    private final IonStruct data;
+    private final byte[] hash;
+
+    public RevisionHashCheck(final BlockAddress blockAddress, final IonStruct metadata, final IonStruct data,
+                             final byte[] hash) {
+        this.blockAddress = blockAddress;
+        this.metadata = metadata;
+        this.data = data;
+        this.hash = hash;
+    }
+
+    public BlockAddress getBlockAddress() {
+        return blockAddress;
+    }
+
+    /**
+     * @return whether the revision carries nothing but its hash, as the revisions of a {@code CREATE TABLE}
+     *         transaction do, so that there is nothing to check the hash against.
+     */
+    public boolean isHashOnly() {
+        return metadata == null && data == null;
+    }
+
+    /**
+     * Compute the hash of the revision's metadata and data and compare it with the revision's hash. A deleted
+     * revision has no data and is checked against its metadata alone, see
+     * {@link QldbRevision#computeHash(IonStruct, IonStruct)}.
+     *
+     * @return {@code true} if the computed hash matches or the revision is hash-only, {@code false} if it does
+     *         not match or if the revision is missing its hash, or has data but no metadata.
+     */
+    public boolean isValid() {
+        if (isHashOnly()) {
+            return true;
+        }
+        if (metadata == null || hash == null) {
+            return false;
+        }
+        return Arrays.equals(QldbRevision.computeHash(metadata, data), hash);
+    }
+}
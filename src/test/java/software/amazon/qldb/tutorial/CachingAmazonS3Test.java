@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+public class CachingAmazonS3Test {
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "exports/2019/11/01/JdxjkR9bSYB5jMHWcI464T.1-2.ion";
+    private static final byte[] CONTENT =
+            "{blockAddress:{strandId:\"A\",sequenceNo:1}}".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Counts the requests that reach the local directory standing in for S3.
+     */
+    private static final class CountingAmazonS3 extends AbstractAmazonS3 {
+        private final AmazonS3 delegate;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        CountingAmazonS3(final AmazonS3 delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public S3Object getObject(final String bucketName, final String key) {
+            requests.incrementAndGet();
+            return delegate.getObject(bucketName, key);
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(final String bucketName, final String key) {
+            requests.incrementAndGet();
+            return delegate.getObjectMetadata(bucketName, key);
+        }
+
+        @Override
+        public boolean doesObjectExist(final String bucketName, final String key) {
+            requests.incrementAndGet();
+            return delegate.doesObjectExist(bucketName, key);
+        }
+    }
+
+    private CountingAmazonS3 localS3() throws IOException {
+        Path root = folder.newFolder("s3").toPath();
+        Path file = root.resolve(BUCKET).resolve(KEY);
+        Files.createDirectories(file.getParent());
+        Files.write(file, CONTENT);
+        return new CountingAmazonS3(new LocalDirectoryAmazonS3(root));
+    }
+
+    private static byte[] readAll(final S3Object s3Object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = s3Object.getObjectContent()) {
+            byte[] buffer = new byte[64];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void cachedObjectIsServedWithoutAnyRequest() throws IOException {
+        CountingAmazonS3 s3 = localS3();
+        ExportFileCache cache = new ExportFileCache(folder.newFolder("cache").toPath(), 1 << 20);
+        CachingAmazonS3 caching = new CachingAmazonS3(s3, cache);
+
+        assertArrayEquals(CONTENT, readAll(caching.getObject(BUCKET, KEY)));
+        assertEquals(1, s3.requests.get());
+
+        assertArrayEquals(CONTENT, readAll(caching.getObject(BUCKET, KEY)));
+        assertEquals(CONTENT.length, caching.getObjectMetadata(BUCKET, KEY).getContentLength());
+        assertTrue(caching.doesObjectExist(BUCKET, KEY));
+        assertEquals(1, s3.requests.get());
+    }
+
+    @Test
+    public void cacheIsReusedAcrossRuns() throws IOException {
+        CountingAmazonS3 s3 = localS3();
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        new CachingAmazonS3(s3, new ExportFileCache(cacheDirectory, 1 << 20)).getObject(BUCKET, KEY).close();
+
+        CachingAmazonS3 nextRun = new CachingAmazonS3(s3, new ExportFileCache(cacheDirectory, 1 << 20));
+
+        assertArrayEquals(CONTENT, readAll(nextRun.getObject(BUCKET, KEY)));
+        assertEquals(1, s3.requests.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedObjectsAreEvicted() throws IOException {
+        ExportFileCache cache = new ExportFileCache(folder.newFolder("cache").toPath(), 2 * CONTENT.length);
+        for (String key : new String[] {"a", "b", "c"}) {
+            cache.put(BUCKET, key, new ByteArrayInputStream(CONTENT));
+        }
+
+        assertEquals(2 * CONTENT.length, cache.getTotalBytes());
+        assertNull(cache.get(BUCKET, "a"));
+        assertEquals(CONTENT.length, cache.get(BUCKET, "c").remaining());
+    }
+}
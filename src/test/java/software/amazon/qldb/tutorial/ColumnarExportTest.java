@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+public class ColumnarExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A block with one revision per data value, all of documents of the given table. A {@code null} data value
+     * leaves the revision without data.
+     */
+    private static JournalBlock block(final long sequenceNo, final String tableName, final Date txTime,
+                                      final String... data) {
+        BlockAddress address = new BlockAddress(JournalFixtures.STRAND_ID, sequenceNo);
+        List<QldbRevision> revisions = new ArrayList<>();
+        for (int i = 0; i < data.length; i++) {
+            revisions.add(JournalFixtures.revision(address, "doc" + sequenceNo + "_" + i, i, txTime, "tx",
+                    JournalFixtures.hash(0), data[i]));
+        }
+        return JournalFixtures.block(address, "tx", new Date(1000 * sequenceNo), tableName, revisions);
+    }
+
+    private static List<String> scanStrings(final ColumnarExportReader reader, final String column,
+                                            final ColumnarExportReader.Filter filter) {
+        List<String> values = new ArrayList<>();
+        reader.scan(Collections.singletonList(column), filter, row -> values.add(row.getString(column)));
+        return values;
+    }
+
+    @Test
+    public void metadataColumnsRoundTripAndFiltersSkipRowGroups() {
+        Path directory = folder.getRoot().toPath();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(directory, 100)) {
+            for (int sequenceNo = 0; sequenceNo < 1000; sequenceNo++) {
+                writer.write(block(sequenceNo, sequenceNo % 2 == 0 ? "Cars" : "People",
+                        sequenceNo % 10 == 0 ? null : new Date(sequenceNo), null, null));
+            }
+        }
+
+        try (ColumnarExportReader reader = ColumnarExportReader.open(ColumnarExportWriter.getFile(directory, "Cars"))) {
+            assertEquals(1000, reader.getRowCount());
+            assertEquals(10, reader.getRowGroupCount());
+
+            List<Long> txTimes = new ArrayList<>();
+            long nullTxTimes = reader.scan(Arrays.asList(ColumnarExportWriter.TX_TIME), ColumnarExportReader.Filter.ALL,
+                    row -> {
+                        if (!row.isNull(ColumnarExportWriter.TX_TIME)) {
+                            txTimes.add(row.getLong(ColumnarExportWriter.TX_TIME));
+                        }
+                    });
+            assertEquals(1000, nullTxTimes);
+            assertEquals(800, txTimes.size());
+
+            long matched = reader.scan(Arrays.asList(ColumnarExportWriter.DOCUMENT_ID),
+                    ColumnarExportReader.Filter.between(ColumnarExportWriter.SEQUENCE_NO, 100, 149),
+                    row -> assertTrue(row.getString(ColumnarExportWriter.DOCUMENT_ID).startsWith("doc1")));
+            assertEquals(50, matched);
+            assertEquals(9, reader.getRowGroupsSkipped());
+        }
+    }
+
+    @Test
+    public void revisionsOfAnInvalidTableNameAreSkipped() {
+        Path directory = folder.getRoot().toPath();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(directory)) {
+            writer.write(block(0, "../Cars", new Date(0), null, null));
+            writer.write(block(1, "Cars", new Date(0), (String) null));
+            assertEquals(2, writer.getSkippedRevisionCount());
+        }
+
+        assertTrue(Files.exists(ColumnarExportWriter.getFile(directory, "Cars")));
+        assertFalse(Files.exists(directory.getParent().resolve("Cars" + ColumnarFormat.FILE_SUFFIX)));
+    }
+
+    @Test
+    public void dataColumnsAreTypedByTheirIonValues() {
+        Path directory = folder.getRoot().toPath();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(directory)) {
+            writer.write(block(0, "Cars", new Date(0),
+                    "{Year:2011,Price:25000.50,Sold:2019-11-08T20:01:00.000Z,Model:\"Model S\"}",
+                    "{Year:9,Price:1e3,Sold:2019-11-08T20:02:00.000Z,Model:\"Model 3\"}"));
+        }
+
+        try (ColumnarExportReader reader = ColumnarExportReader.open(ColumnarExportWriter.getFile(directory, "Cars"))) {
+            List<String> columns = Arrays.asList("data.Year", "data.Price", "data.Sold", "data.Model");
+            reader.scan(columns, ColumnarExportReader.Filter.ALL, row -> {
+                assertEquals(Long.class, row.getType("data.Year"));
+                assertEquals(Double.class, row.getType("data.Price"));
+                assertEquals(Long.class, row.getType("data.Sold"));
+                assertEquals(String.class, row.getType("data.Model"));
+            });
+            // Numbers compare numerically, 9 is below 2011 even though "9" sorts after "2011".
+            assertEquals(Arrays.asList("Model 3"),
+                    scanStrings(reader, "data.Model", ColumnarExportReader.Filter.between("data.Year", 0, 100)));
+            assertEquals(Arrays.asList("Model S"),
+                    scanStrings(reader, "data.Model", ColumnarExportReader.Filter.between("data.Price", 2e4, 3e4)));
+            assertEquals(Arrays.asList("Model 3"), scanStrings(reader, "data.Model",
+                    ColumnarExportReader.Filter.equalTo("data.Sold", 1573243320000L)));
+        }
+    }
+
+    @Test
+    public void dataColumnMixingTypesFallsBackToText() {
+        Path directory = folder.getRoot().toPath();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(directory, 2)) {
+            writer.write(block(0, "Cars", new Date(0), "{Miles:1}", "{Miles:2}"));
+            writer.write(block(1, "Cars", new Date(0), "{Miles:\"unknown\"}", "{Miles:4}"));
+            writer.write(block(2, "Cars", new Date(0), "{Miles:5}", "{}"));
+        }
+
+        try (ColumnarExportReader reader = ColumnarExportReader.open(ColumnarExportWriter.getFile(directory, "Cars"))) {
+            List<Class<?>> types = new ArrayList<>();
+            reader.scan(Arrays.asList("data.Miles"), ColumnarExportReader.Filter.ALL,
+                    row -> types.add(row.getType("data.Miles")));
+            assertEquals(Arrays.asList(Long.class, Long.class, String.class, String.class, String.class,
+                    String.class), types);
+            assertEquals(Arrays.asList("1", "2", "unknown", "4", "5", null),
+                    scanStrings(reader, "data.Miles", ColumnarExportReader.Filter.ALL));
+            assertEquals(Arrays.asList("2"),
+                    scanStrings(reader, "data.Miles", ColumnarExportReader.Filter.between("data.Miles", 2, 10)));
+        }
+    }
+
+    @Test
+    public void rowOfAMissingColumnReadsAsNull() {
+        Path directory = folder.getRoot().toPath();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(directory)) {
+            writer.write(block(0, "Cars", new Date(0), (String) null));
+        }
+
+        try (ColumnarExportReader reader = ColumnarExportReader.open(ColumnarExportWriter.getFile(directory, "Cars"))) {
+            reader.scan(Arrays.asList("data.Missing"), ColumnarExportReader.Filter.ALL, row -> {
+                assertNull(row.getString("data.Missing"));
+                assertNull(row.getType("data.Missing"));
+            });
+        }
+    }
+}
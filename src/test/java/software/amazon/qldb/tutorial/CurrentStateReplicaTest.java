@@ -0,0 +1,268 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static software.amazon.qldb.tutorial.JournalFixtures.STRAND_ID;
+import static software.amazon.qldb.tutorial.JournalFixtures.SYSTEM;
+import static software.amazon.qldb.tutorial.JournalFixtures.hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+public class CurrentStateReplicaTest {
+    private static final String LOG_FILE_NAME = "revisions.log";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A block of the Cars table holding one revision per document id, each of the given version. A {@code null}
+     * data value makes the revisions deletions.
+     */
+    private static JournalBlock block(final long sequenceNo, final long version, final String data,
+                                      final String... documentIds) {
+        BlockAddress address = new BlockAddress(STRAND_ID, sequenceNo);
+        List<QldbRevision> revisions = new ArrayList<>();
+        for (String documentId : documentIds) {
+            revisions.add(JournalFixtures.revision(address, documentId, version, new Date(1000 * version),
+                    "tx" + version, hash((int) version), data));
+        }
+        return JournalFixtures.block(address, "tx" + sequenceNo, new Date(0), Constants.CARS_TABLE_NAME, revisions);
+    }
+
+    @Test
+    public void deletionKeepsItsVersionSoOlderRevisionsAreIgnored() {
+        Path directory = folder.getRoot().toPath();
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertTrue(replica.apply(block(1, 1, null, "doc1", "doc2")));
+            // A later export replaying older revisions under new block addresses.
+            assertTrue(replica.apply(block(2, 0, null, "doc1")));
+            assertTrue(replica.apply(block(3, 1, null, "doc2")));
+            assertFalse(replica.apply(block(1, 1, null, "doc1", "doc2")));
+            assertEquals(0, replica.size());
+            assertNull(replica.get("doc1"));
+            assertNull(replica.getTableName("doc1"));
+            assertEquals(0, replica.getDeadRecordCount());
+        }
+    }
+
+    @Test
+    public void tombstonesSurviveCompactionAndReopen() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Path logFile = directory.resolve(LOG_FILE_NAME);
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(1, 1, null, "doc1", "doc2"));
+            replica.apply(block(2, 2, null, "doc1"));
+            assertEquals(1, replica.getDeadRecordCount());
+            long before = Files.size(logFile);
+            replica.compact();
+            assertEquals(0, replica.getDeadRecordCount());
+            assertTrue(Files.size(logFile) < before);
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertEquals(0, replica.getDeadRecordCount());
+            assertTrue(replica.getCheckpoint().isProcessed(new BlockAddress(STRAND_ID, 2)));
+            replica.apply(block(3, 1, null, "doc1"));
+            replica.apply(block(4, 0, null, "doc2"));
+            assertEquals(0, replica.size());
+            assertEquals(0, replica.getDeadRecordCount());
+        }
+    }
+
+    @Test
+    public void recoveryTruncatesATornRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Path logFile = directory.resolve(LOG_FILE_NAME);
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(1, 1, null, "doc1"));
+            replica.apply(block(2, 2, null, "doc1"));
+        }
+        long committed = Files.size(logFile);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // The length prefix of a record whose payload never made it to disk.
+            channel.write(ByteBuffer.allocate(6).putInt(0, 100));
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertEquals(committed, Files.size(logFile));
+            assertEquals(1, replica.getDeadRecordCount());
+            replica.apply(block(3, 1, null, "doc1"));
+            assertEquals(1, replica.getDeadRecordCount());
+        }
+    }
+
+    @Test
+    public void recoveryTruncatesACorruptRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Path logFile = directory.resolve(LOG_FILE_NAME);
+        long first;
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(1, 1, null, "doc1"));
+            replica.commit();
+            first = Files.size(logFile);
+            replica.apply(block(2, 1, null, "doc2"));
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), Files.size(logFile) - 1);
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertEquals(first, Files.size(logFile));
+        }
+    }
+
+    @Test
+    public void revisionsRoundTripThroughTheLog() {
+        Path directory = folder.getRoot().toPath();
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(1, 0, "{VIN:\"1N4AL11D75C109151\",Year:2011}", "doc1", "doc2"));
+            replica.apply(block(2, 1, "{VIN:\"1N4AL11D75C109151\",Year:2012}", "doc1"));
+            replica.apply(block(3, 1, null, "doc2"));
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertEquals(1, replica.size());
+            QldbRevision revision = replica.get("doc1");
+            assertEquals(new BlockAddress(STRAND_ID, 2), revision.getBlockAddress());
+            assertEquals("doc1", revision.getMetadata().getId());
+            assertEquals(1, revision.getMetadata().getVersion());
+            assertEquals(new Date(1000), revision.getMetadata().getTxTime());
+            assertEquals("tx1", revision.getMetadata().getTxId());
+            assertArrayEquals(hash(1), revision.getHash());
+            assertEquals(SYSTEM.singleValue("{VIN:\"1N4AL11D75C109151\",Year:2012}"), revision.getData());
+            assertEquals(Constants.CARS_TABLE_NAME, replica.getTableName("doc1"));
+            assertNull(replica.get("doc2"));
+        }
+    }
+
+    /**
+     * A block whose revisions, one put and one deletion, have neither a transaction time, nor a transaction id,
+     * nor an address of their own.
+     */
+    private static JournalBlock blockWithoutTransactionFields(final long sequenceNo, final long version) {
+        return JournalFixtures.block(new BlockAddress(STRAND_ID, sequenceNo), "tx", new Date(0),
+                Constants.CARS_TABLE_NAME, Arrays.asList(
+                        JournalFixtures.revision(null, "doc1", version, null, null, hash(0), "{Year:2011}"),
+                        JournalFixtures.revision(null, "doc2", version, null, null, hash(0), null)));
+    }
+
+    @Test
+    public void revisionsWithoutTransactionFieldsRoundTrip() {
+        Path directory = folder.getRoot().toPath();
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(blockWithoutTransactionFields(1, 1));
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            QldbRevision revision = replica.get("doc1");
+            assertNull(revision.getMetadata().getTxTime());
+            assertNull(revision.getMetadata().getTxId());
+            assertEquals(new BlockAddress(STRAND_ID, 1), revision.getBlockAddress());
+            assertEquals(SYSTEM.singleValue("{Year:2011}"), revision.getData());
+            assertNull(replica.get("doc2"));
+            // The deletion kept its version.
+            replica.apply(block(2, 0, null, "doc2"));
+            assertEquals(0, replica.getDeadRecordCount());
+        }
+    }
+
+    @Test
+    public void deletionWithoutTransactionFieldsIsLoggedAndRecovered() {
+        Path directory = folder.getRoot().toPath();
+        JournalBlock deletion = new JournalBlock(new BlockAddress(STRAND_ID, 1), "tx", new Date(0), null, null, null,
+                null, null, Collections.singletonList(new QldbRevision(null,
+                        new QldbRevision.Metadata("doc1", 1, null, null), null, null)));
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            assertTrue(replica.apply(deletion));
+        }
+
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(2, 0, null, "doc1"));
+            assertEquals(0, replica.size());
+            assertEquals(0, replica.getDeadRecordCount());
+        }
+    }
+
+    @Test
+    public void compactionKeepsTheLatestRevisions() {
+        Path directory = folder.getRoot().toPath();
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            for (int version = 0; version < 10; version++) {
+                replica.apply(block(version, version, "{Year:" + version + "}", "doc1", "doc2"));
+            }
+            replica.apply(block(10, 10, null, "doc2"));
+            replica.compact();
+            assertEquals(SYSTEM.singleValue("{Year:9}"), replica.get("doc1").getData());
+            List<String> live = new ArrayList<>();
+            replica.forEach(Constants.CARS_TABLE_NAME, (documentId, revision) -> live.add(documentId));
+            assertEquals(Collections.singletonList("doc1"), live);
+        }
+    }
+
+    @Test
+    public void readsRunDuringCompaction() throws InterruptedException {
+        Path directory = folder.getRoot().toPath();
+        try (CurrentStateReplica replica = CurrentStateReplica.open(directory)) {
+            replica.apply(block(0, 0, "{Year:2011}", "doc1"));
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        assertEquals(SYSTEM.singleValue("{Year:2011}"), replica.get("doc1").getData());
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            reader.start();
+            for (int i = 0; i < 100; i++) {
+                replica.compact();
+            }
+            done.set(true);
+            reader.join();
+            assertNull(failure.get());
+        }
+    }
+}
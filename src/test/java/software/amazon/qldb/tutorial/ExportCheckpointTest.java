@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+
+public class ExportCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JournalBlock block(final String strandId, final long sequenceNo) {
+        return JournalFixtures.block(new BlockAddress(strandId, sequenceNo), null, null, Constants.CARS_TABLE_NAME,
+                Collections.emptyList());
+    }
+
+    @Test
+    public void recordKeepsTheHighestBlockOfEachStrand() {
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.record(new BlockAddress("B", 4));
+        checkpoint.record(new BlockAddress("A", 7));
+        checkpoint.record(new BlockAddress("A", 3));
+
+        assertEquals(Arrays.asList(new BlockAddress("A", 7), new BlockAddress("B", 4)),
+                checkpoint.getLastProcessed());
+        assertTrue(checkpoint.isProcessed(new BlockAddress("A", 7)));
+        assertFalse(checkpoint.isProcessed(new BlockAddress("A", 8)));
+        assertFalse(checkpoint.isProcessed(new BlockAddress("C", 0)));
+        assertTrue(checkpoint.isDataFileProcessed("B", 4));
+        assertFalse(checkpoint.isDataFileProcessed("B", 5));
+    }
+
+    @Test
+    public void loadOfMissingFileReturnsAnEmptyCheckpoint() {
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(folder.getRoot().toPath().resolve("missing.ion"));
+        assertTrue(checkpoint.getLastProcessed().isEmpty());
+    }
+
+    @Test
+    public void savedCheckpointLoadsBack() {
+        Path file = folder.getRoot().toPath().resolve("export.ion");
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.record(new BlockAddress("A", 12));
+        checkpoint.record(new BlockAddress("B", 0));
+
+        checkpoint.save(file);
+
+        assertEquals(checkpoint.getLastProcessed(), ExportCheckpoint.load(file).getLastProcessed());
+    }
+
+    @Test
+    public void recordingSavesEveryIntervalAndLeavesNoTemporaryFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("export.ion");
+        List<BlockAddress> processed = new ArrayList<>();
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        try (ExportCheckpoint.Recording recording =
+                     checkpoint.recording(block -> processed.add(block.getBlockAddress()), file, 3)) {
+            for (int i = 0; i < 7; i++) {
+                recording.accept(block("A", i));
+            }
+
+            assertEquals(7, processed.size());
+            assertEquals(Arrays.asList(new BlockAddress("A", 5)), ExportCheckpoint.load(file).getLastProcessed());
+        }
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void closingTheRecordingSavesTheFinalPartialInterval() {
+        Path file = folder.getRoot().toPath().resolve("export.ion");
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        ExportCheckpoint.Recording recording = checkpoint.recording(block -> { }, file, 3);
+        for (int i = 0; i < 7; i++) {
+            recording.accept(block("A", i));
+        }
+
+        recording.close();
+
+        assertEquals(Arrays.asList(new BlockAddress("A", 6)), ExportCheckpoint.load(file).getLastProcessed());
+    }
+
+    @Test
+    public void flushWithNothingUnsavedDoesNotWrite() {
+        Path file = folder.getRoot().toPath().resolve("export.ion");
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        ExportCheckpoint.Recording recording = checkpoint.recording(block -> { }, file, 3);
+
+        recording.flush();
+        assertFalse(Files.exists(file));
+
+        for (int i = 0; i < 3; i++) {
+            recording.accept(block("A", i));
+        }
+        checkpoint.record(new BlockAddress("A", 9));
+        recording.close();
+
+        assertEquals(Arrays.asList(new BlockAddress("A", 2)), ExportCheckpoint.load(file).getLastProcessed());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class ExportDataFilePrefetcherTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static byte[] content(final int index, final int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (index + i);
+        }
+        return content;
+    }
+
+    private static List<String> putDataFiles(final InMemoryExportSource source, final int count, final int length) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String key = "exports/JdxjkR9bSYB5jMHWcI464T." + (2 * i) + "-" + (2 * i + 1) + ".ion";
+            source.put(key, content(i, length));
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        byte[] content = new byte[in.available()];
+        int offset = 0;
+        while (offset < content.length) {
+            offset += in.read(content, offset, content.length - offset);
+        }
+        return content;
+    }
+
+    private static void awaitCondition(final String description, final BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting until " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void filesAreHandedOutInOrderWhenDownloadsFinishOutOfOrder() throws Exception {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = putDataFiles(source, 8, 100);
+        // Hold back the first two downloads, so that the files behind them finish first.
+        CountDownLatch first = source.gate(keys.get(0));
+        CountDownLatch second = source.gate(keys.get(1));
+
+        try (ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(source, keys, 4, Long.MAX_VALUE)) {
+            awaitCondition("the files after the held back ones are downloaded",
+                    () -> source.getOpenedCount() == keys.size() - 2);
+            second.countDown();
+            awaitCondition("the second file is downloaded", () -> source.getOpenedCount() == keys.size() - 1);
+            first.countDown();
+
+            for (int i = 0; i < keys.size(); i++) {
+                try (InputStream content = prefetcher.take(keys.get(i))) {
+                    assertArrayEquals(content(i, 100), readFully(content));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void takingOutOfOrderIsRejected() {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = putDataFiles(source, 2, 10);
+        try (ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(source, keys, 2, Long.MAX_VALUE)) {
+            prefetcher.take(keys.get(1));
+        }
+    }
+
+    @Test
+    public void downloadsWaitForTheBudgetOnceItIsExhausted() throws Exception {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = putDataFiles(source, 6, 100);
+
+        // Room for two files; the third waits until a taken file is closed.
+        try (ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(source, keys, 4, 250)) {
+            awaitCondition("two files are downloaded", () -> source.getOpenedCount() >= 2);
+            Thread.sleep(100);
+            assertEquals(2, source.getOpenedCount());
+
+            InputStream content = prefetcher.take(keys.get(0));
+            // Taking a file does not return its bytes, only closing it does.
+            Thread.sleep(100);
+            assertEquals(2, source.getOpenedCount());
+            content.close();
+            awaitCondition("a third file is downloaded", () -> source.getOpenedCount() >= 3);
+            Thread.sleep(100);
+            assertEquals(3, source.getOpenedCount());
+
+            for (int i = 1; i < keys.size(); i++) {
+                try (InputStream next = prefetcher.take(keys.get(i))) {
+                    assertArrayEquals(content(i, 100), readFully(next));
+                }
+            }
+            assertEquals(keys.size(), source.getOpenedCount());
+        }
+    }
+
+    @Test
+    public void fileLargerThanTheBudgetIsDownloadedOnItsOwn() throws Exception {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = putDataFiles(source, 3, 100);
+        source.put(keys.get(1), content(1, 1000));
+
+        try (ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(source, keys, 4, 250)) {
+            awaitCondition("the first file is downloaded", () -> source.getOpenedCount() >= 1);
+            Thread.sleep(100);
+            assertEquals(1, source.getOpenedCount());
+
+            prefetcher.take(keys.get(0)).close();
+            try (InputStream large = prefetcher.take(keys.get(1))) {
+                assertArrayEquals(content(1, 1000), readFully(large));
+                Thread.sleep(100);
+                assertEquals(2, source.getOpenedCount());
+            }
+            try (InputStream last = prefetcher.take(keys.get(2))) {
+                assertArrayEquals(content(2, 100), readFully(last));
+            }
+        }
+    }
+
+    @Test
+    public void downloadFailureIsReportedWhenTheFileIsTaken() throws Exception {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = putDataFiles(source, 3, 100);
+        source.fail(keys.get(1));
+
+        try (ExportDataFilePrefetcher prefetcher = new ExportDataFilePrefetcher(source, keys, 2, 250)) {
+            prefetcher.take(keys.get(0)).close();
+            try {
+                prefetcher.take(keys.get(1));
+                fail();
+            } catch (IllegalStateException expected) {
+                assertEquals("Failed to download data file " + keys.get(1), expected.getMessage());
+            }
+            // The failed download gave its reservation back, so the file behind it still fits.
+            try (InputStream last = prefetcher.take(keys.get(2))) {
+                assertArrayEquals(content(2, 100), readFully(last));
+            }
+            assertFalse(source.getOpenCount() > 0);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ExportDecompressionTest {
+    private static final byte[] CONTENT = "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:0}}\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] gzip(final byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A stream without mark support, that remembers whether it was closed.
+     */
+    private static final class UnmarkableInputStream extends FilterInputStream {
+        private boolean closed;
+
+        UnmarkableInputStream(final byte[] content) {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void gzipIsDetectedByItsMagicBytesWhateverTheName() throws IOException {
+        byte[] compressed = gzip(CONTENT);
+        try (InputStream in = ExportDecompression.decompress(new ByteArrayInputStream(compressed), "file.ion")) {
+            assertArrayEquals(CONTENT, readFully(in));
+        }
+        try (InputStream in = ExportDecompression.decompress(new UnmarkableInputStream(compressed), "file.ion.gz")) {
+            assertArrayEquals(CONTENT, readFully(in));
+        }
+    }
+
+    @Test
+    public void plainContentIsPassedThrough() throws IOException {
+        byte[] almostGzip = CONTENT.clone();
+        almostGzip[0] = 0x1F;
+        byte[][] contents = {CONTENT, almostGzip, {0x1F}, {(byte) 0x28, (byte) 0xB5, (byte) 0x2F}, {}};
+        for (byte[] content : contents) {
+            try (InputStream in = ExportDecompression.decompress(new ByteArrayInputStream(content), "file.ion")) {
+                assertArrayEquals(content, readFully(in));
+            }
+            try (InputStream in = ExportDecompression.decompress(new UnmarkableInputStream(content), "file.ion")) {
+                assertArrayEquals(content, readFully(in));
+            }
+        }
+    }
+
+    @Test
+    public void zstdIsRejectedAndTheContentClosed() {
+        byte[] zstd = {(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD, 0x00, 0x58, 0x01, 0x00};
+        UnmarkableInputStream content = new UnmarkableInputStream(zstd);
+        try {
+            ExportDecompression.decompress(content, "file.ion.zst");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("file.ion.zst is compressed with zstd"));
+        }
+        assertTrue(content.closed);
+    }
+
+    @Test
+    public void compressedSuffixesAreStripped() {
+        assertEquals("file.ion", ExportDecompression.stripCompressedSuffix("file.ion.gz"));
+        assertEquals("file.ion", ExportDecompression.stripCompressedSuffix("file.ion.zst"));
+        assertEquals("file.ion", ExportDecompression.stripCompressedSuffix("file.ion"));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static software.amazon.qldb.tutorial.JournalFixtures.STRAND_ID;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.amazonaws.services.qldb.model.DescribeJournalS3ExportResult;
+import com.amazonaws.services.qldb.model.JournalS3ExportDescription;
+import com.amazonaws.services.qldb.model.S3ExportConfiguration;
+
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.JournalBlockDecoder;
+
+public class ExportPipelineTest {
+    private static final String PREFIX = "exports/";
+    private static final String EXPORT_ID = "8Fz4bDS1ZfP3hH0yVQhEua";
+    private static final DescribeJournalS3ExportResult EXPORT = new DescribeJournalS3ExportResult()
+            .withExportDescription(new JournalS3ExportDescription()
+                    .withExportId(EXPORT_ID)
+                    .withS3ExportConfiguration(new S3ExportConfiguration().withBucket("bucket").withPrefix(PREFIX)));
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static byte[] dataFile(final long firstSequenceNo, final int blockCount) {
+        StringBuilder content = new StringBuilder();
+        for (long sequenceNo = firstSequenceNo; sequenceNo < firstSequenceNo + blockCount; sequenceNo++) {
+            content.append("{blockAddress:{strandId:\"").append(STRAND_ID).append("\",sequenceNo:").append(sequenceNo)
+                    .append("},transactionId:\"Tx").append(sequenceNo).append("\",revisions:[]}\n");
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the manifests and data files of an export with a single strand, whose data files hold the given
+     * numbers of consecutive blocks.
+     *
+     * @return the keys of the data files, in manifest order.
+     */
+    private static List<String> writeExport(final InMemoryExportSource source, final int... blocksPerFile) {
+        List<String> keys = new ArrayList<>();
+        long sequenceNo = 0;
+        for (int blockCount : blocksPerFile) {
+            String key = PREFIX + EXPORT_ID + "/" + STRAND_ID + "." + sequenceNo + "-" + (sequenceNo + blockCount - 1)
+                    + ".ion";
+            source.put(key, dataFile(sequenceNo, blockCount));
+            keys.add(key);
+            sequenceNo += blockCount;
+        }
+        String manifest = keys.stream().map(key -> "\"" + key + "\"").collect(Collectors.joining(",", "{keys:[", "]}"));
+        source.put(PREFIX + EXPORT_ID + ".started.manifest", new byte[0]);
+        source.put(PREFIX + EXPORT_ID + ".completed.manifest", manifest.getBytes(StandardCharsets.UTF_8));
+        return keys;
+    }
+
+    private static List<Long> sequenceNumbers(final Stream<JournalBlock> blocks) {
+        return blocks.map(block -> block.getBlockAddress().getSequenceNo()).collect(Collectors.toList());
+    }
+
+    private static boolean pipelineThreadsAlive() {
+        return Thread.getAllStackTraces().keySet().stream().map(Thread::getName).anyMatch(name ->
+                name.startsWith("export-dispatch-") || name.startsWith("export-decode-")
+                        || name.startsWith("export-prefetch-"));
+    }
+
+    private static void awaitCondition(final String description, final BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting until " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void blocksComeOutInManifestOrderUnderParallelDecode() throws InterruptedException {
+        InMemoryExportSource source = new InMemoryExportSource();
+        // Files of very different sizes, so that small files behind a large one finish decoding first.
+        List<String> keys = writeExport(source, 300, 1, 1, 200, 1, 1, 1, 100, 1, 1, 1, 1);
+        long blockCount = 610;
+        // The first data file is downloaded last.
+        source.gate(keys.get(0));
+        ExportPipeline pipeline = new ExportPipeline(source, new JournalBlockDecoder(), 4, Long.MAX_VALUE, 4, 8);
+
+        try (Stream<JournalBlock> blocks = pipeline.stream(EXPORT)) {
+            // The completed manifest, then the three data files after the held back one.
+            awaitCondition("the files after the first one are downloaded", () -> source.getOpenedCount() >= 4);
+            source.gate(keys.get(0)).countDown();
+
+            List<Long> sequenceNumbers = sequenceNumbers(blocks);
+            assertEquals(blockCount, sequenceNumbers.size());
+            for (int i = 0; i < sequenceNumbers.size(); i++) {
+                assertEquals(i, (long) sequenceNumbers.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void downloadFailureReachesTheConsumerAfterTheBlocksBeforeIt() {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = writeExport(source, 2, 2, 2, 2);
+        source.fail(keys.get(2));
+        ExportPipeline pipeline = new ExportPipeline(source, new JournalBlockDecoder(), 4, Long.MAX_VALUE, 2, 4);
+
+        List<Long> consumed = new ArrayList<>();
+        try (Stream<JournalBlock> blocks = pipeline.stream(EXPORT)) {
+            blocks.forEach(block -> consumed.add(block.getBlockAddress().getSequenceNo()));
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("Failed to download data file " + keys.get(2), expected.getMessage());
+        }
+        assertEquals(4, consumed.size());
+    }
+
+    @Test
+    public void decodeFailureReachesTheConsumer() {
+        InMemoryExportSource source = new InMemoryExportSource();
+        List<String> keys = writeExport(source, 2, 2, 2);
+        // The second data file holds other blocks than its key names.
+        source.put(keys.get(1), dataFile(3, 2));
+        ExportPipeline pipeline = new ExportPipeline(source, new JournalBlockDecoder(), 4, Long.MAX_VALUE, 2, 4);
+
+        List<Long> consumed = new ArrayList<>();
+        try (Stream<JournalBlock> blocks = pipeline.stream(EXPORT)) {
+            blocks.forEach(block -> consumed.add(block.getBlockAddress().getSequenceNo()));
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("Expected first block SequenceNo to be 2", expected.getMessage());
+        }
+        assertEquals(2, consumed.size());
+    }
+
+    @Test
+    public void closeMidStreamStopsEveryStageAndReleasesThePrefetchBudget() throws InterruptedException {
+        InMemoryExportSource source = new InMemoryExportSource();
+        int[] blocksPerFile = new int[50];
+        Arrays.fill(blocksPerFile, 2);
+        List<String> keys = writeExport(source, blocksPerFile);
+        // A budget of a single data file, so the downloads behind it wait for the consumer.
+        long budget = source.getSize(keys.get(0));
+        ExportPipeline pipeline = new ExportPipeline(source, new JournalBlockDecoder(), 4, budget, 2, 1);
+
+        Stream<JournalBlock> blocks = pipeline.stream(EXPORT);
+        Iterator<JournalBlock> iterator = blocks.iterator();
+        assertEquals(0, iterator.next().getBlockAddress().getSequenceNo());
+        blocks.close();
+
+        awaitCondition("the pipeline threads are stopped", () -> !pipelineThreadsAlive());
+        int opened = source.getOpenedCount();
+        assertTrue(opened < keys.size());
+        assertEquals(0, source.getOpenCount());
+        Thread.sleep(50);
+        assertEquals(opened, source.getOpenedCount());
+        assertFalse(pipelineThreadsAlive());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * An {@link ExportSource} over objects held in memory, which can hold back or fail the download of chosen
+ * objects and counts the streams it opened and that are still open.
+ */
+final class InMemoryExportSource implements ExportSource {
+    private final Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger openedCount = new AtomicInteger();
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    void put(final String key, final byte[] content) {
+        objects.put(key, content);
+    }
+
+    /**
+     * Hold back opening the object until the returned latch is counted down.
+     */
+    CountDownLatch gate(final String key) {
+        return gates.computeIfAbsent(key, k -> new CountDownLatch(1));
+    }
+
+    /**
+     * Fail every attempt to open the object.
+     */
+    void fail(final String key) {
+        failing.add(key);
+    }
+
+    int getOpenedCount() {
+        return openedCount.get();
+    }
+
+    int getOpenCount() {
+        return openCount.get();
+    }
+
+    @Override
+    public List<String> listKeys(final String prefix) {
+        return objects.keySet().stream().filter(key -> key.startsWith(prefix))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public boolean exists(final String key) {
+        return objects.containsKey(key);
+    }
+
+    @Override
+    public long getSize(final String key) {
+        byte[] content = objects.get(key);
+        if (content == null) {
+            throw new IllegalArgumentException("No object " + key);
+        }
+        return content.length;
+    }
+
+    @Override
+    public InputStream open(final String key) {
+        CountDownLatch gate = gates.get(key);
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while opening " + key, e);
+            }
+        }
+        if (failing.contains(key)) {
+            throw new UncheckedIOException(new IOException("Could not open " + key));
+        }
+        openedCount.incrementAndGet();
+        openCount.incrementAndGet();
+        return new FilterInputStream(new ByteArrayInputStream(objects.get(key))) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    openCount.decrementAndGet();
+                }
+                super.close();
+            }
+        };
+    }
+}
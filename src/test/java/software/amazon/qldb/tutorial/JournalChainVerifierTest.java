@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static software.amazon.qldb.tutorial.JournalFixtures.STRAND_ID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+
+public class JournalChainVerifierTest {
+    private static final int CHAIN_LENGTH = 100;
+    private static final int TAMPERED = 70;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] randomHash(final Random random) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private static JournalBlock block(final long sequenceNo, final byte[] blockHash, final byte[] entriesHash,
+                                      final byte[] previousBlockHash, final byte[][] entriesHashList) {
+        BlockAddress address = new BlockAddress(STRAND_ID, sequenceNo);
+        return new JournalBlock(address, "tx" + sequenceNo, new Date(sequenceNo), blockHash, entriesHash,
+                previousBlockHash, entriesHashList, null,
+                Collections.singletonList(new QldbRevision(address, null, entriesHashList[0], null)));
+    }
+
+    /**
+     * A block whose block hash is computed from its entries and the given previous block hash.
+     */
+    private static JournalBlock block(final long sequenceNo, final byte[] previousBlockHash,
+                                      final byte[][] entriesHashList) {
+        byte[] entriesHash = JournalChainVerifier.computeEntriesHash(entriesHashList);
+        byte[] blockHash = Verifier.joinHashesPairwise(entriesHash,
+                previousBlockHash == null ? new byte[0] : previousBlockHash);
+        return block(sequenceNo, blockHash, entriesHash, previousBlockHash, entriesHashList);
+    }
+
+    private static List<JournalBlock> chain(final Random random) {
+        List<JournalBlock> blocks = new ArrayList<>(CHAIN_LENGTH);
+        byte[] previousBlockHash = null;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            byte[][] entriesHashList = new byte[1 + i % 4][];
+            for (int j = 0; j < entriesHashList.length; j++) {
+                entriesHashList[j] = randomHash(random);
+            }
+            JournalBlock block = block(i, previousBlockHash, entriesHashList);
+            blocks.add(block);
+            previousBlockHash = block.getBlockHash();
+        }
+        return blocks;
+    }
+
+    private void assertRejected(final List<JournalBlock> blocks, final String reason) {
+        try {
+            new JournalChainVerifier(executor, 2).verify(blocks.stream());
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith(reason));
+        }
+    }
+
+    @Test
+    public void validChainIsVerified() {
+        List<JournalBlock> blocks = chain(new Random(1));
+        JournalChainVerifier verifier = new JournalChainVerifier(executor, 2);
+
+        assertEquals(CHAIN_LENGTH, verifier.verify(blocks.stream()));
+        assertEquals(new BlockAddress(STRAND_ID, CHAIN_LENGTH - 1), verifier.getLastBlockAddress(STRAND_ID));
+        assertArrayEquals(blocks.get(CHAIN_LENGTH - 1).getBlockHash(), verifier.getLastBlockHash(STRAND_ID));
+    }
+
+    @Test
+    public void entriesHashMismatchIsRejected() {
+        Random random = new Random(2);
+        List<JournalBlock> blocks = chain(random);
+        JournalBlock block = blocks.get(TAMPERED);
+        // The block hash still matches the entries; only the recorded entries hash is wrong.
+        blocks.set(TAMPERED, block(TAMPERED, block.getBlockHash(), randomHash(random), block.getPreviousBlockHash(),
+                block.getEntriesHashList()));
+
+        assertRejected(blocks, "Entries hash does not match");
+    }
+
+    @Test
+    public void blockHashMismatchIsRejected() {
+        Random random = new Random(3);
+        List<JournalBlock> blocks = chain(random);
+        int last = CHAIN_LENGTH - 1;
+        JournalBlock block = blocks.get(last);
+        // The last block, so that no later block links to the wrong hash first.
+        blocks.set(last, block(last, randomHash(random), block.getEntriesHash(), block.getPreviousBlockHash(),
+                block.getEntriesHashList()));
+
+        assertRejected(blocks, "Block hash does not match");
+    }
+
+    @Test
+    public void brokenPreviousBlockHashLinkIsRejected() {
+        Random random = new Random(4);
+        List<JournalBlock> blocks = chain(random);
+        // The block is consistent with its own hashes, but links to a block that is not its predecessor.
+        blocks.set(TAMPERED, block(TAMPERED, randomHash(random), blocks.get(TAMPERED).getEntriesHashList()));
+
+        assertRejected(blocks, "Previous block hash of the block at");
+    }
+
+    @Test
+    public void outOfOrderSequenceNumbersAreRejected() {
+        List<JournalBlock> blocks = chain(new Random(5));
+        Collections.swap(blocks, TAMPERED, TAMPERED + 1);
+
+        assertRejected(blocks, "Block at " + new BlockAddress(STRAND_ID, TAMPERED + 1) + " does not follow");
+    }
+}
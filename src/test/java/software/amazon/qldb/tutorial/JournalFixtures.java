@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.system.IonSystemBuilder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.DocumentInfo;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+import software.amazon.qldb.tutorial.qldb.QldbRevision;
+import software.amazon.qldb.tutorial.qldb.TransactionInfo;
+
+/**
+ * Journal blocks and revisions shared by the tests of the code that consumes exports.
+ */
+public final class JournalFixtures {
+    public static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    public static final String STRAND_ID = "JdxjkR9bSYB5jMHWcI464T";
+
+    private JournalFixtures() { }
+
+    /**
+     * A hash of {@link Verifier#HASH_LENGTH} bytes, all equal to the seed.
+     */
+    public static byte[] hash(final int seed) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+
+    /**
+     * A revision of a document. A {@code null} data value makes the revision a deletion.
+     */
+    public static QldbRevision revision(final BlockAddress address, final String documentId, final long version,
+                                        final Date txTime, final String txId, final byte[] hash, final String data) {
+        return new QldbRevision(address, new QldbRevision.Metadata(documentId, version, txTime, txId), hash,
+                data != null ? (IonStruct) SYSTEM.singleValue(data) : null);
+    }
+
+    /**
+     * A block holding the given revisions, whose transaction info lists their documents as documents of the given
+     * table. The hashes of the block are left out.
+     */
+    public static JournalBlock block(final BlockAddress address, final String transactionId,
+                                     final Date blockTimestamp, final String tableName,
+                                     final List<QldbRevision> revisions) {
+        Map<String, DocumentInfo> documents = new LinkedHashMap<>();
+        for (QldbRevision revision : revisions) {
+            if (revision.getMetadata() != null) {
+                documents.put(revision.getMetadata().getId(),
+                        new DocumentInfo(tableName, "tableId", Collections.singletonList(0)));
+            }
+        }
+        return new JournalBlock(address, transactionId, blockTimestamp, null, null, null, null,
+                new TransactionInfo(null, documents), revisions);
+    }
+}
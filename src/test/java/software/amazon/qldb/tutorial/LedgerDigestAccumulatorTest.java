@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+
+public class LedgerDigestAccumulatorTest {
+    private static final String STRAND_ID = "JdxjkR9bSYB5jMHWcI464T";
+
+    private static byte[][] randomHashes(final int count, final long seed) {
+        Random random = new Random(seed);
+        byte[][] hashes = new byte[count][Verifier.HASH_LENGTH];
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * The reference digest: join neighbouring nodes level by level, carrying a node without a sibling up to the
+     * next level unchanged, until a single root is left.
+     */
+    private static byte[] levelByLevelRoot(final byte[][] leaves) {
+        List<byte[]> level = new ArrayList<>();
+        for (byte[] leaf : leaves) {
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(i + 1 < level.size() ? Verifier.joinHashesPairwise(level.get(i), level.get(i + 1))
+                        : level.get(i));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    private static byte[][] prefix(final byte[][] hashes, final int length) {
+        byte[][] result = new byte[length][];
+        System.arraycopy(hashes, 0, result, 0, length);
+        return result;
+    }
+
+    @Test
+    public void digestMatchesLevelByLevelTreeForEveryLedgerSize() {
+        byte[][] hashes = randomHashes(600, 1);
+        LedgerDigestAccumulator accumulator = new LedgerDigestAccumulator();
+        for (int i = 0; i < hashes.length; i++) {
+            accumulator.add(new BlockAddress(STRAND_ID, i), hashes[i]);
+            assertArrayEquals("digest of " + (i + 1) + " blocks",
+                    levelByLevelRoot(prefix(hashes, i + 1)), accumulator.getDigest());
+        }
+        assertEquals(600, accumulator.getBlockCount());
+    }
+
+    @Test
+    public void resumedAccumulatorMatchesUninterruptedOne() {
+        byte[][] hashes = randomHashes(300, 2);
+        LedgerDigestAccumulator uninterrupted = new LedgerDigestAccumulator();
+        LedgerDigestAccumulator resumed = new LedgerDigestAccumulator();
+        for (int i = 0; i < hashes.length; i++) {
+            uninterrupted.add(new BlockAddress(STRAND_ID, i), hashes[i]);
+            resumed.add(new BlockAddress(STRAND_ID, i), hashes[i]);
+            if (i % 37 == 0) {
+                resumed = new LedgerDigestAccumulator(resumed.getTipAddress(), resumed.getPeaks());
+            }
+            assertArrayEquals(uninterrupted.getDigest(), resumed.getDigest());
+        }
+        assertEquals(new BlockAddress(STRAND_ID, 299), resumed.getTipAddress());
+    }
+
+    @Test
+    public void emptyAccumulatorHasNoDigest() {
+        LedgerDigestAccumulator accumulator = new LedgerDigestAccumulator();
+        assertEquals(0, accumulator.getDigest().length);
+        assertNull(accumulator.getTipAddress());
+        assertEquals(0, accumulator.getPeaks().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsBlockOutOfSequence() {
+        LedgerDigestAccumulator accumulator = new LedgerDigestAccumulator();
+        accumulator.add(new BlockAddress(STRAND_ID, 1), randomHashes(1, 3)[0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsBlockOfAnotherStrand() {
+        byte[][] hashes = randomHashes(2, 4);
+        LedgerDigestAccumulator accumulator = new LedgerDigestAccumulator();
+        accumulator.add(new BlockAddress(STRAND_ID, 0), hashes[0]);
+        accumulator.add(new BlockAddress("other", 1), hashes[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPeaksNotMatchingTheTipAddress() {
+        new LedgerDigestAccumulator(new BlockAddress(STRAND_ID, 2), randomHashes(1, 5));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedSecondaryIndexTest {
+    private static final long SEED = 20191108L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertMatches(final Map<String, String> expected, final MappedSecondaryIndex index,
+                                      final int documentCount, final int valueCount) {
+        assertEquals(expected.size(), index.size());
+        Map<String, Set<String>> byValue = new HashMap<>();
+        expected.forEach((documentId, value) -> byValue.computeIfAbsent(value, v -> new HashSet<>()).add(documentId));
+        for (int i = 0; i < documentCount; i++) {
+            String documentId = "doc" + i;
+            assertEquals(documentId, expected.get(documentId), index.getValue(documentId));
+        }
+        for (int i = 0; i < valueCount; i++) {
+            String value = "value" + i;
+            Set<String> documentIds = byValue.getOrDefault(value, Collections.emptySet());
+            assertEquals(value, documentIds, index.getDocumentIds(value));
+            String documentId = index.getDocumentId(value);
+            assertTrue(value, documentIds.isEmpty() ? documentId == null : documentIds.contains(documentId));
+        }
+    }
+
+    @Test
+    public void randomChangesMatchAHashMapAcrossRebuildsAndReopens() {
+        Path file = folder.getRoot().toPath().resolve("Cars.Owner.idx");
+        Random random = new Random(SEED);
+        Map<String, String> expected = new HashMap<>();
+        int documentCount = 2000;
+        int valueCount = 300;
+        // Few buckets, so that the index is rebuilt and grows many times.
+        MappedSecondaryIndex index = MappedSecondaryIndex.open(file, 4);
+        try {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 2000; i++) {
+                    String documentId = "doc" + random.nextInt(documentCount);
+                    if (random.nextInt(10) == 0) {
+                        index.remove(documentId);
+                        expected.remove(documentId);
+                    } else {
+                        String value = "value" + random.nextInt(valueCount);
+                        index.put(documentId, value);
+                        expected.put(documentId, value);
+                    }
+                }
+                assertMatches(expected, index, documentCount, valueCount);
+                if (round % 4 == 3) {
+                    index.close();
+                    index = MappedSecondaryIndex.open(file);
+                    assertTrue(index.wasOpenedClean());
+                    assertMatches(expected, index, documentCount, valueCount);
+                }
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void indexRoundTripsThroughItsFile() {
+        Path file = folder.getRoot().toPath().resolve("Cars.VIN.idx");
+        try (MappedSecondaryIndex index = MappedSecondaryIndex.open(file)) {
+            index.put("doc1", "1N4AL11D75C109151");
+            index.put("doc2", "KM8SRDHF6EU074761");
+            index.put("doc3", "été");
+            index.remove("doc2");
+        }
+
+        try (MappedSecondaryIndex index = MappedSecondaryIndex.open(file, 1)) {
+            assertTrue(index.wasOpenedClean());
+            assertEquals(2, index.size());
+            assertEquals("doc1", index.getDocumentId("1N4AL11D75C109151"));
+            assertNull(index.getDocumentId("KM8SRDHF6EU074761"));
+            assertEquals("été", index.getValue("doc3"));
+        }
+    }
+
+    @Test
+    public void fileChangedAfterItsLastForceIsNotClean() {
+        Path file = folder.getRoot().toPath().resolve("Cars.VIN.idx");
+        MappedSecondaryIndex index = MappedSecondaryIndex.open(file);
+        assertTrue(index.wasOpenedClean());
+        index.put("doc1", "1N4AL11D75C109151");
+        index.force();
+        try (MappedSecondaryIndex reopened = MappedSecondaryIndex.open(file)) {
+            assertTrue(reopened.wasOpenedClean());
+        }
+
+        // The process dies before the next force.
+        index.put("doc2", "KM8SRDHF6EU074761");
+        try (MappedSecondaryIndex reopened = MappedSecondaryIndex.open(file)) {
+            assertFalse(reopened.wasOpenedClean());
+        }
+        index.close();
+    }
+
+    @Test
+    public void oversizedValueLeavesTheIndexUnchanged() {
+        Path file = folder.getRoot().toPath().resolve("Cars.Owner.idx");
+        char[] chars = new char[40_000];
+        Arrays.fill(chars, 'é');
+        String oversized = new String(chars);
+        assertFalse(MappedSecondaryIndex.canIndex(oversized));
+        assertTrue(MappedSecondaryIndex.canIndex(oversized.substring(0, 20_000)));
+
+        try (MappedSecondaryIndex index = MappedSecondaryIndex.open(file)) {
+            index.put("doc1", "Owner 1");
+            index.force();
+            try {
+                index.put("doc1", oversized);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                assertEquals("Owner 1", index.getValue("doc1"));
+                assertEquals(1, index.size());
+            }
+            try (MappedSecondaryIndex reopened = MappedSecondaryIndex.open(file)) {
+                assertTrue(reopened.wasOpenedClean());
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fileOfAnotherFormatIsRejected() throws Exception {
+        Path file = folder.newFile("Cars.VIN.idx").toPath();
+        Files.write(file, new byte[64]);
+        MappedSecondaryIndex.open(file);
+    }
+}
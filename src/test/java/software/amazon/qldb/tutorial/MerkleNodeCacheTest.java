@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MerkleNodeCacheTest {
+
+    private static byte[][] randomHashes(final int count, final long seed) {
+        Random random = new Random(seed);
+        byte[][] hashes = new byte[count][Verifier.HASH_LENGTH];
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+        }
+        return hashes;
+    }
+
+    private static byte[] join(final MerkleNodeCache cache, final byte[] h1, final byte[] h2) {
+        byte[] out = new byte[Verifier.HASH_LENGTH];
+        cache.joinHashesPairwise(h1, 0, h2, 0, out, 0);
+        return out;
+    }
+
+    @Test
+    public void cachedJoinsMatchUncachedJoins() {
+        byte[][] hashes = randomHashes(200, 1);
+        MerkleNodeCache cache = new MerkleNodeCache(1024);
+        // Every pair is joined three times, so that it is first only fingerprinted, then stored, then hit.
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i + 1 < hashes.length; i += 2) {
+                assertArrayEquals(Verifier.joinHashesPairwise(hashes[i], hashes[i + 1]),
+                        join(cache, hashes[i], hashes[i + 1]));
+                assertArrayEquals(Verifier.joinHashesPairwise(hashes[i], hashes[i + 1]),
+                        join(cache, hashes[i + 1], hashes[i]));
+            }
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void slotCollisionNeverAnswersWithAnotherPair() {
+        byte[][] hashes = randomHashes(4, 2);
+        byte[] first = Verifier.joinHashesPairwise(hashes[0], hashes[1]);
+        byte[] second = Verifier.joinHashesPairwise(hashes[2], hashes[3]);
+        // A single slot, so both pairs map to it.
+        MerkleNodeCache cache = new MerkleNodeCache(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(first, join(cache, hashes[0], hashes[1]));
+        }
+        assertEquals(1, cache.getHitCount());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(second, join(cache, hashes[2], hashes[3]));
+        }
+        assertEquals(2, cache.getHitCount());
+        // The first pair was evicted by the second; it must be hashed again, not answered from the slot.
+        assertArrayEquals(first, join(cache, hashes[0], hashes[1]));
+        assertEquals(2, cache.getHitCount());
+        assertArrayEquals(second, join(cache, hashes[2], hashes[3]));
+
+        // Pairs sharing one child collide as well.
+        byte[] shared = Verifier.joinHashesPairwise(hashes[0], hashes[2]);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(shared, join(cache, hashes[2], hashes[0]));
+            assertArrayEquals(first, join(cache, hashes[1], hashes[0]));
+        }
+    }
+
+    @Test
+    public void outputMayOverlapAnInputAtAnOffset() {
+        byte[][] hashes = randomHashes(2, 3);
+        byte[] expected = Verifier.joinHashesPairwise(hashes[0], hashes[1]);
+        MerkleNodeCache cache = new MerkleNodeCache(4);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] buffer = new byte[3 * Verifier.HASH_LENGTH];
+            System.arraycopy(hashes[0], 0, buffer, Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+            System.arraycopy(hashes[1], 0, buffer, 2 * Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+            cache.joinHashesPairwise(buffer, Verifier.HASH_LENGTH, buffer, 2 * Verifier.HASH_LENGTH, buffer,
+                    Verifier.HASH_LENGTH);
+            assertArrayEquals(expected,
+                    Arrays.copyOfRange(buffer, Verifier.HASH_LENGTH, 2 * Verifier.HASH_LENGTH));
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.system.IonSystemBuilder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.RevisionHashCheck;
+
+public class RevisionHashValidatorTest {
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+
+    /**
+     * A check of data without metadata is always invalid, which needs no hashing.
+     */
+    private static RevisionHashCheck invalidCheck(final BlockAddress blockAddress) {
+        return new RevisionHashCheck(blockAddress, null, SYSTEM.newEmptyStruct(), null);
+    }
+
+    @Test
+    public void hashOnlyRevisionsAreNeitherCheckedNorFailed() {
+        RevisionHashValidator validator = new RevisionHashValidator(new ForkJoinPool(2), 4);
+        for (int i = 0; i < 1000; i++) {
+            validator.submit(new RevisionHashCheck(new BlockAddress("A", i), null, null, new byte[32]));
+        }
+
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(0, report.getRevisionsChecked());
+        assertEquals(0, report.getRevisionsFailed());
+        assertTrue(report.isValid());
+    }
+
+    @Test
+    public void failureWithoutBlockAddressMakesTheReportInvalid() {
+        RevisionHashValidator validator = new RevisionHashValidator(new ForkJoinPool(2), 4);
+        validator.submit(invalidCheck(null));
+
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(1, report.getRevisionsChecked());
+        assertEquals(1, report.getRevisionsFailed());
+        assertTrue(report.getFailedBlockAddresses().isEmpty());
+        assertFalse(report.isValid());
+    }
+
+    @Test
+    public void failedBlockAddressesAreDistinctAndOrdered() {
+        RevisionHashValidator validator = new RevisionHashValidator(new ForkJoinPool(4), 2);
+        for (int i = 999; i >= 0; i--) {
+            validator.submit(invalidCheck(new BlockAddress(i % 2 == 0 ? "B" : "A", i / 10)));
+        }
+        validator.submit(invalidCheck(new BlockAddress(null, 3)));
+
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(1001, report.getRevisionsFailed());
+        assertEquals(201, report.getFailedBlockAddresses().size());
+        assertNull(report.getFailedBlockAddresses().get(0).getStrandId());
+        assertEquals(3, report.getFailedBlockAddresses().get(0).getSequenceNo());
+        assertEquals(new BlockAddress("A", 0), report.getFailedBlockAddresses().get(1));
+        assertEquals(new BlockAddress("B", 99), report.getFailedBlockAddresses().get(200));
+    }
+
+    @Test
+    public void sampleRateOfOneSelectsEveryRevision() {
+        RevisionHashValidator validator = new RevisionHashValidator(ForkJoinPool.commonPool(), 1, 1.0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(validator.sample());
+        }
+        assertEquals(1000, validator.awaitReport().getRevisionsSeen());
+    }
+
+    @Test
+    public void sampleSelectsTheRequestedFraction() {
+        int revisions = 200_000;
+        double sampleRate = 0.05;
+        RevisionHashValidator validator = new RevisionHashValidator(ForkJoinPool.commonPool(), 1, sampleRate);
+        int sampled = 0;
+        for (int i = 0; i < revisions; i++) {
+            if (validator.sample()) {
+                sampled++;
+            }
+        }
+        double expected = revisions * sampleRate;
+        double standardDeviation = Math.sqrt(revisions * sampleRate * (1 - sampleRate));
+        assertEquals(expected, sampled, 6 * standardDeviation);
+        assertEquals(revisions, validator.awaitReport().getRevisionsSeen());
+    }
+
+    @Test
+    public void upperBoundIsNearThreeOverSampleSizeAtNinetyFivePercent() {
+        RevisionHashValidator.Report report =
+            new RevisionHashValidator.Report(1_000_000, 3000, 0, Collections.emptyList());
+
+        double bound = report.getInvalidFractionUpperBound(0.95);
+
+        assertEquals(3.0 / 3000, bound, 0.0001);
+        assertEquals(0.05, Math.pow(1 - bound, 3000), 1e-9);
+    }
+
+    @Test
+    public void upperBoundIsZeroWhenEveryRevisionWasChecked() {
+        RevisionHashValidator.Report report = new RevisionHashValidator.Report(10, 10, 0, Collections.emptyList());
+        assertEquals(0.0, report.getInvalidFractionUpperBound(0.95), 0.0);
+        assertTrue(report.isValid());
+    }
+
+    @Test
+    public void upperBoundIsOneWhenASampledRevisionFailed() {
+        RevisionHashValidator.Report report = new RevisionHashValidator.Report(100, 10, 1,
+            Arrays.asList(new BlockAddress("A", 1)));
+        assertEquals(1.0, report.getInvalidFractionUpperBound(0.95), 0.0);
+        assertFalse(report.isValid());
+    }
+
+    /**
+     * Simulates sampled validation of exports with a known fraction of invalid revisions: at 95% confidence the
+     * bound of a sample that found nothing must be exceeded by the true fraction in at most about 5% of runs.
+     */
+    @Test
+    public void upperBoundHoldsAtItsConfidenceLevel() {
+        Random random = new Random(42);
+        int sampleSize = 1000;
+        double invalidFraction = 0.004;
+        int trials = 2000;
+        int cleanSamples = 0;
+        int boundExceeded = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            boolean foundInvalid = false;
+            for (int i = 0; i < sampleSize && !foundInvalid; i++) {
+                foundInvalid = random.nextDouble() < invalidFraction;
+            }
+            RevisionHashValidator.Report report = new RevisionHashValidator.Report(1_000_000, sampleSize,
+                foundInvalid ? 1 : 0, Collections.emptyList());
+            if (report.getInvalidFractionUpperBound(0.95) < invalidFraction) {
+                boundExceeded++;
+            }
+            if (!foundInvalid) {
+                cleanSamples++;
+            }
+        }
+        assertTrue(cleanSamples > 0);
+        assertTrue("The bound was below the true fraction in " + boundExceeded + " of " + trials + " runs",
+            boundExceeded <= 0.05 * trials * 1.5);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+
+public class S3ExportSourceTest {
+    private static final String BUCKET = "bucket";
+    private static final String EXPORT_PREFIX = "exports/2019/11/01/8Fz4bDS1ZfP3hH0yVQhEua";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Records the listing requests that reach the local directory standing in for S3.
+     */
+    private static final class RecordingAmazonS3 extends AbstractAmazonS3 {
+        private final AmazonS3 delegate;
+        private final List<ListObjectsV2Request> requests = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingAmazonS3(final AmazonS3 delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ListObjectsV2Result listObjectsV2(final ListObjectsV2Request request) {
+            requests.add(new ListObjectsV2Request()
+                .withStartAfter(request.getStartAfter())
+                .withContinuationToken(request.getContinuationToken()));
+            return delegate.listObjectsV2(request);
+        }
+    }
+
+    /**
+     * Write the data files of an export with a single strand, named as QLDB names them.
+     */
+    private List<String> writeExport(final Path bucketDirectory, final int dataFiles) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < dataFiles; i++) {
+            keys.add(EXPORT_PREFIX + ".JdxjkR9bSYB5jMHWcI464T." + (2 * i) + "-" + (2 * i + 1) + ".ion");
+        }
+        keys.add(EXPORT_PREFIX + ".JdxjkR9bSYB5jMHWcI464T.completed.manifest");
+        keys.add(EXPORT_PREFIX + ".started.manifest");
+        for (String key : keys) {
+            Path file = bucketDirectory.resolve(key);
+            Files.createDirectories(file.getParent());
+            Files.createFile(file);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Test
+    public void parallelListingMatchesSequentialListing() throws IOException {
+        Path root = folder.newFolder("s3").toPath();
+        List<String> expected = writeExport(root.resolve(BUCKET), 4500);
+        RecordingAmazonS3 s3 = new RecordingAmazonS3(new LocalDirectoryAmazonS3(root));
+
+        assertEquals(expected, new S3ExportSource(s3, BUCKET, 1).listKeys(EXPORT_PREFIX));
+        s3.requests.clear();
+        assertEquals(expected, new S3ExportSource(s3, BUCKET, 6).listKeys(EXPORT_PREFIX));
+
+        long startedAfterBoundary = s3.requests.stream().filter(request -> request.getStartAfter() != null).count();
+        long fromScratch = s3.requests.stream()
+            .filter(request -> request.getStartAfter() == null && request.getContinuationToken() == null)
+            .count();
+        assertEquals("The first page must not be listed again", 1, fromScratch);
+        assertTrue("The keys after the first page must be split into several ranges", startedAfterBoundary > 1);
+    }
+
+    @Test
+    public void singlePageIsListedWithOneRequest() throws IOException {
+        Path root = folder.newFolder("s3").toPath();
+        List<String> expected = writeExport(root.resolve(BUCKET), 10);
+        RecordingAmazonS3 s3 = new RecordingAmazonS3(new LocalDirectoryAmazonS3(root));
+
+        assertEquals(expected, new S3ExportSource(s3, BUCKET, 8).listKeys(EXPORT_PREFIX));
+        assertEquals(1, s3.requests.size());
+    }
+
+    @Test
+    public void boundariesSplitAfterTheCommonPrefixOfTheFirstPage() {
+        S3ExportSource source = new S3ExportSource(new RecordingAmazonS3(null), BUCKET, 4);
+
+        List<String> boundaries = source.boundaries(Arrays.asList("export.strand.0-1.ion", "export.strand.Kx"));
+
+        assertEquals(5, boundaries.size());
+        assertEquals("export.strand.Kx", boundaries.get(0));
+        for (String boundary : boundaries.subList(1, 4)) {
+            assertTrue(boundary, boundary.startsWith("export.strand.") && boundary.length() == 15);
+            assertTrue(boundary, boundary.compareTo(boundaries.get(0)) > 0);
+        }
+        assertNull(boundaries.get(4));
+    }
+
+    @Test
+    public void numericKeysAreSplitOnDigits() {
+        S3ExportSource source = new S3ExportSource(new RecordingAmazonS3(null), BUCKET, 4);
+
+        List<String> boundaries = source.boundaries(Arrays.asList("export.strand.0-1.ion",
+                "export.strand.10-11.ion", "export.strand.1998-1999.ion"));
+
+        assertEquals(Arrays.asList("export.strand.1998-1999.ion", "export.strand.4", "export.strand.6",
+                "export.strand.8", null), boundaries);
+    }
+
+    @Test
+    public void pageEndingAtTheLastPartitionCharacterIsListedAsOneRange() {
+        S3ExportSource source = new S3ExportSource(new RecordingAmazonS3(null), BUCKET, 4);
+
+        assertEquals(Arrays.asList("export.z", null), source.boundaries(Arrays.asList("export.A", "export.z")));
+        assertEquals(Arrays.asList("export.~", null), source.boundaries(Arrays.asList("export.A", "export.~")));
+        assertEquals(Arrays.asList("export.9", null), source.boundaries(Arrays.asList("export.0", "export.9")));
+        assertEquals(Arrays.asList("export", null), source.boundaries(Arrays.asList("export", "export")));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+import software.amazon.qldb.tutorial.qldb.JournalBlock;
+
+public class SecondaryIndexesTest {
+    private static final Map<String, List<String>> FIELDS = Collections.singletonMap(Constants.CARS_TABLE_NAME,
+            Arrays.asList("VIN", "Owner"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JournalBlock block() {
+        return JournalFixtures.block(new BlockAddress(JournalFixtures.STRAND_ID, 1), "tx", new Date(0),
+                Constants.CARS_TABLE_NAME, Collections.emptyList());
+    }
+
+    @Test
+    public void uncommittedIndexIsRebuiltFromScratch() {
+        Path directory = folder.getRoot().toPath();
+        SecondaryIndexes crashed = SecondaryIndexes.open(directory, FIELDS);
+        assertTrue(crashed.apply(block()));
+        crashed.commit();
+        // The process dies after changing an index, before the next commit.
+        crashed.get(Constants.CARS_TABLE_NAME, "VIN").put("doc1", "1N4AL11D75C109151");
+
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(directory, FIELDS)) {
+            assertTrue(indexes.apply(block()));
+            assertEquals(0, indexes.get(Constants.CARS_TABLE_NAME, "VIN").size());
+            assertNull(indexes.get(Constants.CARS_TABLE_NAME, "VIN").getDocumentId("1N4AL11D75C109151"));
+            assertTrue(indexes.get(Constants.CARS_TABLE_NAME, "Owner").wasOpenedClean());
+        }
+    }
+
+    private static JournalBlock carBlock(final long sequenceNo, final String data) {
+        BlockAddress address = new BlockAddress(JournalFixtures.STRAND_ID, sequenceNo);
+        return JournalFixtures.block(address, "tx", new Date(0), Constants.CARS_TABLE_NAME,
+                Collections.singletonList(JournalFixtures.revision(address, "doc1", sequenceNo, new Date(0), "tx",
+                        JournalFixtures.hash(0), data)));
+    }
+
+    @Test
+    public void valueTooLongToIndexLeavesTheDocumentOut() {
+        char[] chars = new char[70_000];
+        Arrays.fill(chars, 'x');
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(folder.getRoot().toPath(), FIELDS)) {
+            indexes.apply(carBlock(1, "{VIN:\"1N4AL11D75C109151\",Owner:\"Owner 1\"}"));
+            assertTrue(indexes.apply(carBlock(2, "{VIN:\"" + new String(chars) + "\",Owner:\"Owner 2\"}")));
+
+            assertNull(indexes.get(Constants.CARS_TABLE_NAME, "VIN").getValue("doc1"));
+            assertEquals("Owner 2", indexes.get(Constants.CARS_TABLE_NAME, "Owner").getValue("doc1"));
+        }
+    }
+
+    @Test
+    public void committedIndexesAreKept() {
+        Path directory = folder.getRoot().toPath();
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(directory, FIELDS)) {
+            indexes.get(Constants.CARS_TABLE_NAME, "VIN").put("doc1", "1N4AL11D75C109151");
+        }
+
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(directory, FIELDS)) {
+            assertEquals("doc1", indexes.get(Constants.CARS_TABLE_NAME, "VIN").getDocumentId("1N4AL11D75C109151"));
+        }
+    }
+
+    @Test
+    public void addedIndexIsBuiltFromTheStartOfTheJournal() {
+        Path directory = folder.getRoot().toPath();
+        String data = "{VIN:\"1N4AL11D75C109151\",Owner:\"Owner 1\",Color:\"Blue\"}";
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(directory, FIELDS)) {
+            assertTrue(indexes.apply(carBlock(1, data)));
+        }
+
+        Map<String, List<String>> moreFields = Collections.singletonMap(Constants.CARS_TABLE_NAME,
+                Arrays.asList("VIN", "Owner", "Color"));
+        try (SecondaryIndexes indexes = SecondaryIndexes.open(directory, moreFields)) {
+            assertTrue(indexes.apply(carBlock(1, data)));
+            assertEquals("Blue", indexes.get(Constants.CARS_TABLE_NAME, "Color").getValue("doc1"));
+            assertEquals("Owner 1", indexes.get(Constants.CARS_TABLE_NAME, "Owner").getValue("doc1"));
+        }
+    }
+}
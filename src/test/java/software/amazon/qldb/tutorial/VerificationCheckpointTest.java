@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import software.amazon.qldb.tutorial.qldb.BlockAddress;
+
+public class VerificationCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] hash(final int seed) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+
+    @Test
+    public void loadOfMissingFileReturnsNull() {
+        assertNull(VerificationCheckpoint.load(folder.getRoot().toPath().resolve("missing.ion")));
+    }
+
+    @Test
+    public void savedCheckpointLoadsBack() {
+        Path file = folder.getRoot().toPath().resolve("verification.ion");
+        VerificationCheckpoint.StrandCheckpoint withPeaks = new VerificationCheckpoint.StrandCheckpoint(
+                new BlockAddress("strandA", 5), hash(1), new byte[][] {hash(2), hash(3)});
+        VerificationCheckpoint.StrandCheckpoint withoutPeaks = new VerificationCheckpoint.StrandCheckpoint(
+                new BlockAddress("strandB", 9), hash(4), null);
+
+        new VerificationCheckpoint(Arrays.asList(withPeaks, withoutPeaks)).save(file);
+        VerificationCheckpoint loaded = VerificationCheckpoint.load(file);
+
+        assertEquals(2, loaded.getStrands().size());
+        VerificationCheckpoint.StrandCheckpoint first = loaded.getStrands().get(0);
+        assertEquals(new BlockAddress("strandA", 5), first.getLastBlockAddress());
+        assertArrayEquals(hash(1), first.getLastBlockHash());
+        assertArrayEquals(new byte[][] {hash(2), hash(3)}, first.getDigestPeaks());
+        VerificationCheckpoint.StrandCheckpoint second = loaded.getStrands().get(1);
+        assertEquals(new BlockAddress("strandB", 9), second.getLastBlockAddress());
+        assertNull(second.getDigestPeaks());
+    }
+
+    @Test
+    public void saveReplacesThePreviousCheckpointAndLeavesNoTemporaryFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("verification.ion");
+        new VerificationCheckpoint(Collections.singletonList(new VerificationCheckpoint.StrandCheckpoint(
+                new BlockAddress("strandA", 1), hash(1), null))).save(file);
+        new VerificationCheckpoint(Collections.singletonList(new VerificationCheckpoint.StrandCheckpoint(
+                new BlockAddress("strandA", 2), hash(2), null))).save(file);
+
+        assertEquals(new BlockAddress("strandA", 2),
+                VerificationCheckpoint.load(file).getStrands().get(0).getLastBlockAddress());
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class VerifierTest {
+    private static final byte[] EDGE_BYTES = {0, 1, 0x7F, (byte) 0x80, (byte) 0x81, (byte) 0xFE, (byte) 0xFF};
+
+    /**
+     * The original comparator: signed byte values, from the last byte to the first.
+     */
+    private static int compareByteWise(final byte[] h1, final byte[] h2) {
+        for (int i = h1.length - 1; i >= 0; i--) {
+            int byteEqual = Byte.compare(h1[i], h2[i]);
+            if (byteEqual != 0) {
+                return byteEqual;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The original join: hash the concatenation of the two hashes, the smaller one first.
+     */
+    private static byte[] joinByteWise(final byte[] h1, final byte[] h2) {
+        byte[] concatenated = new byte[h1.length + h2.length];
+        boolean ordered = compareByteWise(h1, h2) < 0;
+        System.arraycopy(ordered ? h1 : h2, 0, concatenated, 0, Verifier.HASH_LENGTH);
+        System.arraycopy(ordered ? h2 : h1, 0, concatenated, Verifier.HASH_LENGTH, Verifier.HASH_LENGTH);
+        MessageDigest messageDigest = Verifier.newMessageDigest();
+        messageDigest.update(concatenated);
+        return messageDigest.digest();
+    }
+
+    /**
+     * A hash made mostly of bytes around the sign boundary.
+     */
+    private static byte[] edgeHash(final Random random) {
+        byte[] hash = randomHash(random);
+        for (int i = 0; i < hash.length; i++) {
+            if (random.nextBoolean()) {
+                hash[i] = EDGE_BYTES[random.nextInt(EDGE_BYTES.length)];
+            }
+        }
+        return hash;
+    }
+
+    private static byte[] randomHash(final Random random) {
+        byte[] hash = new byte[Verifier.HASH_LENGTH];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    /**
+     * The Merkle tree over the given leaves, one list of nodes per level from the leaves up, where a node without
+     * a sibling is carried up to the next level unchanged.
+     */
+    private static List<List<byte[]>> tree(final List<byte[]> leaves) {
+        List<List<byte[]>> levels = new ArrayList<>();
+        levels.add(leaves);
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(i + 1 < level.size() ? Verifier.joinHashesPairwise(level.get(i), level.get(i + 1))
+                        : level.get(i));
+            }
+            levels.add(next);
+            level = next;
+        }
+        return levels;
+    }
+
+    /**
+     * The proof of a leaf: the sibling of its node on each level that has one, encoded like the proof of a
+     * {@code GetRevision} result.
+     */
+    private static String proofBlob(final List<List<byte[]>> tree, final int leaf) {
+        List<byte[]> siblings = new ArrayList<>();
+        int index = leaf;
+        for (List<byte[]> level : tree.subList(0, tree.size() - 1)) {
+            int sibling = index ^ 1;
+            if (sibling < level.size()) {
+                siblings.add(level.get(sibling));
+            }
+            index /= 2;
+        }
+        return siblings.stream().map(hash -> "{{" + Base64.getEncoder().encodeToString(hash) + "}}")
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private static boolean verifyOne(final byte[] documentHash, final byte[] digest, final String proofBlob) {
+        try {
+            return Verifier.verify(documentHash, digest, proofBlob);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void verifyAllMatchesVerifyAcrossWordBoundaries() {
+        Random random = new Random(1);
+        int count = 150;
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            leaves.add(randomHash(random));
+        }
+        List<List<byte[]>> tree = tree(leaves);
+        byte[] digest = tree.get(tree.size() - 1).get(0);
+
+        List<byte[]> documentHashes = new ArrayList<>();
+        List<String> proofBlobs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] documentHash = leaves.get(i).clone();
+            String proofBlob = proofBlob(tree, i);
+            if (i % 7 == 3 || i == 63 || i == 64) {
+                // A tampered document, on both sides of the first word boundary among others.
+                documentHash[i % Verifier.HASH_LENGTH] ^= 1;
+            } else if (i == 100) {
+                documentHash = new byte[Verifier.HASH_LENGTH - 1];
+            } else if (i == 128) {
+                proofBlob = "[{{AAAA}}]";
+            } else if (i == 149) {
+                proofBlob = "not a proof";
+            }
+            documentHashes.add(documentHash);
+            proofBlobs.add(proofBlob);
+        }
+
+        BitSet expected = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            expected.set(i, verifyOne(documentHashes.get(i), digest, proofBlobs.get(i)));
+        }
+        assertTrue(expected.get(0));
+        assertTrue(expected.get(65));
+        assertEquals(count - 26, expected.cardinality());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, Verifier.verifyAll(digest, documentHashes, proofBlobs, pool));
+            assertEquals(expected, Verifier.verifyAll(digest, documentHashes, proofBlobs, pool,
+                    new MerkleNodeCache(16)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void wordWiseComparisonMatchesByteWiseComparison() {
+        Random random = new Random(2);
+        for (int n = 0; n < 100_000; n++) {
+            byte[] h1 = n % 2 == 0 ? randomHash(random) : edgeHash(random);
+            byte[] h2;
+            switch (n % 3) {
+                case 0:
+                    h2 = randomHash(random);
+                    break;
+                case 1:
+                    // Equal except for one byte, so the comparison is decided in any word.
+                    h2 = h1.clone();
+                    h2[random.nextInt(h2.length)] = EDGE_BYTES[random.nextInt(EDGE_BYTES.length)];
+                    break;
+                default:
+                    h2 = edgeHash(random);
+                    break;
+            }
+            int offset = random.nextInt(8);
+            byte[] padded = new byte[offset + Verifier.HASH_LENGTH + 3];
+            System.arraycopy(h2, 0, padded, offset, Verifier.HASH_LENGTH);
+
+            int expected = Integer.signum(compareByteWise(h1, h2));
+            assertEquals(expected, Integer.signum(Verifier.compareHashes(h1, 0, h2, 0)));
+            assertEquals(expected, Integer.signum(Verifier.compareHashes(h1, 0, padded, offset)));
+            assertEquals(-expected, Integer.signum(Verifier.compareHashes(padded, offset, h1, 0)));
+            if (n % 100 == 0) {
+                assertArrayEquals(joinByteWise(h1, h2), Verifier.joinHashesPairwise(h1, h2));
+            }
+        }
+    }
+
+    @Test
+    public void equalHashesCompareEqual() {
+        byte[] hash = edgeHash(new Random(3));
+        assertEquals(0, Verifier.compareHashes(hash, 0, hash.clone(), 0));
+        assertArrayEquals(joinByteWise(hash, hash), Verifier.joinHashesPairwise(hash, hash.clone()));
+    }
+}
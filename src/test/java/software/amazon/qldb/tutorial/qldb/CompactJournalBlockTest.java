@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static software.amazon.qldb.tutorial.JournalFixtures.STRAND_ID;
+import static software.amazon.qldb.tutorial.JournalFixtures.hash;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompactJournalBlockTest {
+    /**
+     * A block of two revisions, the second of which has no transaction time. Revision data is left out so the
+     * block compacts without an Ion system.
+     */
+    private static JournalBlock block(final long sequenceNo, final byte[] previousBlockHash) {
+        BlockAddress address = new BlockAddress(STRAND_ID, sequenceNo);
+        Map<String, DocumentInfo> documents = new LinkedHashMap<>();
+        documents.put("doc1", new DocumentInfo("Cars", "table1", Collections.singletonList(0)));
+        documents.put("doc2", new DocumentInfo("Cars", "table1", Collections.singletonList(0)));
+        TransactionInfo transactionInfo = new TransactionInfo(
+                Collections.singletonList(new StatementInfo("INSERT INTO Cars ?", new Date(1000), hash(9))),
+                documents);
+        return new JournalBlock(address, "tx" + sequenceNo, new Date(5000 + sequenceNo), hash(1), hash(2),
+                previousBlockHash, new byte[][] {hash(3), hash(4)}, transactionInfo, Arrays.asList(
+                        new QldbRevision(address, new QldbRevision.Metadata("doc1", 3, new Date(4000), "tx"),
+                                hash(5), null),
+                        new QldbRevision(address, new QldbRevision.Metadata("doc2", 0, null, "tx"),
+                                hash(6), null)));
+    }
+
+    @Test
+    public void compactBlockKeepsEveryField() {
+        JournalBlock block = block(7, hash(8));
+
+        CompactJournalBlock compact = CompactJournalBlock.of(block, new IdentifierPool());
+
+        assertEquals(block.getBlockAddress(), compact.getBlockAddress());
+        assertEquals("tx7", compact.getTransactionId());
+        assertEquals(5007, compact.getBlockTimestampMillis());
+        assertArrayEquals(hash(1), compact.getBlockHash());
+        assertArrayEquals(hash(2), compact.getEntriesHash());
+        assertArrayEquals(hash(8), compact.getPreviousBlockHash());
+        assertArrayEquals(new byte[][] {hash(3), hash(4)}, compact.getEntriesHashList());
+        assertEquals(2, compact.getRevisionCount());
+        assertEquals("doc1", compact.getDocumentId(0));
+        assertEquals(3, compact.getVersion(0));
+        assertEquals(4000, compact.getTxTimeMillis(0));
+        assertArrayEquals(hash(6), compact.getRevisionHash(1));
+        assertEquals("Cars", compact.getTransactionInfo().getDocuments().get("doc2").getTableName());
+    }
+
+    @Test
+    public void missingTxTimeIsKeptAsMissing() {
+        CompactJournalBlock compact = CompactJournalBlock.of(block(0, null), new IdentifierPool());
+
+        assertEquals(CompactJournalBlock.NO_TX_TIME, compact.getTxTimeMillis(1));
+        assertNull(compact.getRevision(1).getMetadata().getTxTime());
+        assertEquals(new Date(4000), compact.getRevision(0).getMetadata().getTxTime());
+        assertNull(compact.getPreviousBlockHash());
+    }
+
+    @Test
+    public void hashOnlyRevisionsRoundTrip() {
+        BlockAddress address = new BlockAddress(STRAND_ID, 3);
+        JournalBlock block = new JournalBlock(address, "tx3", new Date(5003), hash(1), hash(2), hash(8),
+                new byte[][] {hash(3)}, new TransactionInfo(
+                        Collections.singletonList(new StatementInfo("CREATE TABLE Cars", new Date(1000), hash(9))),
+                        Collections.emptyMap()), Arrays.asList(
+                        new QldbRevision(address, null, hash(5), null),
+                        new QldbRevision(address, new QldbRevision.Metadata("doc1", 0, new Date(4000), "tx3"),
+                                hash(6), null),
+                        new QldbRevision(null, null, hash(7), null)));
+
+        CompactJournalBlock compact = CompactJournalBlock.of(block, new IdentifierPool());
+
+        assertTrue(compact.isHashOnly(0));
+        assertFalse(compact.isHashOnly(1));
+        assertTrue(compact.isHashOnly(2));
+        assertNull(compact.getDocumentId(0));
+        assertEquals(CompactJournalBlock.NO_TX_TIME, compact.getTxTimeMillis(2));
+        assertEquals(new QldbRevision(address, null, hash(5), null), compact.getRevision(0));
+        assertEquals(new QldbRevision(address, null, hash(7), null), compact.getRevision(2));
+        assertEquals(block.getRevisions().subList(0, 2), compact.toJournalBlock().getRevisions().subList(0, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRevisionOfAnotherBlock() {
+        BlockAddress address = new BlockAddress(STRAND_ID, 3);
+        CompactJournalBlock.of(new JournalBlock(address, "tx", new Date(0), hash(1), hash(2), null,
+                new byte[0][], null, Collections.singletonList(
+                        new QldbRevision(new BlockAddress(STRAND_ID, 4), null, hash(5), null))),
+                new IdentifierPool());
+    }
+
+    @Test
+    public void identifiersAreSharedAcrossBlocks() {
+        IdentifierPool pool = new IdentifierPool();
+
+        CompactJournalBlock first = CompactJournalBlock.of(block(0, null), pool);
+        CompactJournalBlock second = CompactJournalBlock.of(block(1, hash(1)), pool);
+
+        assertSame(first.getStrandId(), second.getStrandId());
+        assertSame(first.getDocumentId(0), second.getDocumentId(0));
+        assertSame(first.getTransactionInfo().getDocuments().get("doc1").getTableName(),
+                second.getTransactionInfo().getDocuments().get("doc1").getTableName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsHashOfWrongLength() {
+        BlockAddress address = new BlockAddress(STRAND_ID, 0);
+        CompactJournalBlock.of(new JournalBlock(address, "tx", new Date(0), new byte[3], hash(2), null,
+                new byte[0][], null, null), new IdentifierPool());
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.system.IonSystemBuilder;
+
+import software.amazon.qldb.tutorial.Constants;
+import software.amazon.qldb.tutorial.RevisionHashValidator;
+
+public class JournalBlockDecoderTest {
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final String HASH = "{{AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=}}";
+
+    /**
+     * A block with one revision of a Cars document and two revisions of People documents. As in an export,
+     * each revision's data comes before its metadata.
+     */
+    private static String block() {
+        return "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},"
+                + "transactionId:\"Tx1\",blockTimestamp:2019-11-08T20:01:00.123Z,"
+                + "blockHash:" + HASH + ",entriesHash:" + HASH + ",previousBlockHash:" + HASH + ","
+                + "entriesHashList:[" + HASH + "],"
+                + "transactionInfo:{statements:[{statement:\"INSERT INTO Cars ?\"}],documents:{"
+                + "car1:{tableName:\"Cars\",tableId:\"t1\",statements:[0]},"
+                + "person1:{tableName:\"People\",tableId:\"t2\",statements:[0]},"
+                + "person2:{tableName:\"People\",tableId:\"t2\",statements:[0]}}},"
+                + "revisions:["
+                + revision("car1", "{CarId:\"1\"}")
+                + "," + revision("person1", "{Name:\"A\"}")
+                + "," + revision("person2", "{Name:\"B\"}")
+                + "]}";
+    }
+
+    private static String revision(final String documentId, final String data) {
+        return "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},hash:" + HASH + ",data:" + data
+                + ",metadata:{id:\"" + documentId + "\",version:0,txTime:2019-11-08T20:01:00.000Z,txId:\"Tx1\"}}";
+    }
+
+    private static JournalBlock decode(final JournalBlockDecoder decoder) {
+        return decode(decoder, block());
+    }
+
+    private static JournalBlock decode(final JournalBlockDecoder decoder, final String block) {
+        try (IonReader reader = SYSTEM.newReader(block)) {
+            reader.next();
+            return decoder.decode(reader);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static String metadata(final String documentId, final int version) {
+        return "{id:\"" + documentId + "\",version:" + version + ",txTime:2019-11-08T20:01:00.000Z,txId:\"Tx1\"}";
+    }
+
+    /**
+     * A revision whose hash is computed by {@link QldbRevision#computeHash}, with the data written before the
+     * metadata as in an export. A {@code null} data value makes the revision a deletion.
+     */
+    private static String hashedRevision(final String metadata, final String data) {
+        byte[] hash = QldbRevision.computeHash((IonStruct) SYSTEM.singleValue(metadata),
+                data != null ? (IonStruct) SYSTEM.singleValue(data) : null);
+        return "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},hash:{{"
+                + Base64.getEncoder().encodeToString(hash) + "}}" + (data != null ? ",data:" + data : "")
+                + ",metadata:" + metadata + "}";
+    }
+
+    private static String blockOf(final String... revisions) {
+        return "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},transactionId:\"Tx1\","
+                + "revisions:[" + String.join(",", revisions) + "]}";
+    }
+
+    @Test
+    public void inlineValidationMatchesComputeHash() {
+        String metadata = metadata("car1", 1);
+        String data = "{VIN:\"1N4AL11D75C109151\",Year:2011,Price:25000.50,Tags:[\"a\",{b:null}]}";
+
+        JournalBlock block = decode(new JournalBlockDecoder(true), blockOf(hashedRevision(metadata, data)));
+
+        QldbRevision revision = block.getRevisions().get(0);
+        assertArrayEquals(QldbRevision.computeHash((IonStruct) SYSTEM.singleValue(metadata),
+                (IonStruct) SYSTEM.singleValue(data)), revision.getHash());
+        assertEquals(SYSTEM.singleValue(data), revision.getData());
+    }
+
+    @Test
+    public void deletionIsValidatedAgainstItsMetadataAlone() {
+        JournalBlock block = decode(new JournalBlockDecoder(true), blockOf(hashedRevision(metadata("car1", 2), null)));
+
+        assertEquals(1, block.getRevisions().size());
+        assertNull(block.getRevisions().get(0).getData());
+    }
+
+    @Test
+    public void hashOnlyRevisionIsNotValidated() {
+        String hashOnly = "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},hash:" + HASH + "}";
+
+        JournalBlock block = decode(new JournalBlockDecoder(true), blockOf(hashOnly));
+
+        assertEquals(1, block.getRevisions().size());
+        assertNull(block.getRevisions().get(0).getMetadata());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void inlineValidationRejectsATamperedRevision() {
+        String revision = hashedRevision(metadata("car1", 1), "{VIN:\"1N4AL11D75C109151\"}");
+
+        decode(new JournalBlockDecoder(true), blockOf(revision.replace("1N4AL11D75C109151", "1N4AL11D75C109152")));
+    }
+
+    @Test
+    public void everyRevisionIsSampledWithoutATableFilter() {
+        RevisionHashValidator validator = new RevisionHashValidator(ForkJoinPool.commonPool(), 2, 1.0);
+
+        JournalBlock block = decode(new JournalBlockDecoder(validator));
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(3, block.getRevisions().size());
+        assertEquals(3, report.getRevisionsSeen());
+        assertEquals(3, report.getRevisionsChecked());
+    }
+
+    @Test
+    public void hashOnlyRevisionsAreNotSampledAndDeletionsAreValid() {
+        String hashOnly = "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},hash:" + HASH + "}";
+        String block = blockOf(hashOnly, hashedRevision(metadata("car1", 0), "{VIN:\"1N4AL11D75C109151\"}"),
+                hashOnly, hashedRevision(metadata("car1", 1), null));
+        RevisionHashValidator validator = new RevisionHashValidator(ForkJoinPool.commonPool(), 2, 1.0);
+
+        JournalBlock decoded = decode(new JournalBlockDecoder(validator), block);
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(4, decoded.getRevisions().size());
+        assertEquals(2, report.getRevisionsSeen());
+        assertEquals(2, report.getRevisionsChecked());
+        assertEquals(0, report.getRevisionsFailed());
+        assertEquals(0.0, report.getInvalidFractionUpperBound(0.95), 0.0);
+    }
+
+    /**
+     * Revisions without metadata are dropped by a table filter whether the block's transaction info comes before
+     * its revisions, and the filter runs while they are read, or after them, and the filter runs on the block.
+     */
+    @Test
+    public void tableFilterDropsRevisionsWithoutMetadataWhereverItRuns() {
+        String hashOnly = "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:7},hash:" + HASH + "}";
+        String revisions = "revisions:[" + hashOnly + "," + revision("car1", "{CarId:\"1\"}") + "]";
+        String transactionInfo = "transactionInfo:{documents:{car1:{tableName:\"Cars\",tableId:\"t1\"}}}";
+        JournalBlockDecoder decoder = new JournalBlockDecoder().withTableNames(Collections.singleton("Cars"));
+
+        JournalBlock inline = decode(decoder, "{" + transactionInfo + "," + revisions + "}");
+        JournalBlock afterwards = decode(decoder, "{" + revisions + "," + transactionInfo + "}");
+
+        assertEquals(1, inline.getRevisions().size());
+        assertEquals("car1", inline.getRevisions().get(0).getMetadata().getId());
+        assertEquals(inline.getRevisions(), afterwards.getRevisions());
+    }
+
+    @Test
+    public void revisionsDroppedByTheTableFilterAreNotSampled() {
+        RevisionHashValidator validator = new RevisionHashValidator(ForkJoinPool.commonPool(), 2, 1.0);
+
+        JournalBlock block = decode(new JournalBlockDecoder(validator).withTableNames(Collections.singleton("Cars")));
+        RevisionHashValidator.Report report = validator.awaitReport();
+
+        assertEquals(1, block.getRevisions().size());
+        assertEquals("car1", block.getRevisions().get(0).getMetadata().getId());
+        assertEquals(1, report.getRevisionsSeen());
+        assertEquals(1, report.getRevisionsChecked());
+        assertEquals(1, report.getRevisionsFailed());
+    }
+
+    /**
+     * An export data file of three blocks: {@link #block()}, a block whose revisions are a deletion and a
+     * revision that only carries its hash, and a block with nested document data and several entries.
+     */
+    private static String dataFile() {
+        String otherHash = "{{" + Base64.getEncoder().encodeToString(new byte[] {
+            -1, 0, 127, -128, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28}) + "}}";
+        String header = "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:%d},"
+                + "transactionId:\"Tx%d\",blockTimestamp:2019-11-08T20:0%d:00.123Z,"
+                + "blockHash:" + otherHash + ",entriesHash:" + HASH + ",previousBlockHash:" + otherHash + ","
+                + "entriesHashList:[" + HASH + "," + otherHash + "],"
+                + "transactionInfo:{statements:[{statement:\"UPDATE Cars SET Owner = ?\","
+                + "startTime:2019-11-08T20:01:00.100Z,statementDigest:" + otherHash + "}],"
+                + "documents:{car1:{tableName:\"Cars\",tableId:\"t1\",statements:[0]}}},";
+        String deletions = String.format(header, 8, 2, 2) + "revisions:["
+                + "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:8},hash:" + otherHash
+                + ",metadata:" + metadata("car1", 3) + "},"
+                + "{blockAddress:{strandId:\"JdxjkR9bSYB5jMHWcI464T\",sequenceNo:8},hash:" + HASH + "}]}";
+        String nested = String.format(header, 9, 3, 3) + "revisions:["
+                + revision("car1", "{VIN:\"1N4AL11D75C109151\",Owner:{Name:\"A\",Tags:[1,2.5,null,\"x\"]},"
+                + "Price:25000.50,Updated:2019-11-08T20:01:00Z,Photo:{{AQID}}}") + "]}";
+        return block() + "\n" + deletions + "\n" + nested + "\n";
+    }
+
+    /**
+     * Compare every field of two blocks. {@link StatementInfo} has no {@code equals}, so statements are compared
+     * field by field.
+     */
+    private static void assertSameBlock(final JournalBlock expected, final JournalBlock actual) {
+        assertEquals(expected.getBlockAddress(), actual.getBlockAddress());
+        assertEquals(expected.getTransactionId(), actual.getTransactionId());
+        assertEquals(expected.getBlockTimestamp(), actual.getBlockTimestamp());
+        assertArrayEquals(expected.getBlockHash(), actual.getBlockHash());
+        assertArrayEquals(expected.getEntriesHash(), actual.getEntriesHash());
+        assertArrayEquals(expected.getPreviousBlockHash(), actual.getPreviousBlockHash());
+        assertTrue(Arrays.deepEquals(expected.getEntriesHashList(), actual.getEntriesHashList()));
+        assertEquals(expected.getTransactionInfo().getDocuments(), actual.getTransactionInfo().getDocuments());
+        List<StatementInfo> expectedStatements = expected.getTransactionInfo().getStatements();
+        List<StatementInfo> actualStatements = actual.getTransactionInfo().getStatements();
+        assertEquals(expectedStatements.size(), actualStatements.size());
+        for (int i = 0; i < expectedStatements.size(); i++) {
+            assertEquals(expectedStatements.get(i).getStatement(), actualStatements.get(i).getStatement());
+            assertEquals(expectedStatements.get(i).getStartTime(), actualStatements.get(i).getStartTime());
+            assertArrayEquals(expectedStatements.get(i).getStatementDigest(),
+                    actualStatements.get(i).getStatementDigest());
+        }
+        assertEquals(expected.getRevisions(), actual.getRevisions());
+    }
+
+    @Test
+    public void streamingDecodeMatchesTheObjectMapper() throws IOException {
+        String dataFile = dataFile();
+        List<JournalBlock> mapped = new ArrayList<>();
+        try (IonReader reader = SYSTEM.newReader(dataFile)) {
+            while (reader.next() != null) {
+                mapped.add(Constants.MAPPER.readValue(SYSTEM.newValue(reader), JournalBlock.class));
+            }
+        }
+        List<JournalBlock> decoded = new ArrayList<>();
+        try (IonReader reader = SYSTEM.newReader(dataFile)) {
+            while (reader.next() != null) {
+                decoded.add(new JournalBlockDecoder().decode(reader));
+            }
+        }
+
+        assertEquals(3, mapped.size());
+        assertEquals(mapped.size(), decoded.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertSameBlock(mapped.get(i), decoded.get(i));
+        }
+    }
+}
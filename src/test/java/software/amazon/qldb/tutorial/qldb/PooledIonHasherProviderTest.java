@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial.qldb;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.amazon.ion.IonReader;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.system.IonSystemBuilder;
+import com.amazon.ionhash.IonHashReader;
+import com.amazon.ionhash.IonHashReaderBuilder;
+import com.amazon.ionhash.IonHasher;
+import com.amazon.ionhash.IonHasherProvider;
+import com.amazon.ionhash.MessageDigestIonHasherProvider;
+
+public class PooledIonHasherProviderTest {
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final String[] VALUES = {
+        "{}",
+        "{VIN:\"1N4AL11D75C109151\",Year:2011,Price:25000.50}",
+        "{Owner:{Name:{First:\"A\",Last:\"B\"},Address:{Lines:[\"1\",{Unit:2}],Zip:null}},Tags:[[[]],{a:{b:{c:{}}}}]}",
+        "{id:\"car1\",version:3,txTime:2019-11-08T20:01:00.000Z,txId:\"Tx1\",data:{{AQID}},sexp:(a b (c))}",
+    };
+
+    private static byte[] hash(final IonHasherProvider provider, final String text) throws IOException {
+        try (IonReader reader = SYSTEM.newReader(text)) {
+            IonHashReader hashReader = IonHashReaderBuilder.standard()
+                    .withHasherProvider(provider)
+                    .withReader(reader)
+                    .build();
+            while (hashReader.next() != null) {  }
+            return hashReader.digest();
+        }
+    }
+
+    @Test
+    public void nestedValuesHashLikeTheMessageDigestProvider() throws IOException {
+        IonHasherProvider expected = new MessageDigestIonHasherProvider("SHA-256");
+        IonHasherProvider pooled = new PooledIonHasherProvider("SHA-256");
+        // Twice, so that the second round hashes with digests returned to the pool by the first.
+        for (int round = 0; round < 2; round++) {
+            for (String value : VALUES) {
+                assertArrayEquals(value, hash(expected, value), hash(pooled, value));
+            }
+        }
+    }
+
+    @Test
+    public void hasherCanBeReusedAfterItsDigest() {
+        IonHasherProvider provider = new PooledIonHasherProvider("SHA-256");
+        IonHasher reference = new MessageDigestIonHasherProvider("SHA-256").newHasher();
+        IonHasher pooled = provider.newHasher();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 5; i++) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            random.nextBytes(bytes);
+            reference.update(bytes);
+            pooled.update(bytes);
+            assertArrayEquals(reference.digest(), pooled.digest());
+        }
+        // A digest without any update is the digest of nothing.
+        assertArrayEquals(reference.digest(), pooled.digest());
+    }
+
+    @Test
+    public void nestedHashersDoNotShareDigests() {
+        IonHasherProvider referenceProvider = new MessageDigestIonHasherProvider("SHA-256");
+        IonHasherProvider provider = new PooledIonHasherProvider("SHA-256");
+        IonHasher outerReference = referenceProvider.newHasher();
+        IonHasher innerReference = referenceProvider.newHasher();
+        IonHasher outer = provider.newHasher();
+        IonHasher inner = provider.newHasher();
+        byte[] a = "outer".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "inner".getBytes(StandardCharsets.UTF_8);
+
+        // The way an Ion hash reader uses them: the outer hasher is updated around the inner one's digest.
+        for (int i = 0; i < 3; i++) {
+            outerReference.update(a);
+            outer.update(a);
+            innerReference.update(b);
+            inner.update(b);
+            byte[] innerDigest = innerReference.digest();
+            assertArrayEquals(innerDigest, inner.digest());
+            outerReference.update(innerDigest);
+            outer.update(innerDigest);
+            assertArrayEquals(outerReference.digest(), outer.digest());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package software.amazon.qldb.tutorial.qldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import software.amazon.qldb.tutorial.JournalFixtures;
+import software.amazon.qldb.tutorial.Verifier;
+
+public class ProofTest {
+    @Test
+    public void internalHashesAreStoredBackToBack() {
+        List<byte[]> hashes = Arrays.asList(JournalFixtures.hash(1), JournalFixtures.hash(2));
+
+        Proof proof = new Proof(hashes);
+
+        assertEquals(2, proof.getInternalHashCount());
+        assertEquals(2 * Verifier.HASH_LENGTH, proof.getInternalHashBytes().length);
+        assertArrayEquals(hashes.get(1), proof.getInternalHashes().get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hashOfTheWrongLengthIsRejected() {
+        new Proof(Arrays.asList(JournalFixtures.hash(1), new byte[Verifier.HASH_LENGTH - 1]));
+    }
+
+    @Test
+    public void parseFailureKeepsItsCause() {
+        try {
+            Proof.fromBlob("[{{AQID}}]");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertNotNull(expected.getCause());
+            assertEquals("Failed to parse a Proof from byte array: " + expected.getCause().getMessage(),
+                    expected.getMessage());
+        }
+    }
+}
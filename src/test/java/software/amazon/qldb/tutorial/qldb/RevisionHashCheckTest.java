@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: MIT-0
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package software.amazon.qldb.tutorial.qldb;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.amazon.ion.IonStruct;
+import com.amazon.ion.IonSystem;
+import com.amazon.ion.system.IonSystemBuilder;
+
+import software.amazon.qldb.tutorial.Verifier;
+
+public class RevisionHashCheckTest {
+    private static final IonSystem SYSTEM = IonSystemBuilder.standard().build();
+    private static final BlockAddress BLOCK_ADDRESS = new BlockAddress("JdxjkR9bSYB5jMHWcI464T", 7);
+
+    private static IonStruct struct(final String ion) {
+        return (IonStruct) SYSTEM.singleValue(ion);
+    }
+
+    private static IonStruct metadata() {
+        return struct("{id:\"car1\",version:1,txTime:2019-11-08T20:01:00.000Z,txId:\"Tx1\"}");
+    }
+
+    @Test
+    public void revisionMatchingItsHashIsValid() {
+        IonStruct data = struct("{VIN:\"1N4AL11D75C109151\"}");
+        byte[] hash = QldbRevision.computeHash(metadata(), data);
+
+        assertTrue(new RevisionHashCheck(BLOCK_ADDRESS, metadata(), data, hash).isValid());
+        assertFalse(new RevisionHashCheck(BLOCK_ADDRESS, metadata(), struct("{VIN:\"other\"}"), hash).isValid());
+    }
+
+    @Test
+    public void deletionIsCheckedAgainstItsMetadataAlone() {
+        byte[] hash = QldbRevision.computeHash(metadata(), null);
+
+        assertTrue(new RevisionHashCheck(BLOCK_ADDRESS, metadata(), null, hash).isValid());
+        assertFalse(new RevisionHashCheck(BLOCK_ADDRESS, metadata(), null, Verifier.flipRandomBit(hash)).isValid());
+    }
+
+    @Test
+    public void hashOnlyRevisionIsValid() {
+        RevisionHashCheck check = new RevisionHashCheck(BLOCK_ADDRESS, null, null, new byte[32]);
+
+        assertTrue(check.isHashOnly());
+        assertTrue(check.isValid());
+    }
+
+    @Test
+    public void revisionWithoutHashOrMetadataIsInvalid() {
+        IonStruct data = struct("{VIN:\"1N4AL11D75C109151\"}");
+
+        assertFalse(new RevisionHashCheck(BLOCK_ADDRESS, metadata(), data, null).isValid());
+        assertFalse(new RevisionHashCheck(BLOCK_ADDRESS, null, data, new byte[32]).isValid());
+    }
+}